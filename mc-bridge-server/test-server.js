@@ -68,6 +68,25 @@ app.post('/api/mc-message', validateApiKey, (req, res) => {
     });
 });
 
+// 批量接收来自Minecraft的消息
+app.post('/api/mc-message/batch', validateApiKey, (req, res) => {
+    const messages = Array.isArray(req.body) ? req.body : [];
+    
+    messages.forEach(({ playerName, message }) => {
+        logger.info('收到来自Minecraft的消息', {
+            player: playerName,
+            message,
+            timestamp: new Date().toISOString()
+        });
+    });
+    
+    res.status(200).json({
+        status: 'success',
+        received: messages.length,
+        time: new Date().toISOString()
+    });
+});
+
 // 启动测试服务器
 const port = parseInt(process.env.PORT) || 3000;
 app.listen(port, () => {
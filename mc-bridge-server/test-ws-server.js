@@ -0,0 +1,143 @@
+import http from 'http';
+import crypto from 'crypto';
+import readline from 'readline';
+import dotenv from 'dotenv';
+
+// 加载环境变量
+dotenv.config();
+
+// WebSocket握手使用的固定GUID（RFC 6455）
+const WS_GUID = '258EAFA5-E914-47DA-95CA-C5AB0DC85B11';
+
+const clients = new Set();
+
+function log(message, meta) {
+    console.log(`${new Date().toISOString()} ${message}${meta ? ' ' + JSON.stringify(meta) : ''}`);
+}
+
+// 编码服务端帧（服务端发出的帧不需要掩码）
+function encodeFrame(opcode, payload) {
+    const length = payload.length;
+    let header;
+    if (length < 126) {
+        header = Buffer.alloc(2);
+        header[1] = length;
+    } else if (length < 65536) {
+        header = Buffer.alloc(4);
+        header[1] = 126;
+        header.writeUInt16BE(length, 2);
+    } else {
+        header = Buffer.alloc(10);
+        header[1] = 127;
+        header.writeBigUInt64BE(BigInt(length), 2);
+    }
+    header[0] = 0x80 | opcode;
+    return Buffer.concat([header, payload]);
+}
+
+function sendText(socket, text) {
+    socket.write(encodeFrame(0x1, Buffer.from(text, 'utf8')));
+}
+
+// 解析客户端帧，返回剩余未处理的数据
+function handleFrames(socket, buffer, state) {
+    while (buffer.length >= 2) {
+        const fin = (buffer[0] & 0x80) !== 0;
+        const opcode = buffer[0] & 0x0f;
+        let length = buffer[1] & 0x7f;
+        let offset = 2;
+        if (length === 126) {
+            if (buffer.length < 4) break;
+            length = buffer.readUInt16BE(2);
+            offset = 4;
+        } else if (length === 127) {
+            if (buffer.length < 10) break;
+            length = Number(buffer.readBigUInt64BE(2));
+            offset = 10;
+        }
+        if (buffer.length < offset + 4 + length) break;
+        const mask = buffer.subarray(offset, offset + 4);
+        const payload = Buffer.alloc(length);
+        for (let i = 0; i < length; i++) {
+            payload[i] = buffer[offset + 4 + i] ^ mask[i % 4];
+        }
+        buffer = buffer.subarray(offset + 4 + length);
+
+        if (opcode === 0x9) {
+            // ping -> pong
+            socket.write(encodeFrame(0xa, payload));
+        } else if (opcode === 0x8) {
+            socket.write(encodeFrame(0x8, payload.subarray(0, 2)));
+            socket.end();
+        } else if (opcode === 0x1 || opcode === 0x0) {
+            state.fragments.push(payload);
+            if (fin) {
+                const text = Buffer.concat(state.fragments).toString('utf8');
+                state.fragments = [];
+                handleText(socket, text);
+            }
+        }
+    }
+    return buffer;
+}
+
+function handleText(socket, text) {
+    try {
+        const frame = JSON.parse(text);
+        if (frame.type === 'message') {
+            log('收到来自Minecraft的消息', { seq: frame.seq, ...frame.payload });
+            // 确认该序号及之前的所有帧
+            sendText(socket, JSON.stringify({ type: 'ack', seq: frame.seq }));
+        }
+    } catch (error) {
+        log('解析帧失败', { error: error.message });
+    }
+}
+
+const server = http.createServer((req, res) => {
+    res.writeHead(426);
+    res.end();
+});
+
+server.on('upgrade', (req, socket) => {
+    const authHeader = req.headers.authorization || '';
+    if (req.url !== '/ws' || authHeader !== `Bearer ${process.env.API_KEY}`) {
+        log('拒绝WebSocket连接', { url: req.url });
+        socket.end('HTTP/1.1 403 Forbidden\r\n\r\n');
+        return;
+    }
+    const accept = crypto.createHash('sha1')
+        .update(req.headers['sec-websocket-key'] + WS_GUID)
+        .digest('base64');
+    socket.write('HTTP/1.1 101 Switching Protocols\r\n' +
+        'Upgrade: websocket\r\n' +
+        'Connection: Upgrade\r\n' +
+        `Sec-WebSocket-Accept: ${accept}\r\n\r\n`);
+
+    log('Minecraft已连接', { session: req.headers['x-bridge-session'] });
+    clients.add(socket);
+
+    const state = { fragments: [] };
+    let pending = Buffer.alloc(0);
+    socket.on('data', (data) => {
+        pending = handleFrames(socket, Buffer.concat([pending, data]), state);
+    });
+    socket.on('close', () => {
+        clients.delete(socket);
+        log('Minecraft连接已断开');
+    });
+    socket.on('error', () => clients.delete(socket));
+});
+
+// 在控制台输入的内容会推送到游戏内
+readline.createInterface({ input: process.stdin }).on('line', (line) => {
+    const frame = JSON.stringify({ type: 'message', message: line, prefix: '测试' });
+    clients.forEach((socket) => sendText(socket, frame));
+});
+
+const port = parseInt(process.env.PORT) || 3000;
+server.listen(port, () => {
+    log('=== AetherBridge WebSocket测试服务器 ===');
+    log(`服务器已启动，监听地址: ws://localhost:${port}/ws`);
+    log('在控制台输入消息并回车即可推送到Minecraft');
+});
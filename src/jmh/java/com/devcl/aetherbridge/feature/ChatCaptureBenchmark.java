@@ -0,0 +1,120 @@
+package com.devcl.aetherbridge.feature;
+
+import com.devcl.aetherbridge.network.OutboundQueue;
+import com.devcl.aetherbridge.ratelimit.RateLimiter;
+import com.devcl.aetherbridge.routing.RulePipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个聊天事件占用的主线程时间
+ *
+ * synchronous为原先在聊天监听器中同步完成的工作：解析消息文本、读取功能开关、匹配规则、
+ * 限流、创建出站消息并放入带锁的发送队列（唤醒等待中的发送线程）。
+ * 基准中没有Minecraft的Text对象，文本解析以一次字符串复制代替，实际耗时只会更高。
+ * capture为现在主线程上的全部工作：创建Captured并放入单生产者队列，每64个事件唤醒一次
+ * 采集线程，相当于一个tick内有64条聊天；captureSignalEach每个事件都唤醒一次，
+ * 相当于每个tick只有一条聊天，是唤醒开销无法分摊的最坏情况。
+ * 两种方式的队列都由一个后台线程持续消费。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatCaptureBenchmark {
+    private final UUID playerId = UUID.randomUUID();
+    private final String playerName = "Steve";
+    private final String message = "有人一起去下界吗，我带了钻石镐";
+    private final Map<String, Boolean> features = new HashMap<>();
+    private final RulePipeline rules = RulePipeline.empty();
+    private final RateLimiter limiter = RateLimiter.unlimited();
+
+    private OutboundQueue<Object[]> sendQueue;
+    private Thread sendWorker;
+    private ChatCapture capture;
+    private int events;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        features.put("messageSender", true);
+        features.put("messageReceiver", true);
+        sendQueue = new OutboundQueue<>(1 << 16, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0, null);
+        sendWorker = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    sendQueue.poll(1, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                // 结束
+            }
+        }, "Benchmark-Sender");
+        sendWorker.setDaemon(true);
+        sendWorker.start();
+        capture = new ChatCapture(captured -> { });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sendWorker.interrupt();
+        capture.close();
+    }
+
+    @Benchmark
+    public boolean synchronous() {
+        String content = new StringBuilder(message.length()).append(message).toString();
+        String name = new StringBuilder(playerName.length()).append(playerName).toString();
+        if (!features.get("messageSender")) {
+            return false;
+        }
+        RulePipeline.Rule rule = rules.match(content, level -> false);
+        if (rule != null || limiter.tryAcquire(playerId, 1) > 0) {
+            return false;
+        }
+        return sendQueue.offer(new Object[] {playerId, name, content, "游戏"});
+    }
+
+    @Benchmark
+    public boolean capture() {
+        boolean published = publish();
+        if ((++events & 63) == 0) {
+            capture.signal();
+        }
+        return published;
+    }
+
+    @Benchmark
+    public boolean captureSignalEach() {
+        boolean published = publish();
+        capture.signal();
+        return published;
+    }
+
+    // 与MessageSenderFeature的聊天监听器相同，没有规则要求权限时不做权限检查
+    private boolean publish() {
+        int levels = rules.getPermissionLevels();
+        int granted = 0;
+        while (levels != 0) {
+            int level = Integer.numberOfTrailingZeros(levels);
+            levels &= levels - 1;
+            granted |= 1 << level;
+        }
+        return capture.publish(new ChatCapture.Captured(null, playerId, playerName, null, rules, granted));
+    }
+}
@@ -0,0 +1,86 @@
+package com.devcl.aetherbridge.feature;
+
+import com.google.gson.Gson;
+import com.devcl.aetherbridge.network.MessageCodec;
+import com.google.gson.JsonObject;
+import net.minecraft.text.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 入站请求处理各步骤的基准：请求体解析、令牌校验和消息组件构建
+ *
+ * parseJsonObject为原先构建JsonObject树的解析方式，作为对照组；
+ * decodeInbound为MessageReceiverFeature当前使用的流式解码。
+ * authEquals为原先截取子串后用equals比较的方式，遇到第一个不同的字符就返回；
+ * authValid和authInvalid为现在的常量时间比较，两者耗时应当相同。
+ * formatText为原先String.format后每次新建组件的方式，composeText使用缓存的前缀组件。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InboundBenchmark {
+    private static final String API_KEY = "your-secret-key-6f1c2d4e-8a9b-4c3d-9e7f-0a1b2c3d4e5f";
+
+    private final Gson gson = new Gson();
+    private final ByteBuffer body = ByteBuffer.wrap(
+        "{\"message\":\"来自QQ群的消息，欢迎新玩家加入服务器\",\"prefix\":\"QQ\"}".getBytes(StandardCharsets.UTF_8));
+    private final byte[] expected = ("Bearer " + API_KEY).getBytes(StandardCharsets.UTF_8);
+    private final String validHeader = "Bearer " + API_KEY;
+    // 只有最后一个字符不同，比较需要走完整个字符串
+    private final String invalidHeader = "Bearer " + API_KEY.substring(0, API_KEY.length() - 1) + "0";
+    private String prefix = "QQ";
+    private String message = "来自QQ群的消息，欢迎新玩家加入服务器";
+
+    @Benchmark
+    public JsonObject parseJsonObject() {
+        String requestBody = StandardCharsets.UTF_8.decode(body.duplicate()).toString();
+        return gson.fromJson(requestBody, JsonObject.class);
+    }
+
+    @Benchmark
+    public MessageCodec.Inbound decodeInbound() {
+        return MessageReceiverFeature.decodeInbound(body.duplicate());
+    }
+
+    // 对照组：原先的比较方式
+    @Benchmark
+    public boolean authEquals() {
+        return invalidHeader.startsWith("Bearer ") && invalidHeader.substring(7).equals(API_KEY);
+    }
+
+    @Benchmark
+    public boolean authValid() {
+        return MessageReceiverFeature.isAuthorized(validHeader, expected);
+    }
+
+    @Benchmark
+    public boolean authInvalid() {
+        return MessageReceiverFeature.isAuthorized(invalidHeader, expected);
+    }
+
+    // 对照组：原先的消息构建方式
+    @Benchmark
+    public Text formatText() {
+        return Text.literal(String.format("[%s] %s", prefix, message));
+    }
+
+    @Benchmark
+    public Text composeText() {
+        return PrefixTextCache.compose(prefix, message);
+    }
+}
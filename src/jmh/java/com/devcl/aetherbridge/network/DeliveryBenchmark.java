@@ -0,0 +1,138 @@
+package com.devcl.aetherbridge.network;
+
+import com.devcl.aetherbridge.config.ModConfig;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 出站消息端到端基准：入队 -> 发送线程取出 -> HTTP发送到进程内的桩服务器
+ *
+ * 发送线程的处理方式与MessageSender一致：每条消息构建一个请求，
+ * 交给RetryScheduler占用并发名额、发送并等待结果后再处理下一条。
+ * 桩服务器不支持h2c升级，HTTP_2参数衡量的是升级协商失败后退回HTTP/1.1的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeliveryBenchmark {
+    private static final int MESSAGES = 100;
+
+    @Param({"1", "3", "8"})
+    public int workers;
+
+    @Param({"HTTP_1_1", "HTTP_2"})
+    public HttpClient.Version version;
+
+    private HttpServer stub;
+    private ExecutorService stubExecutor;
+    private OutboundQueue<byte[]> queue;
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private final Semaphore delivered = new Semaphore(0);
+    private volatile boolean running;
+    private HttpTransport transport;
+    private RetryScheduler retry;
+    private URI targetUri;
+    private byte[] json;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // JDK自带的HttpServer默认开启Nagle算法，与客户端的延迟确认叠加后每个响应会多出约40ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        stub = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        stubExecutor = Executors.newFixedThreadPool(8);
+        stub.setExecutor(stubExecutor);
+        byte[] response = "{\"status\":\"success\"}".getBytes(StandardCharsets.UTF_8);
+        stub.createContext("/api/mc-message", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        stub.start();
+        targetUri = URI.create("http://127.0.0.1:" + stub.getAddress().getPort() + "/api/mc-message");
+
+        json = MessageCodec.encodeChatMessage(UUID.randomUUID(), "Steve", "基准测试消息", "游戏");
+
+        transport = new HttpTransport(version, 2, 64, Duration.ofSeconds(10), Duration.ofSeconds(10));
+        retry = new RetryScheduler(transport, new ModConfig.RetryConfig());
+        queue = new OutboundQueue<>(1024, OutboundQueue.OverflowPolicy.BLOCK, 50, null);
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::runWorker, "Benchmark-Sender-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workerThreads.add(worker);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        for (Thread worker : workerThreads) {
+            worker.join(5000);
+        }
+        workerThreads.clear();
+        retry.close();
+        transport.close();
+        stub.stop(0);
+        stubExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void enqueueAndSend() throws InterruptedException {
+        for (int i = 0; i < MESSAGES; i++) {
+            queue.put(json, 10, TimeUnit.SECONDS);
+        }
+        delivered.acquire(MESSAGES);
+    }
+
+    private void runWorker() {
+        while (running) {
+            try {
+                byte[] next = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    continue;
+                }
+                retry.deliver(new RetryScheduler.Delivery(
+                    MessageSender.buildRequest(targetUri, "benchmark-key", next, transport.requestTimeout())), true);
+                delivered.release();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
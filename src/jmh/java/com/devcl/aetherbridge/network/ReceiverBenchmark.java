@@ -0,0 +1,181 @@
+package com.devcl.aetherbridge.network;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接收服务器负载基准
+ *
+ * 多个客户端线程各自保持一条keep-alive连接，发送与 /api/send-to-mc 相同大小的请求。
+ * server参数为nio时是NioHttpServer，为jdk时是改造前的com.sun.net.httpserver.HttpServer
+ * 加4个线程的固定线程池，两者在相同的客户端负载下比较：
+ * Throughput模式给出每秒请求数，SampleTime模式给出单个请求的延迟分布（看p0.99一行）。
+ *
+ * jdk服务器分两次写出响应头和响应体且没有关闭Nagle算法，keep-alive连接上的每个请求都会
+ * 等待对端的延迟确认，延迟在40ms左右，这也是改造前接收端的实际表现。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ReceiverBenchmark {
+
+    private static final byte[] RESPONSE = "{\"status\":\"success\"}".getBytes(StandardCharsets.UTF_8);
+
+    @State(Scope.Benchmark)
+    public static class ServerState {
+        @Param({"nio", "jdk"})
+        String server;
+
+        NioHttpServer nioServer;
+        HttpServer jdkServer;
+        ExecutorService jdkExecutor;
+        int port;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+            if ("nio".equals(server)) {
+                nioServer = new NioHttpServer(address, 64 * 1024, 256, 30000,
+                    request -> new NioHttpServer.Response(200).json("{\"status\":\"success\"}"));
+                nioServer.start();
+                port = nioServer.getPort();
+            } else {
+                // 与改造前的MessageReceiverFeature相同：读完请求体后返回JSON，处理器运行在4个线程的线程池中
+                jdkServer = HttpServer.create(address, 0);
+                jdkServer.createContext("/api/send-to-mc", exchange -> {
+                    try (InputStream body = exchange.getRequestBody()) {
+                        body.readAllBytes();
+                    }
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, RESPONSE.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(RESPONSE);
+                    }
+                });
+                jdkExecutor = Executors.newFixedThreadPool(4);
+                jdkServer.setExecutor(jdkExecutor);
+                jdkServer.start();
+                port = jdkServer.getAddress().getPort();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            if (nioServer != null) {
+                nioServer.stop();
+            }
+            if (jdkServer != null) {
+                jdkServer.stop(0);
+                jdkExecutor.shutdownNow();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ClientState {
+        Socket socket;
+        OutputStream out;
+        InputStream in;
+        byte[] request;
+        final byte[] buffer = new byte[4096];
+
+        @Setup(Level.Trial)
+        public void connect(ServerState server) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), server.port);
+            socket.setTcpNoDelay(true);
+            out = socket.getOutputStream();
+            in = socket.getInputStream();
+            byte[] body = "{\"message\":\"来自QQ群的消息，欢迎新玩家加入服务器\",\"prefix\":\"QQ\"}"
+                .getBytes(StandardCharsets.UTF_8);
+            byte[] head = ("POST /api/send-to-mc HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Content-Type: application/json\r\n" +
+                "Authorization: Bearer benchmark-key\r\n" +
+                "Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            request = new byte[head.length + body.length];
+            System.arraycopy(head, 0, request, 0, head.length);
+            System.arraycopy(body, 0, request, head.length, body.length);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public int sendToMc(ClientState client) throws IOException {
+        client.out.write(client.request);
+        client.out.flush();
+        return readResponse(client);
+    }
+
+    // 读取一个完整响应，返回响应体长度
+    private static int readResponse(ClientState client) throws IOException {
+        int length = 0;
+        int headerEnd = -1;
+        int contentLength = 0;
+        while (true) {
+            int n = client.in.read(client.buffer, length, client.buffer.length - length);
+            if (n < 0) {
+                throw new IOException("连接已被服务器关闭");
+            }
+            length += n;
+            if (headerEnd < 0) {
+                headerEnd = indexOfHeaderEnd(client.buffer, length);
+                if (headerEnd >= 0) {
+                    contentLength = parseContentLength(new String(client.buffer, 0, headerEnd, StandardCharsets.US_ASCII));
+                }
+            }
+            if (headerEnd >= 0 && length >= headerEnd + 4 + contentLength) {
+                return contentLength;
+            }
+        }
+    }
+
+    private static int indexOfHeaderEnd(byte[] data, int length) {
+        for (int i = 0; i + 3 < length; i++) {
+            if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && data[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseContentLength(String headers) {
+        for (String line : headers.split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                return Integer.parseInt(line.substring(colon + 1).trim());
+            }
+        }
+        return 0;
+    }
+}
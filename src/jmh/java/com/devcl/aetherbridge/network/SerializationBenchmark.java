@@ -0,0 +1,62 @@
+package com.devcl.aetherbridge.network;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 出站消息序列化基准
+ *
+ * gson为原先基于反射的序列化方式，作为对照组；codec为MessageSender当前使用的编码器。
+ * 使用 -prof gc 可以查看每条消息的分配字节数（gc.alloc.rate.norm）。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    private final Gson gson = new Gson();
+    private final UUID playerId = UUID.randomUUID();
+    private String playerName = "Steve";
+    private String message = "大家好，今天一起去挖钻石吧";
+    private String prefix = "游戏";
+
+    @Benchmark
+    public byte[] gson() {
+        ChatMessage chatMessage = new ChatMessage(playerId, playerName, message);
+        chatMessage.prefix = prefix;
+        return gson.toJson(chatMessage).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] codec() {
+        return MessageCodec.encodeChatMessage(playerId, playerName, message, prefix);
+    }
+
+    // 与改用MessageCodec之前MessageSender中的消息结构相同
+    private static class ChatMessage {
+        private final String playerId;
+        private final String playerName;
+        private final String message;
+        private String prefix;
+
+        ChatMessage(UUID playerId, String playerName, String message) {
+            this.playerId = playerId != null ? playerId.toString() : null;
+            this.playerName = playerName;
+            this.message = message;
+        }
+    }
+}
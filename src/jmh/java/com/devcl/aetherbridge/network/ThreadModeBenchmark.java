@@ -0,0 +1,181 @@
+package com.devcl.aetherbridge.network;
+
+import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.scheduler.VirtualThreads;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 平台线程与虚拟线程在大量慢请求下的对比
+ *
+ * 每次调用同时发出concurrent个请求，每个请求占用一个发送线程，经RetryScheduler发送并等待结果，
+ * 与MessageSender发送线程的处理方式一致。桩服务器在delayMs后才返回响应，模拟缓慢的远端。
+ * platform模式为每个请求准备一个平台线程（固定线程池），virtual模式每个请求一个虚拟线程。
+ *
+ * 吞吐量即 concurrent / 单次调用耗时；内存通过附加计数器报告，在所有请求都已到达桩服务器、
+ * 尚未返回时采样：rssMb为进程常驻内存（包括线程栈），heapMb为已用堆内存。
+ * virtual模式需要在Java 21及以上运行，在更低版本上该组参数会因不支持而失败。
+ * 10000个并发请求在同一进程内需要约两万个文件描述符，运行前请确认ulimit -n足够。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, batchSize = 1)
+@Measurement(iterations = 5, batchSize = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class ThreadModeBenchmark {
+    @Param({"1000", "10000"})
+    public int concurrent;
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    @Param({"200"})
+    public long delayMs;
+
+    private HttpServer stub;
+    private ScheduledExecutorService responder;
+    private final AtomicInteger arrived = new AtomicInteger();
+    private ExecutorService senders;
+    private HttpTransport transport;
+    private RetryScheduler retry;
+    private URI targetUri;
+    private byte[] json;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Memory {
+        public double rssMb;
+        public double heapMb;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        boolean virtual = VirtualThreads.Mode.fromConfig(mode) == VirtualThreads.Mode.VIRTUAL;
+        if (virtual && !VirtualThreads.isSupported()) {
+            throw new UnsupportedOperationException("当前Java版本不支持虚拟线程，跳过virtual模式");
+        }
+
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        stub = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), concurrent);
+        responder = Executors.newSingleThreadScheduledExecutor();
+        byte[] response = "{\"status\":\"success\"}".getBytes(StandardCharsets.UTF_8);
+        // 处理器只登记请求，响应由定时线程延迟发出，桩服务器本身不需要为每个请求占用线程
+        stub.createContext("/api/mc-message", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            arrived.incrementAndGet();
+            responder.schedule(() -> respond(exchange, response), delayMs, TimeUnit.MILLISECONDS);
+        });
+        stub.start();
+        targetUri = URI.create("http://127.0.0.1:" + stub.getAddress().getPort() + "/api/mc-message");
+
+        json = MessageCodec.encodeChatMessage(UUID.randomUUID(), "Steve", "基准测试消息", "游戏");
+
+        // 并发名额与请求数相同，瓶颈只在发送线程上
+        transport = new HttpTransport(HttpClient.Version.HTTP_1_1, 2, concurrent,
+            Duration.ofSeconds(10), Duration.ofSeconds(60), virtual);
+        retry = new RetryScheduler(transport, new ModConfig.RetryConfig());
+        if (virtual) {
+            senders = VirtualThreads.newPerTaskExecutor("Benchmark-Sender-");
+        } else {
+            AtomicInteger index = new AtomicInteger();
+            senders = Executors.newFixedThreadPool(concurrent, r -> {
+                Thread thread = new Thread(r, "Benchmark-Sender-" + index.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        senders.shutdownNow();
+        retry.close();
+        transport.close();
+        stub.stop(0);
+        responder.shutdownNow();
+    }
+
+    @Benchmark
+    public void slowRequests(Memory memory) throws InterruptedException {
+        arrived.set(0);
+        CountDownLatch done = new CountDownLatch(concurrent);
+        for (int i = 0; i < concurrent; i++) {
+            senders.execute(() -> {
+                try {
+                    retry.deliver(new RetryScheduler.Delivery(
+                        MessageSender.buildRequest(targetUri, "benchmark-key", json, transport.requestTimeout())), true);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        // 所有请求都在等待响应时采样内存
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (arrived.get() < concurrent && done.getCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        memory.rssMb = readRssKb() / 1024.0;
+        memory.heapMb = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024.0 * 1024.0);
+        done.await();
+    }
+
+    private static void respond(HttpExchange exchange, byte[] response) {
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            out.write(response);
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    // 只在Linux上可用，其他系统报告0
+    private static long readRssKb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // 忽略
+        }
+        return 0;
+    }
+}
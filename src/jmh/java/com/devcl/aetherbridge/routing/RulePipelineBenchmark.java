@@ -0,0 +1,147 @@
+package com.devcl.aetherbridge.routing;
+
+import com.devcl.aetherbridge.config.ModConfig;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+
+/**
+ * 规则管道在大量规则下的匹配耗时
+ *
+ * 规则集合中九成是关键词规则（每条两个关键词，中英文各一），其余为startsWith规则和少量
+ * 以关键词为前置条件的正则规则，最后一条规则命中hit消息。
+ * match为RulePipeline的预编译匹配；naive为对照组，逐条规则做toLowerCase + contains、
+ * startsWith和正则查找，耗时与规则数量成正比。
+ * short和long两种消息不命中任何规则，两种方式都要检查完所有规则，是最坏情况。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulePipelineBenchmark {
+    private static final IntPredicate NO_PERMISSION = level -> false;
+
+    @Param({"1000"})
+    public int rules;
+
+    @Param({"short", "long", "hit"})
+    public String message;
+
+    private RulePipeline pipeline;
+    private List<ModConfig.RuleConfig> configs;
+    private Pattern[] patterns;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        Gson gson = new Gson();
+        JsonArray array = new JsonArray();
+        for (int i = 0; i < rules; i++) {
+            JsonObject rule = new JsonObject();
+            rule.addProperty("name", "rule-" + i);
+            if (i == rules - 1) {
+                JsonArray keywords = new JsonArray();
+                keywords.add("钻石矿");
+                rule.add("keywords", keywords);
+                rule.addProperty("prefix", "交易");
+            } else if (i % 50 == 7) {
+                // 正则规则同时配置关键词，没有命中关键词时不执行正则
+                JsonArray keywords = new JsonArray();
+                keywords.add("code-" + i + "-");
+                rule.add("keywords", keywords);
+                rule.addProperty("pattern", "(?i)\\bcode-" + i + "-[0-9]{4}\\b");
+            } else if (i % 10 == 3) {
+                JsonArray startsWith = new JsonArray();
+                startsWith.add("!cmd" + i);
+                rule.add("startsWith", startsWith);
+                rule.addProperty("action", "drop");
+            } else {
+                JsonArray keywords = new JsonArray();
+                keywords.add("Spam" + i + "x");
+                keywords.add("广告" + i + "号");
+                rule.add("keywords", keywords);
+                rule.addProperty("action", "drop");
+            }
+            array.add(rule);
+        }
+        configs = new ArrayList<>();
+        for (int i = 0; i < array.size(); i++) {
+            configs.add(gson.fromJson(array.get(i), ModConfig.RuleConfig.class));
+        }
+        pipeline = RulePipeline.compile(configs);
+        patterns = new Pattern[configs.size()];
+        for (int i = 0; i < patterns.length; i++) {
+            String pattern = configs.get(i).getPattern();
+            patterns[i] = pattern.isEmpty() ? null : Pattern.compile(pattern);
+        }
+
+        switch (message) {
+            case "short" -> text = "有人一起去下界吗";
+            case "long" -> text = "今天在主城东边盖了一座新的仓库，".repeat(20) + "欢迎大家来参观 see you there";
+            case "hit" -> text = "出售钻石矿，价格可议";
+            default -> throw new IllegalArgumentException(message);
+        }
+    }
+
+    @Benchmark
+    public RulePipeline.Rule match() {
+        return pipeline.match(text, NO_PERMISSION);
+    }
+
+    @Benchmark
+    public ModConfig.RuleConfig naive() {
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < configs.size(); i++) {
+            ModConfig.RuleConfig config = configs.get(i);
+            if (!config.getKeywords().isEmpty()) {
+                boolean found = false;
+                for (String keyword : config.getKeywords()) {
+                    if (lower.contains(keyword.toLowerCase(Locale.ROOT))) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    continue;
+                }
+            }
+            if (!config.getStartsWith().isEmpty()) {
+                boolean found = false;
+                for (String start : config.getStartsWith()) {
+                    if (text.startsWith(start)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    continue;
+                }
+            }
+            if (patterns[i] != null && !patterns[i].matcher(text).find()) {
+                continue;
+            }
+            return config;
+        }
+        return null;
+    }
+}
@@ -1,14 +1,19 @@
 package com.devcl.aetherbridge;
 
+import com.devcl.aetherbridge.config.ConfigWatcher;
 import com.devcl.aetherbridge.config.ModConfig;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.fabricmc.api.Environment;
 import net.fabricmc.api.EnvType;
 import com.devcl.aetherbridge.command.ModCommands;
 import com.devcl.aetherbridge.feature.FeatureManager;
 import com.devcl.aetherbridge.network.MessageSender;
+import com.devcl.aetherbridge.scheduler.MainThreadScheduler;
+
+import java.io.IOException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +41,7 @@ public class AetherBridge implements ModInitializer {
 	public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
 
 	private static FeatureManager featureManager;
+	private static ConfigWatcher configWatcher;
 
 	@Override
 	public void onInitialize() {
@@ -52,17 +58,56 @@ public class AetherBridge implements ModInitializer {
 			LOGGER.info("正在启动AetherBridge...");
 			featureManager = FeatureManager.getInstance(server);
 			featureManager.reloadFeatures();
+			// 重新发送上次未送达的消息
+			MessageSender.replayOutbox();
+			startConfigWatcher();
 		});
 		
+		// 每个tick结束时按时间预算执行主线程任务
+		ServerTickEvents.END_SERVER_TICK.register(MainThreadScheduler::onServerTick);
+		
 		ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
 			LOGGER.info("正在关闭AetherBridge...");
+			if (configWatcher != null) {
+				configWatcher.close();
+				configWatcher = null;
+			}
 			if (featureManager != null) {
 				featureManager.shutdown();
 			}
 			// 关闭消息发送线程池
 			MessageSender.shutdown();
+			MainThreadScheduler.clear();
 		});
 		
 		LOGGER.info("AetherBridge初始化完成！");
 	}
+	
+	/**
+	 * 监视配置文件，保存后自动重新加载
+	 * 读取和验证在监视线程中完成，组件的重启在AetherBridge-Config线程中执行，不会阻塞服务器tick
+	 */
+	private static void startConfigWatcher() {
+		if (!ModConfig.getInstance().isWatchConfigFile()) {
+			return;
+		}
+		configWatcher = new ConfigWatcher(ModConfig.getConfigPath(), () -> {
+			try {
+				if (!ModConfig.loadConfig()) {
+					return;
+				}
+			} catch (IllegalStateException e) {
+				LOGGER.error("配置文件无效，继续使用当前配置: " + e.getMessage());
+				return;
+			}
+			LOGGER.info("检测到配置文件变化，已重新加载");
+			featureManager.applyConfigInBackground();
+		});
+		try {
+			configWatcher.start();
+		} catch (IOException e) {
+			LOGGER.error("无法监视配置文件，修改配置后请执行 /aetherbridge reload", e);
+			configWatcher = null;
+		}
+	}
 }
\ No newline at end of file
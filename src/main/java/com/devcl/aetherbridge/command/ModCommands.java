@@ -3,6 +3,14 @@ package com.devcl.aetherbridge.command;
 import com.devcl.aetherbridge.AetherBridge;
 import com.devcl.aetherbridge.config.ModConfig;
 import com.devcl.aetherbridge.feature.FeatureManager;
+import com.devcl.aetherbridge.logging.BridgeLog;
+import com.devcl.aetherbridge.metrics.LatencyHistogram;
+import com.devcl.aetherbridge.metrics.Metrics;
+import com.devcl.aetherbridge.network.CircuitBreaker;
+import com.devcl.aetherbridge.network.Destination;
+import com.devcl.aetherbridge.network.MessageSender;
+import com.devcl.aetherbridge.network.OutboundQueue;
+import com.devcl.aetherbridge.scheduler.MainThreadScheduler;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.context.CommandContext;
 import net.minecraft.server.command.ServerCommandSource;
@@ -30,6 +38,17 @@ public class ModCommands {
             .then(literal("info")
                 .executes(ModCommands::showInfo)
             )
+            .then(literal("stats")
+                .executes(ModCommands::showStats)
+            )
+            .then(literal("trace")
+                .then(literal("on")
+                    .executes(context -> setTrace(context, true))
+                )
+                .then(literal("off")
+                    .executes(context -> setTrace(context, false))
+                )
+            )
             .then(literal("feature")
                 .then(argument("featureId", StringArgumentType.word())
                     .then(literal("enable")
@@ -74,7 +93,34 @@ public class ModCommands {
                 .append(Text.literal("\n§6=== 功能状态 ===§r\n"))
                 .append(Text.literal("§2消息发送: §f" + (ModConfig.getInstance().isFeatureEnabled("messageSender") ? "§a启用" : "§c禁用") + "\n"))
                 .append(Text.literal("§2消息接收: §f" + (ModConfig.getInstance().isFeatureEnabled("messageReceiver") ? "§a启用" : "§c禁用") + "\n"))
-                .append(Text.literal("\n§6=== 网络信息 ===§r\n"));
+                .append(Text.literal("\n§6=== 发送队列 ===§r\n"));
+            
+            // 添加发送队列统计
+            OutboundQueue.Stats queueStats = MessageSender.getQueueStats();
+            if (queueStats != null) {
+                info.append(Text.literal("§2队列深度: §f" + queueStats.depth + "/" + queueStats.capacity + "\n"))
+                    .append(Text.literal("§2已入队: §f" + queueStats.enqueued + "\n"))
+                    .append(Text.literal("§2已丢弃: §f" + queueStats.dropped + "\n"))
+                    .append(Text.literal("§2已合并: §f" + queueStats.coalesced + "\n"))
+                    .append(Text.literal("§2入队耗时: §f平均 " + queueStats.avgEnqueueNanos / 1000 + "μs, 最大 " + 
+                                       queueStats.maxEnqueueNanos / 1000 + "μs\n"));
+            } else {
+                info.append(Text.literal("§7发送队列尚未创建\n"));
+            }
+            
+            // 添加主线程调度统计
+            MainThreadScheduler.Stats schedulerStats = MainThreadScheduler.getStats();
+            info.append(Text.literal("\n§6=== 主线程调度 ===§r\n"))
+                .append(Text.literal("§2每tick预算: §f" + ModConfig.getInstance().getScheduler().getTickBudgetNanos() / 1000 + "μs\n"))
+                .append(Text.literal("§2每tick耗时: §f上次 " + schedulerStats.lastTickNanos / 1000 + "μs, 平均 " + 
+                                   schedulerStats.avgTickNanos / 1000 + "μs, 最大 " + schedulerStats.maxTickNanos / 1000 + "μs\n"))
+                .append(Text.literal("§2超出预算的tick: §f" + schedulerStats.overBudgetTicks + "\n"))
+                .append(Text.literal("§2排队任务: §f" + schedulerStats.queued + " (上一tick延后 " + schedulerStats.deferredLastTick + 
+                                   ", 累计延后 " + schedulerStats.deferredTotal + ", 已拒绝 " + schedulerStats.rejected + ")\n"))
+                .append(Text.literal("§2排队时间: §f当前最久 " + schedulerStats.oldestQueueAgeNanos / 1_000_000 + "ms, 最大 " + 
+                                   schedulerStats.maxQueueAgeNanos / 1_000_000 + "ms\n"));
+            
+            info.append(Text.literal("\n§6=== 网络信息 ===§r\n"));
             
             // 添加IP地址信息
             if (!ipAddresses.isEmpty()) {
@@ -106,13 +152,104 @@ public class ModCommands {
         }
     }
 
+    private static int showStats(CommandContext<ServerCommandSource> context) {
+        try {
+            OutboundQueue.Stats queueStats = MessageSender.getQueueStats();
+            MainThreadScheduler.Stats schedulerStats = MainThreadScheduler.getStats();
+            
+            MutableText stats = Text.literal("")
+                .append(Text.literal("§6=== AetherBridge 运行统计 ===§r\n"))
+                .append(Text.literal("\n§6出站§r\n"))
+                .append(Text.literal("§2已送达: §f" + Metrics.OUTBOUND_SENT.get() + 
+                                   " §2失败: §f" + Metrics.OUTBOUND_FAILED.get() + 
+                                   " §2重试: §f" + Metrics.OUTBOUND_RETRIES.get() + 
+                                   " §2WebSocket: §f" + Metrics.OUTBOUND_WEBSOCKET.get() + "\n"))
+                .append(Text.literal("§2发送耗时: §f" + formatLatency(Metrics.SEND_LATENCY) + "\n"))
+                .append(Text.literal("§2重试耗时: §f" + formatLatency(Metrics.RETRY_LATENCY) + "\n"))
+                .append(Text.literal("§2队列深度: §f" + (queueStats != null ? queueStats.depth + "/" + queueStats.capacity : "未创建") + 
+                                   " §2进行中的请求: §f" + MessageSender.getHttpInFlight() + "\n"))
+                .append(Text.literal("§2熔断器: §f" + formatCircuitState(MessageSender.getCircuitState()) + 
+                                   " §2保留中的请求: §f" + MessageSender.getHeldCount() + "\n"))
+                .append(Text.literal("\n§6入站§r\n"))
+                .append(Text.literal("§2请求: §f" + Metrics.INBOUND_REQUESTS.get() + 
+                                   " §2拒绝: §f" + Metrics.INBOUND_REJECTED.get() + 
+                                   " §2消息: §f" + Metrics.INBOUND_MESSAGES.get() + 
+                                   " §2已广播: §f" + Metrics.BROADCASTS.get() + "\n"))
+                .append(Text.literal("§2广播延迟: §f" + formatLatency(Metrics.BROADCAST_LATENCY) + "\n"))
+                .append(Text.literal("§2主线程排队任务: §f" + schedulerStats.queued + 
+                                   " §2上一tick耗时: §f" + schedulerStats.lastTickNanos / 1000 + "μs\n"));
+            
+            List<Destination> destinations = MessageSender.getActiveDestinations();
+            if (!destinations.isEmpty()) {
+                stats.append(Text.literal("\n§6出站目标§r\n"));
+                for (Destination destination : destinations) {
+                    OutboundQueue.Stats destinationQueue = destination.getQueueStats();
+                    stats.append(Text.literal("§2" + destination.getName() + 
+                                            ": §f已送达 " + destination.getDelivered() + 
+                                            ", 失败 " + destination.getFailed() + 
+                                            ", 队列 " + destinationQueue.depth + "/" + destinationQueue.capacity + 
+                                            ", 丢弃 " + destinationQueue.dropped + 
+                                            ", 熔断器 " + formatCircuitState(destination.getCircuitState()) + 
+                                            "§f, 保留 " + destination.getHeldCount() + "\n"));
+                }
+            }
+            
+            if (ModConfig.getInstance().getMetrics().isEnabled()) {
+                stats.append(Text.literal("\n§7完整指标: http://localhost:" + ModConfig.getInstance().getListenPort() + "/metrics\n"));
+            }
+            
+            context.getSource().sendFeedback(() -> stats, false);
+            return 1;
+        } catch (Exception e) {
+            AetherBridge.LOGGER.error("显示运行统计时出错", e);
+            context.getSource().sendError(Text.literal("§c显示运行统计时出错: " + e.getMessage()));
+            return 0;
+        }
+    }
+    
+    private static String formatCircuitState(CircuitBreaker.State state) {
+        switch (state) {
+            case OPEN:
+                return "§c打开";
+            case HALF_OPEN:
+                return "§e探测中";
+            default:
+                return "§a关闭";
+        }
+    }
+    
+    private static String formatLatency(LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        if (snapshot.count() == 0) {
+            return "§7暂无数据";
+        }
+        return "p50 " + formatMillis(snapshot.percentileNanos(0.5)) + 
+               ", p99 " + formatMillis(snapshot.percentileNanos(0.99)) + 
+               ", 最大 " + formatMillis(snapshot.maxNanos) + 
+               " (" + snapshot.count() + "次)";
+    }
+    
+    private static String formatMillis(long nanos) {
+        return String.format("%.1fms", nanos / 1_000_000.0);
+    }
+
+    /**
+     * 运行时开关逐条消息的跟踪日志，不写入配置文件，重新加载配置后恢复为logging.trace的值
+     */
+    private static int setTrace(CommandContext<ServerCommandSource> context, boolean enabled) {
+        BridgeLog.setTrace(enabled);
+        context.getSource().sendFeedback(() -> 
+            Text.literal(enabled ? "§a消息跟踪日志已开启" : "§c消息跟踪日志已关闭"), true);
+        return 1;
+    }
+
     private static int reloadConfig(CommandContext<ServerCommandSource> context) {
         try {
             ModConfig.loadConfig();
-            // 重新加载功能状态
+            // 只重启配置有变化的组件，重启在后台线程中进行，不阻塞服务器tick
             FeatureManager manager = FeatureManager.getInstance(context.getSource().getServer());
-            manager.reloadFeatures();
-            context.getSource().sendFeedback(() -> Text.literal("§a配置已重新加载"), true);
+            manager.applyConfigInBackground();
+            context.getSource().sendFeedback(() -> Text.literal("§a配置已重新加载，有变化的组件正在后台重启"), true);
             return 1;
         } catch (Exception e) {
             AetherBridge.LOGGER.error("重新加载配置失败", e);
@@ -123,16 +260,16 @@ public class ModCommands {
 
     private static int hotReload(CommandContext<ServerCommandSource> context) {
         try {
-            context.getSource().sendFeedback(() -> Text.literal("§6正在执行热重载，请稍候..."), true);
+            ServerCommandSource source = context.getSource();
+            source.sendFeedback(() -> Text.literal("§6正在后台执行热重载，请稍候..."), true);
             
             // 重新加载配置
             ModConfig.loadConfig();
             
-            // 执行热重载
-            FeatureManager manager = FeatureManager.getInstance(context.getSource().getServer());
-            manager.hotReload();
-            
-            context.getSource().sendFeedback(() -> Text.literal("§a热重载完成！所有功能已重新初始化"), true);
+            // 关闭和重建所有功能需要几秒，在后台线程中执行，完成后回到主线程发送反馈
+            FeatureManager manager = FeatureManager.getInstance(source.getServer());
+            manager.hotReloadInBackground(() -> MainThreadScheduler.submit(() ->
+                source.sendFeedback(() -> Text.literal("§a热重载完成！所有功能已重新初始化"), true)));
             return 1;
         } catch (Exception e) {
             AetherBridge.LOGGER.error("执行热重载失败", e);
@@ -150,12 +287,12 @@ public class ModCommands {
                 return 0;
             }
             
-            manager.enableFeature(featureId);
-            ModConfig.getInstance().setFeatureEnabled(featureId, true);
-            ModConfig.saveConfig();
+            ModConfig.setFeatureEnabled(featureId, true);
+            // 启动功能可能需要几秒，在后台线程中进行
+            manager.enableFeatureInBackground(featureId);
             
             context.getSource().sendFeedback(() -> 
-                Text.literal("§a功能已启用: " + featureId), true);
+                Text.literal("§a正在启用功能: " + featureId), true);
             return 1;
         } catch (Exception e) {
             context.getSource().sendError(Text.literal("§c启用功能失败: " + e.getMessage()));
@@ -172,12 +309,12 @@ public class ModCommands {
                 return 0;
             }
             
-            manager.disableFeature(featureId);
-            ModConfig.getInstance().setFeatureEnabled(featureId, false);
-            ModConfig.saveConfig();
+            ModConfig.setFeatureEnabled(featureId, false);
+            // 关闭功能需要等待发送线程和采集队列，在后台线程中进行
+            manager.disableFeatureInBackground(featureId);
             
             context.getSource().sendFeedback(() -> 
-                Text.literal("§c功能已禁用: " + featureId), true);
+                Text.literal("§c正在禁用功能: " + featureId), true);
             return 1;
         } catch (Exception e) {
             context.getSource().sendError(Text.literal("§c禁用功能失败: " + e.getMessage()));
@@ -199,13 +336,27 @@ public class ModCommands {
                 .append(manager.isFeatureEnabled("messageReceiver") ? "§a启用\n" : "§c禁用\n")
                 .append("§7- 接收外部消息并在游戏内广播\n");
             
+            message.append("§2WebSocket传输 (websocketTransport): §r")
+                .append(manager.isFeatureEnabled("websocketTransport") ? "§a启用\n" : "§c禁用\n")
+                .append("§7- 通过WebSocket长连接收发消息，由transport配置决定\n");
+            
+            message.append("§2游戏事件推送 (gameEvents): §r")
+                .append(manager.isFeatureEnabled("gameEvents") ? "§a启用\n" : "§c禁用\n")
+                .append("§7- 推送玩家加入、离开、死亡、进度和服务器启停等事件\n");
+            
+            message.append("§2运行数据推送 (telemetry): §r")
+                .append(manager.isFeatureEnabled("telemetry") ? "§a启用\n" : "§c禁用\n")
+                .append("§7- 定时推送TPS、MSPT、在线人数、区块数和内存等运行数据\n");
+            
             // 添加使用说明
             message.append("\n§6命令使用说明:§r\n")
                 .append("§7/aetherbridge feature <功能ID> enable §r- 启用功能\n")
                 .append("§7/aetherbridge feature <功能ID> disable §r- 禁用功能\n")
                 .append("\n§6可用功能ID:§r\n")
                 .append("§7- messageSender §r- 消息发送功能\n")
-                .append("§7- messageReceiver §r- 消息接收功能\n");
+                .append("§7- messageReceiver §r- 消息接收功能\n")
+                .append("§7- gameEvents §r- 游戏事件推送功能\n")
+                .append("§7- telemetry §r- 运行数据推送功能\n");
             
             // 添加配置提示
             message.append("\n§6提示:§r\n")
@@ -0,0 +1,97 @@
+package com.devcl.aetherbridge.config;
+
+import com.devcl.aetherbridge.AetherBridge;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监视配置文件，文件被修改后回调
+ *
+ * WatchService只能监视目录，这里监视配置文件所在目录并按文件名过滤。
+ * 编辑器保存时往往会产生多个事件（截断、写入、重命名），收到事件后等文件稳定一段时间再回调。
+ */
+public final class ConfigWatcher implements Runnable {
+    private static final long SETTLE_MS = 300;
+
+    private final Path file;
+    private final Runnable onChange;
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * @param onChange 在监视线程中调用
+     */
+    public ConfigWatcher(Path file, Runnable onChange) {
+        this.file = file;
+        this.onChange = onChange;
+    }
+
+    public void start() throws IOException {
+        Path directory = file.getParent();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this, "AetherBridge-ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+        AetherBridge.LOGGER.info("正在监视配置文件: " + file);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = drain(key);
+                if (!changed) {
+                    continue;
+                }
+                // 等待后续事件平息
+                while ((key = watchService.poll(SETTLE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    drain(key);
+                }
+                try {
+                    onChange.run();
+                } catch (Exception e) {
+                    AetherBridge.LOGGER.error("处理配置文件变化时出错", e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 关闭监视
+        }
+    }
+
+    // 取出并重置一个WatchKey上的事件，返回其中是否有配置文件的变化
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                AetherBridge.LOGGER.debug("关闭配置文件监视时出错: {}", e.getMessage());
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+} 
\ No newline at end of file
@@ -2,14 +2,31 @@ package com.devcl.aetherbridge.config;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import net.fabricmc.loader.api.FabricLoader;
 import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.logging.BridgeLog;
+import com.devcl.aetherbridge.network.BodyCompressor;
+import com.devcl.aetherbridge.network.OutboundQueue;
+import com.devcl.aetherbridge.routing.RulePipeline;
+import com.devcl.aetherbridge.scheduler.VirtualThreads;
+import java.net.http.HttpClient;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class ModConfig {
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
@@ -19,9 +36,36 @@ public class ModConfig {
     private String apiKey = "your-secret-key";
     private int listenPort = 8080;
     private String defaultChatPrefix = "游戏";
+    private String transport = "http";
+    private boolean watchConfigFile = true;
     private Map<String, Boolean> features = new HashMap<>();
+    private List<RuleConfig> rules = new ArrayList<>();
+    private BatchConfig batch = new BatchConfig();
+    private EncodingConfig encoding = new EncodingConfig();
+    private QueueConfig queue = new QueueConfig();
+    private DedupConfig dedup = new DedupConfig();
+    private OutboxConfig outbox = new OutboxConfig();
+    private EventsConfig events = new EventsConfig();
+    private TelemetryConfig telemetry = new TelemetryConfig();
+    private WebSocketConfig websocket = new WebSocketConfig();
+    private ReceiverConfig receiver = new ReceiverConfig();
+    private IdempotencyConfig idempotency = new IdempotencyConfig();
+    private SchedulerConfig scheduler = new SchedulerConfig();
+    private HttpConfig http = new HttpConfig();
+    private ThreadsConfig threads = new ThreadsConfig();
+    private RetryConfig retry = new RetryConfig();
+    private List<DestinationConfig> destinations = new ArrayList<>();
+    private RateLimitConfig rateLimit = new RateLimitConfig();
+    private MetricsConfig metrics = new MetricsConfig();
+    private LoggingConfig logging = new LoggingConfig();
+    // 由rules编译而来，在validate中生成，不写入配置文件
+    private transient RulePipeline rulePipeline = RulePipeline.empty();
+    // 入站请求Authorization请求头的期望值（"Bearer "加API密钥的UTF-8字节），在validate中生成
+    private transient byte[] expectedAuthorization = new byte[0];
     
-    private static ModConfig INSTANCE;
+    // 当前生效的配置快照，发布后不再修改
+    // 读取方在一次处理中只取一次引用，就能得到一致的配置视图
+    private static volatile ModConfig INSTANCE;
     
     // 创建默认配置
     private static ModConfig createDefaultConfig() {
@@ -38,37 +82,141 @@ public class ModConfig {
     }
     
     public static ModConfig getInstance() {
-        if (INSTANCE == null) {
-            loadConfig();
+        ModConfig config = INSTANCE;
+        if (config == null) {
+            synchronized (ModConfig.class) {
+                if (INSTANCE == null) {
+                    loadConfig();
+                }
+                config = INSTANCE;
+            }
         }
-        return INSTANCE;
+        return config;
+    }
+    
+    public static Path getConfigPath() {
+        return CONFIG_PATH;
     }
     
-    public static void loadConfig() {
+    /**
+     * 从配置文件加载、验证并发布新的快照
+     * 配置无效时抛出IllegalStateException，当前快照保持不变
+     * @return 配置内容是否有变化
+     */
+    public static synchronized boolean loadConfig() {
+        ModConfig loaded;
         try {
             if (Files.exists(CONFIG_PATH)) {
                 try (Reader reader = Files.newBufferedReader(CONFIG_PATH)) {
-                    INSTANCE = GSON.fromJson(reader, ModConfig.class);
+                    loaded = GSON.fromJson(reader, ModConfig.class);
+                } catch (JsonParseException e) {
+                    throw new IllegalStateException("配置文件格式错误: " + e.getMessage(), e);
                 }
+                if (loaded == null) {
+                    throw new IllegalStateException("配置文件为空");
+                }
+                loaded.validate();
             } else {
-                INSTANCE = createDefaultConfig();
+                loaded = createDefaultConfig();
+                loaded.validate();
+                publish(loaded);
                 AetherBridge.LOGGER.info("正在创建默认配置文件...");
                 saveConfig();
                 AetherBridge.LOGGER.info("默认配置文件已创建在: " + CONFIG_PATH);
                 AetherBridge.LOGGER.info("请修改配置文件中的API密钥和其他设置！");
-            }
-            
-            // 验证配置
-            if (INSTANCE != null) {
-                INSTANCE.validate();
+                return true;
             }
         } catch (IOException e) {
             AetherBridge.LOGGER.error("加载配置文件失败", e);
-            INSTANCE = createDefaultConfig();
+            if (INSTANCE != null) {
+                return false;
+            }
+            loaded = createDefaultConfig();
+            loaded.validate();
+        }
+        return publish(loaded);
+    }
+    
+    /**
+     * 修改功能开关并保存，以当前快照的副本发布
+     */
+    public static synchronized void setFeatureEnabled(String featureId, boolean enabled) {
+        ModConfig next = GSON.fromJson(GSON.toJsonTree(getInstance()), ModConfig.class);
+        next.features = new HashMap<>(next.features);
+        next.features.put(featureId, enabled);
+        next.validate();
+        publish(next);
+        saveConfig();
+    }
+    
+    /**
+     * 发布已验证的快照
+     * 内容没有变化的配置段沿用上一个快照中的对象，组件可以用引用比较判断自己的配置是否改变
+     * @return 内容与当前快照相同时不发布，返回false
+     */
+    private static boolean publish(ModConfig next) {
+        next.features = Collections.unmodifiableMap(next.features);
+        next.rules = Collections.unmodifiableList(next.rules);
+        next.destinations = Collections.unmodifiableList(next.destinations);
+        ModConfig previous = INSTANCE;
+        if (previous != null) {
+            if (GSON.toJsonTree(next).equals(GSON.toJsonTree(previous))) {
+                return false;
+            }
+            next.features = unchanged(next.features, previous.features);
+            if (unchanged(next.rules, previous.rules) == previous.rules) {
+                next.rules = previous.rules;
+                next.rulePipeline = previous.rulePipeline;
+            }
+            next.batch = unchanged(next.batch, previous.batch);
+            next.encoding = unchanged(next.encoding, previous.encoding);
+            next.queue = unchanged(next.queue, previous.queue);
+            next.dedup = unchanged(next.dedup, previous.dedup);
+            next.outbox = unchanged(next.outbox, previous.outbox);
+            next.events = unchanged(next.events, previous.events);
+            next.telemetry = unchanged(next.telemetry, previous.telemetry);
+            next.websocket = unchanged(next.websocket, previous.websocket);
+            next.receiver = unchanged(next.receiver, previous.receiver);
+            next.idempotency = unchanged(next.idempotency, previous.idempotency);
+            next.scheduler = unchanged(next.scheduler, previous.scheduler);
+            next.http = unchanged(next.http, previous.http);
+            next.threads = unchanged(next.threads, previous.threads);
+            next.retry = unchanged(next.retry, previous.retry);
+            next.destinations = unchangedDestinations(next.destinations, previous.destinations);
+            next.rateLimit = unchanged(next.rateLimit, previous.rateLimit);
+            next.metrics = unchanged(next.metrics, previous.metrics);
+            next.logging = unchanged(next.logging, previous.logging);
         }
+        INSTANCE = next;
+        BridgeLog.applyConfig(next.logging);
+        return true;
     }
     
-    public static void saveConfig() {
+    private static <T> T unchanged(T current, T previous) {
+        return GSON.toJsonTree(current).equals(GSON.toJsonTree(previous)) ? previous : current;
+    }
+    
+    // 按名称逐个沿用没有变化的目标，只有修改过的目标需要重建
+    private static List<DestinationConfig> unchangedDestinations(List<DestinationConfig> current,
+                                                                 List<DestinationConfig> previous) {
+        if (unchanged(current, previous) == previous) {
+            return previous;
+        }
+        List<DestinationConfig> merged = new ArrayList<>(current.size());
+        for (DestinationConfig destination : current) {
+            DestinationConfig reused = destination;
+            for (DestinationConfig old : previous) {
+                if (old.getName().equals(destination.getName())) {
+                    reused = unchanged(destination, old);
+                    break;
+                }
+            }
+            merged.add(reused);
+        }
+        return Collections.unmodifiableList(merged);
+    }
+    
+    public static synchronized void saveConfig() {
         try {
             Files.createDirectories(CONFIG_PATH.getParent());
             try (Writer writer = Files.newBufferedWriter(CONFIG_PATH)) {
@@ -76,9 +224,31 @@ public class ModConfig {
                 writer.write("// apiUrl: 远程服务器的API地址\n");
                 writer.write("// apiKey: 用于验证的密钥，与远程服务器保持一致\n");
                 writer.write("// listenPort: HTTP服务器监听端口\n");
+                writer.write("// transport: 传输方式，http为逐条HTTP请求，websocket为与websocket.url保持长连接\n");
+                writer.write("// watchConfigFile: 监视配置文件，保存后自动重新加载，只重启配置有变化的组件\n");
+                writer.write("// rules: 出站聊天消息的过滤和路由规则，按顺序取第一条匹配的规则，action为forward或drop\n");
                 writer.write("// features: 功能开关配置\n");
                 writer.write("//   - messageSender: 消息发送功能\n");
-                writer.write("//   - messageReceiver: 消息接收功能\n\n");
+                writer.write("//   - messageReceiver: 消息接收功能\n");
+                writer.write("//   - gameEvents: 游戏事件推送（加入、离开、死亡、进度、服务器启停和在线人数）\n");
+                writer.write("//   - telemetry: 服务器运行数据推送（TPS、MSPT、在线人数、区块数、堆内存和GC）\n");
+                writer.write("// batch: 批量发送配置，apiUrl为空时使用单条发送接口\n");
+                writer.write("// encoding: 主目标HTTP请求体的格式和压缩，format可选json或binary，compression可选none、gzip、deflate\n");
+                writer.write("// queue: 发送队列配置，overflowPolicy可选drop-oldest、drop-newest、coalesce、block\n");
+                writer.write("// dedup: 出站去重窗口，windowMs内同一玩家的相同消息只发送第一条，窗口结束时汇总发送重复次数\n");
+                writer.write("// outbox: 磁盘发件箱配置，启用后未送达的消息会在重启后重新发送\n");
+                writer.write("// events: 游戏事件推送配置，每种事件可单独开关、采样或按aggregateSeconds汇总，playerCountIntervalSeconds为0时不推送在线人数\n");
+                writer.write("// telemetry: 运行数据快照配置，每intervalSeconds发送一次，未变化的数值省略，每fullSnapshotEvery次发送一次完整快照\n");
+                writer.write("// receiver: HTTP接收服务器配置，包括请求体大小、连接数和keep-alive超时\n");
+                writer.write("// idempotency: 入站幂等键，windowSeconds内重复的Idempotency-Key或id只处理一次，slots为索引大小\n");
+                writer.write("// scheduler: 主线程任务调度配置，tickBudgetNanos为每个tick可占用的主线程时间\n");
+                writer.write("// http: 出站HTTP客户端配置，version可选http1.1或http2，修改后执行热重载生效\n");
+                writer.write("// threads: 发送线程模式，auto在Java 21及以上使用虚拟线程，也可指定platform或virtual\n");
+                writer.write("// retry: 出站请求的重试和熔断配置，熔断期间消息转入保留队列，探测成功后再发送\n");
+                writer.write("// destinations: 额外的出站目标，每个目标有独立的地址、密钥、过滤条件、队列、发送线程和重试策略\n");
+                writer.write("// rateLimit: 令牌桶限流，默认关闭，outbound按玩家、inbound按来源地址和密钥，另有全局上限；速率为0表示不限\n");
+                writer.write("// metrics: 指标接口配置，启用后接收服务器在/metrics提供Prometheus格式的指标\n");
+                writer.write("// logging: 日志配置，trace为逐条消息的跟踪日志，warnPerSecond为同类告警每秒最多输出的条数\n\n");
                 GSON.toJson(INSTANCE, writer);
             }
         } catch (IOException e) {
@@ -91,15 +261,36 @@ public class ModConfig {
     public String getApiKey() { return apiKey; }
     public int getListenPort() { return listenPort; }
     public String getDefaultChatPrefix() { return defaultChatPrefix; }
+    public List<RuleConfig> getRules() { return rules; }
+    public RulePipeline getRulePipeline() { return rulePipeline; }
+    // 返回内部数组，调用方不能修改
+    public byte[] getExpectedAuthorization() { return expectedAuthorization; }
+    public String getTransport() { return transport; }
+    public boolean isWebSocketTransport() { return "websocket".equalsIgnoreCase(transport); }
+    public boolean isWatchConfigFile() { return watchConfigFile; }
+    public BatchConfig getBatch() { return batch; }
+    public EncodingConfig getEncoding() { return encoding; }
+    public QueueConfig getQueue() { return queue; }
+    public DedupConfig getDedup() { return dedup; }
+    public OutboxConfig getOutbox() { return outbox; }
+    public EventsConfig getEvents() { return events; }
+    public TelemetryConfig getTelemetry() { return telemetry; }
+    public WebSocketConfig getWebsocket() { return websocket; }
+    public ReceiverConfig getReceiver() { return receiver; }
+    public IdempotencyConfig getIdempotency() { return idempotency; }
+    public SchedulerConfig getScheduler() { return scheduler; }
+    public HttpConfig getHttp() { return http; }
+    public ThreadsConfig getThreads() { return threads; }
+    public RetryConfig getRetry() { return retry; }
+    public List<DestinationConfig> getDestinations() { return destinations; }
+    public RateLimitConfig getRateLimit() { return rateLimit; }
+    public MetricsConfig getMetrics() { return metrics; }
+    public LoggingConfig getLogging() { return logging; }
     
     public boolean isFeatureEnabled(String featureId) {
         return features.getOrDefault(featureId, false);
     }
     
-    public void setFeatureEnabled(String featureId, boolean enabled) {
-        features.put(featureId, enabled);
-    }
-    
     public void validate() throws IllegalStateException {
         if (apiUrl == null || apiUrl.isEmpty()) {
             throw new IllegalStateException("API URL不能为空");
@@ -107,15 +298,116 @@ public class ModConfig {
         if (apiKey == null || apiKey.isEmpty()) {
             throw new IllegalStateException("API Key不能为空");
         }
+        expectedAuthorization = ("Bearer " + apiKey).getBytes(StandardCharsets.UTF_8);
         if (listenPort <= 0 || listenPort > 65535) {
             throw new IllegalStateException("监听端口必须在1-65535之间");
         }
         if (defaultChatPrefix == null) {
             defaultChatPrefix = "游戏";
         }
+        if (transport == null) {
+            transport = "http";
+        }
+        if (!"http".equalsIgnoreCase(transport) && !isWebSocketTransport()) {
+            throw new IllegalStateException("transport只能是http或websocket");
+        }
         if (features == null) {
             features = new HashMap<>();
         }
+        if (rules == null) {
+            rules = new ArrayList<>();
+        }
+        for (int i = 0; i < rules.size(); i++) {
+            if (rules.get(i) == null) {
+                throw new IllegalStateException("rules[" + i + "]不能为空");
+            }
+            rules.get(i).validate("rules[" + i + "]");
+        }
+        // 规则只在加载配置时编译一次，之后每条消息直接使用编译结果
+        rulePipeline = RulePipeline.compile(rules);
+        if (batch == null) {
+            batch = new BatchConfig();
+        }
+        batch.validate();
+        if (encoding == null) {
+            encoding = new EncodingConfig();
+        }
+        encoding.validate();
+        if (queue == null) {
+            queue = new QueueConfig();
+        }
+        queue.validate();
+        if (dedup == null) {
+            dedup = new DedupConfig();
+        }
+        dedup.validate();
+        if (outbox == null) {
+            outbox = new OutboxConfig();
+        }
+        outbox.validate();
+        if (events == null) {
+            events = new EventsConfig();
+        }
+        events.validate();
+        if (telemetry == null) {
+            telemetry = new TelemetryConfig();
+        }
+        telemetry.validate();
+        if (websocket == null) {
+            websocket = new WebSocketConfig();
+        }
+        if (isWebSocketTransport()) {
+            websocket.validate();
+        }
+        if (receiver == null) {
+            receiver = new ReceiverConfig();
+        }
+        receiver.validate();
+        if (idempotency == null) {
+            idempotency = new IdempotencyConfig();
+        }
+        idempotency.validate();
+        if (scheduler == null) {
+            scheduler = new SchedulerConfig();
+        }
+        scheduler.validate();
+        if (http == null) {
+            http = new HttpConfig();
+        }
+        http.validate();
+        if (threads == null) {
+            threads = new ThreadsConfig();
+        }
+        threads.validate();
+        if (retry == null) {
+            retry = new RetryConfig();
+        }
+        retry.validate("retry");
+        if (destinations == null) {
+            destinations = new ArrayList<>();
+        }
+        Set<String> destinationNames = new HashSet<>();
+        for (int i = 0; i < destinations.size(); i++) {
+            DestinationConfig destination = destinations.get(i);
+            if (destination == null) {
+                throw new IllegalStateException("destinations[" + i + "]不能为空");
+            }
+            destination.validate("destinations[" + i + "]");
+            if (!destinationNames.add(destination.getName())) {
+                throw new IllegalStateException("destinations中的name重复: " + destination.getName());
+            }
+        }
+        if (rateLimit == null) {
+            rateLimit = new RateLimitConfig();
+        }
+        rateLimit.validate();
+        if (metrics == null) {
+            metrics = new MetricsConfig();
+        }
+        if (logging == null) {
+            logging = new LoggingConfig();
+        }
+        logging.validate();
         // 确保所有功能都有默认值
         if (!features.containsKey("messageSender")) {
             features.put("messageSender", true);
@@ -123,5 +415,779 @@ public class ModConfig {
         if (!features.containsKey("messageReceiver")) {
             features.put("messageReceiver", true);
         }
+        // 游戏事件默认关闭，远程服务器需要能区分聊天消息和事件
+        if (!features.containsKey("gameEvents")) {
+            features.put("gameEvents", false);
+        }
+        if (!features.containsKey("telemetry")) {
+            features.put("telemetry", false);
+        }
+    }
+    
+    /**
+     * 出站聊天消息的规则
+     * 所有已配置的条件都满足时规则匹配；没有任何条件的规则匹配所有消息
+     */
+    public static class RuleConfig {
+        private String name = "";
+        // 消息包含其中任意一个关键词
+        private List<String> keywords = new ArrayList<>();
+        private boolean ignoreCase = true;
+        // 消息以其中任意一个字符串开头
+        private List<String> startsWith = new ArrayList<>();
+        // 消息中能找到与之匹配的内容
+        private String pattern = "";
+        // 发送者至少具有该权限等级，0表示不限
+        private int minPermissionLevel = 0;
+        private String action = "forward";
+        // forward时改写消息前缀，为空时保持原前缀
+        private String prefix = "";
+        // forward时去掉消息开头命中的startsWith
+        private boolean strip = false;
+        
+        public String getName() { return name; }
+        public List<String> getKeywords() { return keywords; }
+        public boolean isIgnoreCase() { return ignoreCase; }
+        public List<String> getStartsWith() { return startsWith; }
+        public String getPattern() { return pattern; }
+        public int getMinPermissionLevel() { return minPermissionLevel; }
+        public boolean isStrip() { return strip; }
+        
+        public RulePipeline.Action getAction() {
+            return RulePipeline.Action.fromConfig(action);
+        }
+        
+        /**
+         * @return 不改写前缀时为null
+         */
+        public String getPrefix() {
+            return prefix.isEmpty() ? null : prefix;
+        }
+        
+        private void validate(String path) throws IllegalStateException {
+            if (name == null) {
+                name = "";
+            }
+            if (keywords == null) {
+                keywords = new ArrayList<>();
+            }
+            if (keywords.contains(null) || keywords.contains("")) {
+                throw new IllegalStateException(path + ".keywords不能包含空字符串");
+            }
+            if (startsWith == null) {
+                startsWith = new ArrayList<>();
+            }
+            if (startsWith.contains(null) || startsWith.contains("")) {
+                throw new IllegalStateException(path + ".startsWith不能包含空字符串");
+            }
+            if (pattern == null) {
+                pattern = "";
+            }
+            if (minPermissionLevel < 0 || minPermissionLevel > 4) {
+                throw new IllegalStateException(path + ".minPermissionLevel必须在0-4之间");
+            }
+            if (action == null) {
+                action = "forward";
+            }
+            // 未知动作会抛出IllegalStateException
+            getAction();
+            if (prefix == null) {
+                prefix = "";
+            }
+            if (strip && startsWith.isEmpty()) {
+                throw new IllegalStateException(path + ".strip需要同时配置startsWith");
+            }
+        }
+    }
+    
+    /**
+     * 主目标出站请求体的编码配置
+     * 对端对二进制格式或压缩的请求返回415时，本次运行改回未压缩的JSON，热重载后重新尝试
+     */
+    public static class EncodingConfig {
+        private String format = "json";
+        private String compression = "none";
+        private int compressionThreshold = 1024;
+        private int compressionLevel = 6;
+        
+        public boolean isBinary() { return "binary".equalsIgnoreCase(format); }
+        public int getCompressionThreshold() { return compressionThreshold; }
+        public int getCompressionLevel() { return compressionLevel; }
+        
+        public BodyCompressor.Algorithm getCompression() {
+            return BodyCompressor.Algorithm.fromConfig(compression);
+        }
+        
+        private void validate() throws IllegalStateException {
+            if (format == null) {
+                format = "json";
+            }
+            if (!"json".equalsIgnoreCase(format) && !"binary".equalsIgnoreCase(format)) {
+                throw new IllegalStateException("encoding.format只能是json或binary");
+            }
+            if (compression == null) {
+                compression = "none";
+            }
+            // 未知算法会抛出IllegalStateException
+            getCompression();
+            if (compressionThreshold < 0) {
+                throw new IllegalStateException("encoding.compressionThreshold不能小于0");
+            }
+            if (compressionLevel < 1 || compressionLevel > 9) {
+                throw new IllegalStateException("encoding.compressionLevel必须在1到9之间");
+            }
+        }
+    }
+    
+    /**
+     * 批量发送配置
+     * 消息先在内存中攒批，达到条数或字节上限、或等待时间到期后一次性发送到批量接口
+     */
+    public static class BatchConfig {
+        private boolean enabled = false;
+        private String apiUrl = "";
+        private int maxMessages = 50;
+        private int maxBytes = 64 * 1024;
+        private long lingerMs = 50;
+        
+        public boolean isEnabled() { return enabled; }
+        public String getApiUrl() { return apiUrl; }
+        public int getMaxMessages() { return maxMessages; }
+        public int getMaxBytes() { return maxBytes; }
+        public long getLingerMs() { return lingerMs; }
+        
+        /**
+         * 是否真正启用批量发送
+         * 未配置批量接口地址时回退到单条发送接口
+         */
+        public boolean isActive() {
+            return enabled && apiUrl != null && !apiUrl.isEmpty();
+        }
+        
+        private void validate() throws IllegalStateException {
+            if (apiUrl == null) {
+                apiUrl = "";
+            }
+            if (maxMessages <= 0) {
+                throw new IllegalStateException("batch.maxMessages必须大于0");
+            }
+            if (maxBytes <= 0) {
+                throw new IllegalStateException("batch.maxBytes必须大于0");
+            }
+            if (lingerMs < 0) {
+                throw new IllegalStateException("batch.lingerMs不能为负数");
+            }
+            if (enabled && apiUrl.isEmpty()) {
+                AetherBridge.LOGGER.warn("已启用批量发送但未配置batch.apiUrl，将使用单条发送接口");
+            }
+        }
+    }
+    
+    /**
+     * 发送队列配置
+     * 聊天消息先进入有界队列，再由固定数量的发送线程取出发送
+     */
+    public static class QueueConfig {
+        private int capacity = 1024;
+        private String overflowPolicy = "drop-oldest";
+        private long blockTimeoutMs = 50;
+        private int workers = 3;
+        
+        public int getCapacity() { return capacity; }
+        public long getBlockTimeoutMs() { return blockTimeoutMs; }
+        public int getWorkers() { return workers; }
+        
+        public OutboundQueue.OverflowPolicy getPolicy() {
+            return OutboundQueue.OverflowPolicy.fromConfig(overflowPolicy);
+        }
+        
+        private void validate() throws IllegalStateException {
+            if (capacity <= 0) {
+                throw new IllegalStateException("queue.capacity必须大于0");
+            }
+            if (workers <= 0) {
+                throw new IllegalStateException("queue.workers必须大于0");
+            }
+            if (blockTimeoutMs < 0) {
+                throw new IllegalStateException("queue.blockTimeoutMs不能为负数");
+            }
+            if (overflowPolicy == null) {
+                overflowPolicy = "drop-oldest";
+            }
+            // 未知策略会抛出IllegalStateException
+            getPolicy();
+        }
+    }
+    
+    /**
+     * 出站去重配置
+     * 同一玩家在windowMs内重复发送的相同消息只转发第一条，窗口结束时再发送一条带repeat次数的汇总
+     */
+    public static class DedupConfig {
+        private boolean enabled = false;
+        private long windowMs = 2000;
+        private int slots = 1024;
+        
+        public boolean isEnabled() { return enabled; }
+        public long getWindowMs() { return windowMs; }
+        public int getSlots() { return slots; }
+        
+        private void validate() throws IllegalStateException {
+            if (windowMs <= 0) {
+                throw new IllegalStateException("dedup.windowMs必须大于0");
+            }
+            if (slots < 16 || slots > 1 << 20) {
+                throw new IllegalStateException("dedup.slots必须在16-1048576之间");
+            }
+        }
+    }
+    
+    /**
+     * 出站HTTP客户端配置
+     * 客户端在第一次发送时创建，热重载时关闭旧客户端并按新配置重建
+     */
+    public static class HttpConfig {
+        private String version = "http1.1";
+        private int executorThreads = 2;
+        private int maxInFlight = 64;
+        private long connectTimeoutMs = 10000;
+        private long requestTimeoutMs = 10000;
+        
+        public int getExecutorThreads() { return executorThreads; }
+        public int getMaxInFlight() { return maxInFlight; }
+        public long getConnectTimeoutMs() { return connectTimeoutMs; }
+        public long getRequestTimeoutMs() { return requestTimeoutMs; }
+        
+        public HttpClient.Version getClientVersion() {
+            return "http2".equalsIgnoreCase(version) ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1;
+        }
+        
+        private void validate() throws IllegalStateException {
+            if (version == null) {
+                version = "http1.1";
+            }
+            if (!"http1.1".equalsIgnoreCase(version) && !"http2".equalsIgnoreCase(version)) {
+                throw new IllegalStateException("http.version只能是http1.1或http2");
+            }
+            if (executorThreads <= 0) {
+                throw new IllegalStateException("http.executorThreads必须大于0");
+            }
+            if (maxInFlight <= 0) {
+                throw new IllegalStateException("http.maxInFlight必须大于0");
+            }
+            if (connectTimeoutMs <= 0 || requestTimeoutMs <= 0) {
+                throw new IllegalStateException("http.connectTimeoutMs和requestTimeoutMs必须大于0");
+            }
+        }
+    }
+    
+    /**
+     * 线程模式配置
+     * 使用虚拟线程时，出站HTTP客户端每个任务一个虚拟线程，发送线程数提高到http.maxInFlight
+     */
+    public static class ThreadsConfig {
+        private String mode = "auto";
+        
+        public VirtualThreads.Mode getMode() {
+            return VirtualThreads.Mode.fromConfig(mode);
+        }
+        
+        private void validate() throws IllegalStateException {
+            if (mode == null) {
+                mode = "auto";
+            }
+            // 未知模式会抛出IllegalStateException
+            getMode();
+        }
+    }
+    
+    /**
+     * 磁盘发件箱配置
+     * 消息发送前写入 config/aetherbridge/outbox/ 下的分段日志，收到2xx响应后确认
+     */
+    public static class OutboxConfig {
+        private boolean enabled = false;
+        private int segmentBytes = 4 * 1024 * 1024;
+        
+        public boolean isEnabled() { return enabled; }
+        public int getSegmentBytes() { return segmentBytes; }
+        
+        private void validate() throws IllegalStateException {
+            if (segmentBytes < 64 * 1024) {
+                throw new IllegalStateException("outbox.segmentBytes不能小于65536");
+            }
+        }
+    }
+    
+    /**
+     * WebSocket传输配置
+     * transport为websocket时使用，出站和入站消息都通过同一条长连接传输
+     */
+    public static class WebSocketConfig {
+        private String url = "ws://localhost:3000/ws";
+        private long pingIntervalMs = 15000;
+        private long pongTimeoutMs = 10000;
+        private int maxUnacked = 1000;
+        private long reconnectInitialMs = 1000;
+        private long reconnectMaxMs = 30000;
+        
+        public String getUrl() { return url; }
+        public long getPingIntervalMs() { return pingIntervalMs; }
+        public long getPongTimeoutMs() { return pongTimeoutMs; }
+        public int getMaxUnacked() { return maxUnacked; }
+        public long getReconnectInitialMs() { return reconnectInitialMs; }
+        public long getReconnectMaxMs() { return reconnectMaxMs; }
+        
+        private void validate() throws IllegalStateException {
+            if (url == null || !(url.startsWith("ws://") || url.startsWith("wss://"))) {
+                throw new IllegalStateException("websocket.url必须以ws://或wss://开头");
+            }
+            if (pingIntervalMs <= 0 || pongTimeoutMs <= 0) {
+                throw new IllegalStateException("websocket.pingIntervalMs和pongTimeoutMs必须大于0");
+            }
+            if (maxUnacked <= 0) {
+                throw new IllegalStateException("websocket.maxUnacked必须大于0");
+            }
+            if (reconnectInitialMs <= 0 || reconnectMaxMs < reconnectInitialMs) {
+                throw new IllegalStateException("websocket重连间隔配置无效");
+            }
+        }
+    }
+    
+    /**
+     * HTTP接收服务器配置
+     */
+    public static class ReceiverConfig {
+        private int maxRequestBytes = 64 * 1024;
+        private int maxConnections = 256;
+        private long keepAliveTimeoutMs = 30000;
+        
+        public int getMaxRequestBytes() { return maxRequestBytes; }
+        public int getMaxConnections() { return maxConnections; }
+        public long getKeepAliveTimeoutMs() { return keepAliveTimeoutMs; }
+        
+        private void validate() throws IllegalStateException {
+            if (maxRequestBytes <= 0) {
+                throw new IllegalStateException("receiver.maxRequestBytes必须大于0");
+            }
+            if (maxConnections <= 0) {
+                throw new IllegalStateException("receiver.maxConnections必须大于0");
+            }
+            if (keepAliveTimeoutMs <= 0) {
+                throw new IllegalStateException("receiver.keepAliveTimeoutMs必须大于0");
+            }
+        }
+    }
+    
+    /**
+     * 游戏事件推送配置
+     */
+    public static class EventsConfig {
+        private EventTypeConfig join = new EventTypeConfig();
+        private EventTypeConfig leave = new EventTypeConfig();
+        private EventTypeConfig death = new EventTypeConfig();
+        private EventTypeConfig advancement = new EventTypeConfig();
+        // 服务器启动和关闭事件
+        private boolean lifecycle = true;
+        private int playerCountIntervalSeconds = 60;
+        // 汇总事件中最多列出的玩家名数，count不受限制
+        private int maxAggregatedPlayers = 20;
+        
+        public EventTypeConfig getJoin() { return join; }
+        public EventTypeConfig getLeave() { return leave; }
+        public EventTypeConfig getDeath() { return death; }
+        public EventTypeConfig getAdvancement() { return advancement; }
+        public boolean isLifecycle() { return lifecycle; }
+        public int getPlayerCountIntervalSeconds() { return playerCountIntervalSeconds; }
+        public int getMaxAggregatedPlayers() { return maxAggregatedPlayers; }
+        
+        private void validate() throws IllegalStateException {
+            if (join == null) {
+                join = new EventTypeConfig();
+            }
+            join.validate("events.join");
+            if (leave == null) {
+                leave = new EventTypeConfig();
+            }
+            leave.validate("events.leave");
+            if (death == null) {
+                death = new EventTypeConfig();
+            }
+            death.validate("events.death");
+            if (advancement == null) {
+                advancement = new EventTypeConfig();
+            }
+            advancement.validate("events.advancement");
+            if (playerCountIntervalSeconds < 0 || playerCountIntervalSeconds > 86400) {
+                throw new IllegalStateException("events.playerCountIntervalSeconds必须在0到86400之间");
+            }
+            if (maxAggregatedPlayers < 0) {
+                throw new IllegalStateException("events.maxAggregatedPlayers不能小于0");
+            }
+        }
+    }
+    
+    /**
+     * 单种游戏事件的配置
+     * sampleRate小于1时按比例随机发送；aggregateSeconds大于0时不逐条发送，
+     * 每个窗口结束时发送一条汇总事件，此时忽略sampleRate
+     */
+    public static class EventTypeConfig {
+        private boolean enabled = true;
+        private double sampleRate = 1.0;
+        private int aggregateSeconds = 0;
+        
+        public boolean isEnabled() { return enabled; }
+        public double getSampleRate() { return sampleRate; }
+        public int getAggregateSeconds() { return aggregateSeconds; }
+        
+        private void validate(String name) throws IllegalStateException {
+            if (!(sampleRate > 0 && sampleRate <= 1)) {
+                throw new IllegalStateException(name + ".sampleRate必须大于0且不超过1");
+            }
+            if (aggregateSeconds < 0 || aggregateSeconds > 3600) {
+                throw new IllegalStateException(name + ".aggregateSeconds必须在0到3600之间");
+            }
+        }
+    }
+    
+    /**
+     * 运行数据快照配置
+     */
+    public static class TelemetryConfig {
+        private int intervalSeconds = 5;
+        // 每隔多少次快照发送一次包含所有数值的完整快照，1表示每次都完整发送
+        private int fullSnapshotEvery = 12;
+        // 各维度已加载的区块数
+        private boolean chunks = true;
+        // 堆内存和GC统计
+        private boolean jvm = true;
+        
+        public int getIntervalSeconds() { return intervalSeconds; }
+        public int getFullSnapshotEvery() { return fullSnapshotEvery; }
+        public boolean isChunks() { return chunks; }
+        public boolean isJvm() { return jvm; }
+        
+        private void validate() throws IllegalStateException {
+            if (intervalSeconds <= 0 || intervalSeconds > 3600) {
+                throw new IllegalStateException("telemetry.intervalSeconds必须在1到3600之间");
+            }
+            if (fullSnapshotEvery <= 0) {
+                throw new IllegalStateException("telemetry.fullSnapshotEvery必须大于0");
+            }
+        }
+    }
+    
+    /**
+     * 入站幂等键配置
+     */
+    public static class IdempotencyConfig {
+        private boolean enabled = true;
+        private int windowSeconds = 600;
+        private int slots = 16384;
+        
+        public boolean isEnabled() { return enabled; }
+        public int getWindowSeconds() { return windowSeconds; }
+        public int getSlots() { return slots; }
+        
+        private void validate() throws IllegalStateException {
+            if (windowSeconds <= 0 || windowSeconds > 86400) {
+                throw new IllegalStateException("idempotency.windowSeconds必须在1到86400之间");
+            }
+            // 每个槽位占用16字节，上限对应16MB
+            if (slots <= 0 || slots > 1 << 20) {
+                throw new IllegalStateException("idempotency.slots必须在1到1048576之间");
+            }
+        }
+    }
+    
+    /**
+     * 主线程任务调度配置
+     */
+    public static class SchedulerConfig {
+        private long tickBudgetNanos = 2_000_000;
+        private int maxQueuedTasks = 10000;
+        
+        public long getTickBudgetNanos() { return tickBudgetNanos; }
+        public int getMaxQueuedTasks() { return maxQueuedTasks; }
+        
+        private void validate() throws IllegalStateException {
+            if (tickBudgetNanos <= 0) {
+                throw new IllegalStateException("scheduler.tickBudgetNanos必须大于0");
+            }
+            // 一个tick只有50ms，预算超过这个值就失去了意义
+            if (tickBudgetNanos > 50_000_000) {
+                throw new IllegalStateException("scheduler.tickBudgetNanos不能超过50000000（50ms）");
+            }
+            if (maxQueuedTasks <= 0) {
+                throw new IllegalStateException("scheduler.maxQueuedTasks必须大于0");
+            }
+        }
+    }
+    
+    /**
+     * 出站请求的重试和熔断配置
+     */
+    public static class RetryConfig {
+        private int maxRetries = 3;
+        private long baseDelayMs = 1000;
+        private long maxDelayMs = 30000;
+        private long maxRetryAfterMs = 300000;
+        private int circuitFailureThreshold = 5;
+        private long circuitOpenMs = 5000;
+        private long circuitMaxOpenMs = 60000;
+        private int holdCapacity = 1000;
+        
+        public int getMaxRetries() { return maxRetries; }
+        public long getBaseDelayMs() { return baseDelayMs; }
+        public long getMaxDelayMs() { return maxDelayMs; }
+        public long getMaxRetryAfterMs() { return maxRetryAfterMs; }
+        public int getCircuitFailureThreshold() { return circuitFailureThreshold; }
+        public long getCircuitOpenMs() { return circuitOpenMs; }
+        public long getCircuitMaxOpenMs() { return circuitMaxOpenMs; }
+        public int getHoldCapacity() { return holdCapacity; }
+        
+        private void validate(String name) throws IllegalStateException {
+            if (maxRetries < 0) {
+                throw new IllegalStateException(name + ".maxRetries不能小于0");
+            }
+            if (baseDelayMs <= 0) {
+                throw new IllegalStateException(name + ".baseDelayMs必须大于0");
+            }
+            if (maxDelayMs < baseDelayMs) {
+                throw new IllegalStateException(name + ".maxDelayMs不能小于" + name + ".baseDelayMs");
+            }
+            if (maxRetryAfterMs < 0) {
+                throw new IllegalStateException(name + ".maxRetryAfterMs不能小于0");
+            }
+            if (circuitFailureThreshold <= 0) {
+                throw new IllegalStateException(name + ".circuitFailureThreshold必须大于0");
+            }
+            if (circuitOpenMs <= 0) {
+                throw new IllegalStateException(name + ".circuitOpenMs必须大于0");
+            }
+            if (circuitMaxOpenMs < circuitOpenMs) {
+                throw new IllegalStateException(name + ".circuitMaxOpenMs不能小于" + name + ".circuitOpenMs");
+            }
+            if (holdCapacity <= 0) {
+                throw new IllegalStateException(name + ".holdCapacity必须大于0");
+            }
+        }
+    }
+    
+    /**
+     * 额外的出站目标
+     * 聊天消息除了发送到apiUrl，还会复制一份发送到每个启用的目标。每个目标有独立的队列、
+     * 发送线程、HTTP客户端和重试熔断，一个目标变慢或不可用时只会积压自己的队列
+     */
+    public static class DestinationConfig {
+        private static final Set<String> RESTRICTED_HEADERS = Set.of(
+            "connection", "content-length", "expect", "host", "upgrade");
+        
+        private String name = "";
+        private boolean enabled = true;
+        private String url = "";
+        private String apiKey = "";
+        private Map<String, String> headers = new HashMap<>();
+        private DestinationFilter filter = new DestinationFilter();
+        private int queueCapacity = 256;
+        private String overflowPolicy = "drop-oldest";
+        private int workers = 1;
+        private RetryConfig retry = new RetryConfig();
+        
+        public String getName() { return name; }
+        public boolean isEnabled() { return enabled; }
+        public String getUrl() { return url; }
+        public String getApiKey() { return apiKey; }
+        public Map<String, String> getHeaders() { return headers; }
+        public DestinationFilter getFilter() { return filter; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public int getWorkers() { return workers; }
+        public RetryConfig getRetry() { return retry; }
+        
+        public OutboundQueue.OverflowPolicy getPolicy() {
+            return OutboundQueue.OverflowPolicy.fromConfig(overflowPolicy);
+        }
+        
+        private void validate(String path) throws IllegalStateException {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalStateException(path + ".name不能为空");
+            }
+            if (url == null || !(url.startsWith("http://") || url.startsWith("https://"))) {
+                throw new IllegalStateException(path + ".url必须是http://或https://地址");
+            }
+            try {
+                URI.create(url);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException(path + ".url格式错误: " + e.getMessage());
+            }
+            if (apiKey == null) {
+                apiKey = "";
+            }
+            if (headers == null) {
+                headers = new HashMap<>();
+            }
+            for (String header : headers.keySet()) {
+                // 这些请求头由HTTP客户端管理，HttpRequest不允许设置
+                if (RESTRICTED_HEADERS.contains(header.toLowerCase(Locale.ROOT))) {
+                    throw new IllegalStateException(path + ".headers不能包含" + header);
+                }
+            }
+            if (queueCapacity <= 0) {
+                throw new IllegalStateException(path + ".queueCapacity必须大于0");
+            }
+            if (workers <= 0 || workers > 64) {
+                throw new IllegalStateException(path + ".workers必须在1-64之间");
+            }
+            if (overflowPolicy == null) {
+                overflowPolicy = "drop-oldest";
+            }
+            // 入队在AetherBridge-Capture、事件、运行数据和去重线程上进行，所有目标共用这些线程，
+            // 等待某个慢目标的队列会让聊天和事件的处理停下来，连带主目标和其他目标
+            OutboundQueue.OverflowPolicy policy = getPolicy();
+            if (policy != OutboundQueue.OverflowPolicy.DROP_OLDEST && policy != OutboundQueue.OverflowPolicy.DROP_NEWEST) {
+                throw new IllegalStateException(path + ".overflowPolicy只能是drop-oldest或drop-newest");
+            }
+            if (filter == null) {
+                filter = new DestinationFilter();
+            }
+            filter.validate(path + ".filter");
+            if (retry == null) {
+                retry = new RetryConfig();
+            }
+            retry.validate(path + ".retry");
+        }
+    }
+    
+    /**
+     * 出站目标的过滤条件，所有条件都满足的消息才会发送到该目标
+     */
+    public static class DestinationFilter {
+        private List<String> prefixes = new ArrayList<>();
+        private boolean playersOnly = false;
+        private boolean includeRepeats = true;
+        private String pattern = "";
+        // 在validate中编译，不写入配置文件
+        private transient Pattern compiled;
+        
+        public List<String> getPrefixes() { return prefixes; }
+        public boolean isPlayersOnly() { return playersOnly; }
+        public boolean isIncludeRepeats() { return includeRepeats; }
+        
+        /**
+         * @return 没有配置时为null
+         */
+        public Pattern getPattern() { return compiled; }
+        
+        private void validate(String path) throws IllegalStateException {
+            if (prefixes == null) {
+                prefixes = new ArrayList<>();
+            }
+            if (pattern == null || pattern.isEmpty()) {
+                pattern = "";
+                compiled = null;
+                return;
+            }
+            try {
+                compiled = Pattern.compile(pattern);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalStateException(path + ".pattern不是有效的正则表达式: " + e.getDescription());
+            }
+        }
+    }
+    
+    /**
+     * 限流配置
+     */
+    public static class RateLimitConfig {
+        // 默认关闭：升级后不应突然限制已有服务器的聊天转发，需要时由服主开启
+        private boolean enabled = false;
+        private LimitConfig outbound = new LimitConfig(2, 5, 20, 50);
+        private LimitConfig inbound = new LimitConfig(5, 20, 50, 100);
+        
+        public boolean isEnabled() { return enabled; }
+        public LimitConfig getOutbound() { return outbound; }
+        public LimitConfig getInbound() { return inbound; }
+        
+        private void validate() throws IllegalStateException {
+            if (outbound == null) {
+                outbound = new LimitConfig(2, 5, 20, 50);
+            }
+            outbound.validate("rateLimit.outbound");
+            if (inbound == null) {
+                inbound = new LimitConfig(5, 20, 50, 100);
+            }
+            inbound.validate("rateLimit.inbound");
+        }
+    }
+    
+    /**
+     * 一个方向的限流参数，速率单位为每秒消息数，burst为允许的突发条数
+     */
+    public static class LimitConfig {
+        private double perKeyPerSecond = 0;
+        private int perKeyBurst = 1;
+        private double globalPerSecond = 0;
+        private int globalBurst = 1;
+        
+        public LimitConfig() {
+        }
+        
+        LimitConfig(double perKeyPerSecond, int perKeyBurst, double globalPerSecond, int globalBurst) {
+            this.perKeyPerSecond = perKeyPerSecond;
+            this.perKeyBurst = perKeyBurst;
+            this.globalPerSecond = globalPerSecond;
+            this.globalBurst = globalBurst;
+        }
+        
+        public double getPerKeyPerSecond() { return perKeyPerSecond; }
+        public int getPerKeyBurst() { return perKeyBurst; }
+        public double getGlobalPerSecond() { return globalPerSecond; }
+        public int getGlobalBurst() { return globalBurst; }
+        
+        private void validate(String name) throws IllegalStateException {
+            if (perKeyPerSecond < 0 || globalPerSecond < 0) {
+                throw new IllegalStateException(name + "的速率不能小于0");
+            }
+            if (perKeyBurst <= 0) {
+                throw new IllegalStateException(name + ".perKeyBurst必须大于0");
+            }
+            if (globalBurst <= 0) {
+                throw new IllegalStateException(name + ".globalBurst必须大于0");
+            }
+        }
+    }
+    
+    /**
+     * 指标接口配置
+     */
+    public static class MetricsConfig {
+        private boolean enabled = true;
+        private boolean requireAuth = true;
+        
+        public boolean isEnabled() { return enabled; }
+        public boolean isRequireAuth() { return requireAuth; }
+    }
+    
+    /**
+     * 日志配置
+     */
+    public static class LoggingConfig {
+        private boolean trace = false;
+        private int traceSampleEvery = 1;
+        private int warnPerSecond = 5;
+        
+        public boolean isTrace() { return trace; }
+        public int getTraceSampleEvery() { return traceSampleEvery; }
+        public int getWarnPerSecond() { return warnPerSecond; }
+        
+        private void validate() throws IllegalStateException {
+            if (traceSampleEvery <= 0) {
+                throw new IllegalStateException("logging.traceSampleEvery必须大于0");
+            }
+            if (warnPerSecond <= 0) {
+                throw new IllegalStateException("logging.warnPerSecond必须大于0");
+            }
+        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,168 @@
+package com.devcl.aetherbridge.feature;
+
+import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.logging.BridgeLog;
+import com.devcl.aetherbridge.metrics.Metrics;
+import com.devcl.aetherbridge.network.MessageSender;
+import com.devcl.aetherbridge.ratelimit.RateLimits;
+import com.devcl.aetherbridge.routing.RulePipeline;
+import com.devcl.aetherbridge.scheduler.MainThreadScheduler;
+import com.devcl.aetherbridge.scheduler.SpscQueue;
+import net.minecraft.network.message.SignedMessage;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 聊天消息的采集线程
+ *
+ * 聊天事件在服务器主线程上触发，主线程只把玩家、消息和权限检查结果打包成一个不可变的
+ * Captured放入单生产者队列，不解析文本、不读取配置、不记录日志。解析消息内容、匹配规则、
+ * 限流和交给MessageSender都在AetherBridge-Capture线程中进行。
+ *
+ * 采集线程在队列为空时休眠，主线程在每个tick结束时发现队列中有消息才唤醒它，
+ * 唤醒的开销由一个tick内的所有聊天消息分摊，消息最多延迟到所在tick结束时处理。
+ */
+final class ChatCapture {
+    // 采集队列容量，采集线程正常情况下每个tick都会清空队列
+    private static final int CAPACITY = 4096;
+
+    private final SpscQueue<Captured> queue = new SpscQueue<>(CAPACITY);
+    private final Consumer<Captured> handler;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param handler 在采集线程中处理每条消息，通常为ChatCapture::process
+     */
+    ChatCapture(Consumer<Captured> handler) {
+        this.handler = handler;
+        this.thread = new Thread(this::run, "AetherBridge-Capture");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 主线程上采集到的一条聊天消息
+     */
+    static final class Captured {
+        private final ServerPlayerEntity player;
+        private final UUID playerId;
+        private final String playerName;
+        private final SignedMessage message;
+        // 采集时主线程使用的规则，权限检查结果与它对应
+        private final RulePipeline rules;
+        // 发送者具有的权限等级，只包含rules要求的等级，第n位表示等级n
+        private final int permissions;
+
+        Captured(ServerPlayerEntity player, UUID playerId, String playerName, SignedMessage message,
+                 RulePipeline rules, int permissions) {
+            this.player = player;
+            this.playerId = playerId;
+            this.playerName = playerName;
+            this.message = message;
+            this.rules = rules;
+            this.permissions = permissions;
+        }
+
+        private boolean hasPermission(int level) {
+            return (permissions & (1 << level)) != 0;
+        }
+    }
+
+    /**
+     * 放入采集队列，只能在服务器主线程调用
+     * @return 队列已满时返回false
+     */
+    boolean publish(Captured captured) {
+        return queue.offer(captured);
+    }
+
+    /**
+     * 队列中有消息时唤醒采集线程，在每个tick结束时由主线程调用
+     */
+    void signal() {
+        if (!queue.isEmpty()) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * 处理完队列中剩余的消息后停止采集线程，最多等待5秒
+     * 调用前需要先让监听器不再引用这个实例；主线程在此之前已经读到引用、稍后才发布的消息不会被处理
+     */
+    void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            AetherBridge.LOGGER.warn("聊天采集线程未能在5秒内处理完队列，剩余 " + queue.size() + " 条消息未转发");
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Captured captured = queue.poll();
+            if (captured != null) {
+                handler.accept(captured);
+                continue;
+            }
+            if (!running) {
+                return;
+            }
+            // 正常由主线程在tick结束时唤醒，超时只是兜底
+            LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+            if (Thread.interrupted()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 处理一条采集到的消息：解析内容、匹配规则、限流，然后交给MessageSender
+     */
+    static void process(Captured captured) {
+        try {
+            ModConfig config = ModConfig.getInstance();
+            String content = captured.message.getContent().getString();
+            String prefix = config.getDefaultChatPrefix();
+
+            // 先经过规则管道：丢弃的消息不占用限流额度，匹配的规则可以改写前缀和内容
+            RulePipeline.Rule rule = captured.rules.match(content, captured::hasPermission);
+            if (rule != null) {
+                if (rule.getAction() == RulePipeline.Action.DROP) {
+                    Metrics.OUTBOUND_RULE_DROPPED.increment();
+                    BridgeLog.trace("outbound.rule.drop", "player", captured.playerName, "rule", rule.getName());
+                    return;
+                }
+                if (rule.getPrefix() != null) {
+                    prefix = rule.getPrefix();
+                }
+                content = rule.rewrite(content);
+            }
+
+            // 按玩家限流，被限流的消息仍然显示在游戏内，只是不转发
+            if (RateLimits.outbound().tryAcquire(captured.playerId, 1) > 0) {
+                Metrics.OUTBOUND_RATE_LIMITED.increment();
+                BridgeLog.warn("outbound-rate-limited", "玩家 {} 发送消息过于频繁，消息未转发", captured.playerName);
+                ServerPlayerEntity player = captured.player;
+                MainThreadScheduler.submit(() -> player.sendMessage(Text.literal("§c发送过于频繁，这条消息没有转发出去"), true));
+                return;
+            }
+
+            MessageSender.sendToRemote(captured.playerId, captured.playerName, content, prefix);
+        } catch (Exception e) {
+            AetherBridge.LOGGER.error("处理聊天消息时发生错误", e);
+        }
+    }
+}
@@ -3,18 +3,40 @@ package com.devcl.aetherbridge.feature;
 import com.devcl.aetherbridge.AetherBridge;
 import com.devcl.aetherbridge.config.ModConfig;
 import com.devcl.aetherbridge.network.MessageSender;
+import com.devcl.aetherbridge.routing.RulePipeline;
+import com.devcl.aetherbridge.scheduler.MainThreadScheduler;
 import net.minecraft.server.MinecraftServer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * 功能的注册、启停和配置变化的应用
+ *
+ * 启停功能可能等待几秒（关闭发送线程、处理完采集队列），服务器运行期间的启停、重新加载和热重载
+ * 都交给AetherBridge-Config线程依次执行，主线程上的命令只提交任务和读取状态，不会等待这把锁。
+ * 只有服务器启动时的reloadFeatures和关闭时的shutdown在主线程上持有锁，关闭时等待进行中的重新加载结束。
+ */
 public class FeatureManager {
     private static FeatureManager INSTANCE;
-    private final Map<String, Feature> features = new HashMap<>();
+    // 热重载时整体替换，读取功能状态不需要加锁
+    private volatile Map<String, Feature> features;
     private final MinecraftServer server;
+    // 各组件当前按哪个配置快照运行，重新加载时与新快照比较
+    private ModConfig applied;
+    // 服务器关闭后不再应用排队中的配置变化
+    private volatile boolean stopped;
+    // 启停功能和应用配置变化的任务在这个线程中依次执行
+    private final ExecutorService configExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "AetherBridge-Config");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private FeatureManager(MinecraftServer server) {
         this.server = server;
-        registerFeatures();
+        this.features = registerFeatures();
     }
 
     public static FeatureManager getInstance(MinecraftServer server) {
@@ -24,15 +46,51 @@ public class FeatureManager {
         return INSTANCE;
     }
 
-    private void registerFeatures() {
+    private Map<String, Feature> registerFeatures() {
+        Map<String, Feature> features = new HashMap<>();
         // 注册消息发送功能
         features.put("messageSender", new MessageSenderFeature(server));
         // 注册消息接收功能
         features.put("messageReceiver", new MessageReceiverFeature(server));
+        // 注册WebSocket传输功能
+        features.put("websocketTransport", new WebSocketTransportFeature(server));
+        // 注册游戏事件推送功能
+        features.put("gameEvents", new GameEventFeature(server));
+        // 注册运行数据推送功能
+        features.put("telemetry", new TelemetryFeature(server));
         // 未来可以在这里添加更多功能
+        return features;
     }
 
-    public void enableFeature(String featureId) {
+    /**
+     * 在AetherBridge-Config线程中启用功能，可以在任意线程调用，立即返回
+     */
+    public void enableFeatureInBackground(String featureId) {
+        runInBackground("启用功能失败: " + featureId, () -> enableFeature(featureId));
+    }
+
+    /**
+     * 在AetherBridge-Config线程中禁用功能，可以在任意线程调用，立即返回
+     */
+    public void disableFeatureInBackground(String featureId) {
+        runInBackground("禁用功能失败: " + featureId, () -> disableFeature(featureId));
+    }
+
+    // 服务器关闭后排队中的任务不再执行
+    private void runInBackground(String failure, Runnable task) {
+        configExecutor.execute(() -> {
+            if (stopped) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                AetherBridge.LOGGER.error(failure, e);
+            }
+        });
+    }
+
+    synchronized void enableFeature(String featureId) {
         Feature feature = features.get(featureId);
         if (feature != null && !feature.isEnabled()) {
             try {
@@ -44,7 +102,7 @@ public class FeatureManager {
         }
     }
 
-    public void disableFeature(String featureId) {
+    synchronized void disableFeature(String featureId) {
         Feature feature = features.get(featureId);
         if (feature != null && feature.isEnabled()) {
             try {
@@ -61,10 +119,13 @@ public class FeatureManager {
         return feature != null && feature.isEnabled();
     }
 
-    public void reloadFeatures() {
+    public synchronized void reloadFeatures() {
         AetherBridge.LOGGER.info("正在重新加载功能状态...");
+        ModConfig config = ModConfig.getInstance();
+        applied = config;
+        stopped = false;
         features.forEach((id, feature) -> {
-            if (ModConfig.getInstance().isFeatureEnabled(id)) {
+            if (isConfiguredEnabled(config, id)) {
                 enableFeature(id);
             } else {
                 disableFeature(id);
@@ -78,11 +139,130 @@ public class FeatureManager {
         AetherBridge.LOGGER.info(status.toString());
     }
     
+    /**
+     * 根据配置判断功能是否应当启用
+     * WebSocket传输由transport配置决定，不使用features开关
+     */
+    private boolean isConfiguredEnabled(ModConfig config, String featureId) {
+        if ("websocketTransport".equals(featureId)) {
+            return config.isWebSocketTransport();
+        }
+        return config.isFeatureEnabled(featureId);
+    }
+    
+    /**
+     * 在AetherBridge-Config线程中应用当前的配置快照，可以在任意线程调用，立即返回
+     * 多次调用按顺序执行，每次都与上一次应用的快照比较
+     */
+    public void applyConfigInBackground() {
+        runInBackground("应用配置变化失败", this::applyConfig);
+    }
+    
+    /**
+     * 应用新的配置快照，只重启配置有变化的组件
+     * 没有变化的配置段在快照之间是同一个对象，这里直接比较引用；
+     * apiUrl、apiKey、前缀、限流等每条消息都会重新读取的配置不需要重启任何组件
+     *
+     * 关闭发送线程、处理完采集队列等步骤可能阻塞几秒，不要在主线程调用，应使用applyConfigInBackground；
+     * 只有聊天监听器持有的规则需要在主线程更新，这里通过MainThreadScheduler交给主线程
+     */
+    synchronized void applyConfig() {
+        if (stopped) {
+            return;
+        }
+        ModConfig previous = applied;
+        ModConfig current = ModConfig.getInstance();
+        if (previous == null) {
+            reloadFeatures();
+            return;
+        }
+        if (previous == current) {
+            return;
+        }
+        applied = current;
+        
+        // 发送队列、去重窗口、发件箱、攒批、请求体编码、HTTP客户端、线程模式和重试调度都由MessageSender按需创建，关闭后按新配置重建
+        if (previous.getQueue() != current.getQueue()
+                || previous.getDedup() != current.getDedup()
+                || previous.getOutbox() != current.getOutbox()
+                || previous.getBatch() != current.getBatch()
+                || previous.getEncoding() != current.getEncoding()
+                || previous.getHttp() != current.getHttp()
+                || previous.getThreads() != current.getThreads()
+                || previous.getRetry() != current.getRetry()) {
+            AetherBridge.LOGGER.info("出站发送配置已变化，正在重建发送队列和HTTP客户端");
+            MessageSender.shutdown();
+            MessageSender.replayOutbox();
+        } else if (previous.getDestinations() != current.getDestinations()) {
+            // 额外出站目标彼此独立，只重建配置有变化的目标
+            AetherBridge.LOGGER.info("出站目标配置已变化，正在重建有变化的目标");
+            MessageSender.reloadDestinations();
+        }
+        
+        // 聊天监听器在主线程上持有规则，权限检查需要与采集线程使用的规则一致
+        Feature sender = features.get("messageSender");
+        if (previous.getRulePipeline() != current.getRulePipeline() && sender instanceof MessageSenderFeature) {
+            MessageSenderFeature senderFeature = (MessageSenderFeature) sender;
+            RulePipeline rules = current.getRulePipeline();
+            if (!MainThreadScheduler.submit(() -> senderFeature.applyRules(rules))) {
+                AetherBridge.LOGGER.warn("主线程任务队列已满，新的消息规则将在下次启用消息发送功能时生效");
+            }
+        }
+        
+        // 只有端口或接收服务器参数变化时才重新绑定
+        if (previous.getListenPort() != current.getListenPort()
+                || previous.getReceiver() != current.getReceiver()) {
+            restartFeature("messageReceiver");
+        }
+        
+        if (!previous.getApiKey().equals(current.getApiKey())
+                || previous.getWebsocket() != current.getWebsocket()) {
+            restartFeature("websocketTransport");
+        }
+        
+        // 事件流和运行数据采样按启用时的配置运行，参数变化后重新创建
+        if (previous.getEvents() != current.getEvents()) {
+            restartFeature("gameEvents");
+        }
+        if (previous.getTelemetry() != current.getTelemetry()) {
+            restartFeature("telemetry");
+        }
+        
+        // 功能开关和传输方式的变化
+        features.forEach((id, feature) -> {
+            if (isConfiguredEnabled(current, id)) {
+                enableFeature(id);
+            } else {
+                disableFeature(id);
+            }
+        });
+    }
+    
+    // 重启已启用的功能，未启用的功能保持不变
+    private void restartFeature(String featureId) {
+        if (isFeatureEnabled(featureId)) {
+            AetherBridge.LOGGER.info("配置已变化，正在重启功能: " + featureId);
+            disableFeature(featureId);
+            enableFeature(featureId);
+        }
+    }
+    
+    /**
+     * 在AetherBridge-Config线程中热重载所有功能，可以在任意线程调用，立即返回
+     * @param onComplete 热重载成功后在AetherBridge-Config线程中调用
+     */
+    public void hotReloadInBackground(Runnable onComplete) {
+        runInBackground("执行热重载失败", () -> {
+            hotReload();
+            onComplete.run();
+        });
+    }
+
     /**
      * 热重载所有功能
      * 这个方法会先禁用所有功能，然后重新注册并启用它们
      */
-    public void hotReload() {
+    private synchronized void hotReload() {
         AetherBridge.LOGGER.info("正在执行热重载...");
         
         // 先禁用所有功能
@@ -91,24 +271,30 @@ public class FeatureManager {
         // 关闭消息发送线程池
         MessageSender.shutdown();
         
-        // 清空功能列表
-        features.clear();
-        
-        // 重新注册功能
-        registerFeatures();
+        // 重新注册功能，替换前读取状态的线程看到的仍是已禁用的旧功能
+        features = registerFeatures();
         
         // 根据配置重新加载功能
         reloadFeatures();
         
+        // 重新发送关闭前未确认的消息
+        MessageSender.replayOutbox();
+        
         AetherBridge.LOGGER.info("热重载完成");
     }
 
     public void shutdown() {
-        AetherBridge.LOGGER.info("正在关闭所有功能...");
-        features.forEach((id, feature) -> {
-            if (feature.isEnabled()) {
-                disableFeature(id);
-            }
-        });
+        // 先让排队中的任务不再执行，再等待进行中的任务结束
+        stopped = true;
+        synchronized (this) {
+            AetherBridge.LOGGER.info("正在关闭所有功能...");
+            // 进行中的热重载可能已经把stopped改回false
+            stopped = true;
+            features.forEach((id, feature) -> {
+                if (feature.isEnabled()) {
+                    disableFeature(id);
+                }
+            });
+        }
     }
 } 
\ No newline at end of file
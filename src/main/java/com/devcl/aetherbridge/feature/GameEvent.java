@@ -0,0 +1,121 @@
+package com.devcl.aetherbridge.feature;
+
+import com.devcl.aetherbridge.network.MessageCodec;
+
+import java.util.UUID;
+
+/**
+ * 一个游戏事件
+ *
+ * 在服务器主线程上从游戏对象中取出需要的字段后创建，之后只在事件线程中读取，不再访问游戏对象。
+ * 序列化后是带有type字段的JSON对象，远程服务器据此区分事件和聊天消息。
+ */
+final class GameEvent {
+    /**
+     * 事件类型，name为JSON中type字段的值
+     */
+    enum Type {
+        SERVER_START("server_start"),
+        SERVER_STOP("server_stop"),
+        PLAYER_JOIN("player_join"),
+        PLAYER_LEAVE("player_leave"),
+        PLAYER_DEATH("player_death"),
+        ADVANCEMENT("advancement"),
+        PLAYER_COUNT("player_count");
+
+        private final String wireName;
+
+        Type(String wireName) {
+            this.wireName = wireName;
+        }
+
+        String getWireName() {
+            return wireName;
+        }
+    }
+
+    private final Type type;
+    // 事件发生时间，Unix毫秒
+    private final long time;
+    private final UUID playerId;
+    private final String playerName;
+    // player_death为死亡消息，advancement为进度标题
+    private final String text;
+    // player_death为伤害类型，advancement为进度ID
+    private final String detail;
+    // advancement为进度框类型（task、goal、challenge）
+    private final String frame;
+    // player_count为在线人数和人数上限，其他事件为-1
+    private final int online;
+    private final int max;
+
+    private GameEvent(Type type, UUID playerId, String playerName, String text, String detail, String frame,
+                      int online, int max) {
+        this.type = type;
+        this.time = System.currentTimeMillis();
+        this.playerId = playerId;
+        this.playerName = playerName;
+        this.text = text;
+        this.detail = detail;
+        this.frame = frame;
+        this.online = online;
+        this.max = max;
+    }
+
+    static GameEvent lifecycle(Type type) {
+        return new GameEvent(type, null, null, null, null, null, -1, -1);
+    }
+
+    static GameEvent player(Type type, UUID playerId, String playerName) {
+        return new GameEvent(type, playerId, playerName, null, null, null, -1, -1);
+    }
+
+    static GameEvent death(UUID playerId, String playerName, String message, String cause) {
+        return new GameEvent(Type.PLAYER_DEATH, playerId, playerName, message, cause, null, -1, -1);
+    }
+
+    static GameEvent advancement(UUID playerId, String playerName, String id, String title, String frame) {
+        return new GameEvent(Type.ADVANCEMENT, playerId, playerName, title, id, frame, -1, -1);
+    }
+
+    static GameEvent playerCount(int online, int max) {
+        return new GameEvent(Type.PLAYER_COUNT, null, null, null, null, null, online, max);
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    String getPlayerName() {
+        return playerName;
+    }
+
+    /**
+     * 序列化为单条事件
+     * @param sampleRate 小于1时写入sampleRate字段，远程服务器可以据此估算实际数量
+     */
+    byte[] toJson(double sampleRate) {
+        MessageCodec.ObjectWriter writer = new MessageCodec.ObjectWriter()
+            .field("type", type.getWireName())
+            .field("time", time)
+            .field("playerId", playerId)
+            .field("playerName", playerName);
+        switch (type) {
+            case PLAYER_DEATH:
+                writer.field("message", text).field("cause", detail);
+                break;
+            case ADVANCEMENT:
+                writer.field("advancement", detail).field("title", text).field("frame", frame);
+                break;
+            case PLAYER_COUNT:
+                writer.field("online", online).field("max", max);
+                break;
+            default:
+                break;
+        }
+        if (sampleRate < 1) {
+            writer.field("sampleRate", sampleRate);
+        }
+        return writer.toBytes();
+    }
+}
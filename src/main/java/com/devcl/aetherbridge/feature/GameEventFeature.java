@@ -0,0 +1,131 @@
+package com.devcl.aetherbridge.feature;
+
+import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.config.ModConfig;
+import net.fabricmc.fabric.api.entity.event.v1.ServerLivingEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.minecraft.advancement.Advancement;
+import net.minecraft.advancement.AdvancementDisplay;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+
+/**
+ * 游戏事件推送功能
+ *
+ * 把玩家加入、离开、死亡、获得进度以及服务器启停作为带有type字段的事件发送到远程服务器，
+ * 另外按固定间隔发送在线人数。监听器在主线程上只取出事件需要的字段，其余工作由GameEventStream完成。
+ * 进度事件由PlayerAdvancementTrackerMixin调用onAdvancement触发。
+ */
+public class GameEventFeature implements Feature {
+    // 进度的mixin没有功能实例，通过这个引用找到当前的事件流
+    private static volatile GameEventStream activeStream;
+
+    private final MinecraftServer server;
+    // 启用和禁用在AetherBridge-Config线程中进行，命令在主线程上读取
+    private volatile boolean enabled = false;
+    // Fabric不支持注销监听器，只注册一次，之后通过stream是否存在控制
+    private boolean registered = false;
+    private volatile GameEventStream stream;
+
+    public GameEventFeature(MinecraftServer server) {
+        this.server = server;
+    }
+
+    /**
+     * 玩家获得一个进度，只能在服务器主线程调用
+     * 与原版一致，只推送会在聊天栏公告的进度，配方解锁等隐藏进度不推送
+     */
+    public static void onAdvancement(ServerPlayerEntity player, Advancement advancement) {
+        GameEventStream current = activeStream;
+        AdvancementDisplay display = advancement.getDisplay();
+        if (current == null || display == null || !display.shouldAnnounceToChat()) {
+            return;
+        }
+        current.publish(GameEvent.advancement(player.getUuid(), player.getGameProfile().getName(),
+            advancement.getId().toString(), display.getTitle().getString(), display.getFrame().getId()));
+    }
+
+    @Override
+    public void enable() throws Exception {
+        if (!enabled) {
+            AetherBridge.LOGGER.info("正在启用游戏事件推送功能...");
+            if (!registered) {
+                register();
+                registered = true;
+            }
+            stream = new GameEventStream(server, ModConfig.getInstance().getEvents());
+            activeStream = stream;
+            enabled = true;
+            AetherBridge.LOGGER.info("游戏事件推送功能已启用");
+        } else {
+            AetherBridge.LOGGER.debug("游戏事件推送功能已经处于启用状态");
+        }
+    }
+
+    @Override
+    public void disable() throws Exception {
+        if (enabled) {
+            AetherBridge.LOGGER.info("正在禁用游戏事件推送功能...");
+            enabled = false;
+            GameEventStream current = stream;
+            stream = null;
+            if (activeStream == current) {
+                activeStream = null;
+            }
+            // 服务器正在关闭时在发送队列关闭之前发出server_stop
+            if (!server.isRunning() && ModConfig.getInstance().getEvents().isLifecycle()) {
+                current.publish(GameEvent.lifecycle(GameEvent.Type.SERVER_STOP));
+            }
+            current.close();
+            AetherBridge.LOGGER.info("游戏事件推送功能已禁用");
+        } else {
+            AetherBridge.LOGGER.debug("游戏事件推送功能已经处于禁用状态");
+        }
+    }
+
+    private void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(startedServer -> {
+            GameEventStream current = stream;
+            if (current != null && ModConfig.getInstance().getEvents().isLifecycle()) {
+                current.publish(GameEvent.lifecycle(GameEvent.Type.SERVER_START));
+            }
+        });
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, joinServer) -> {
+            GameEventStream current = stream;
+            if (current != null) {
+                ServerPlayerEntity player = handler.getPlayer();
+                current.publish(GameEvent.player(GameEvent.Type.PLAYER_JOIN,
+                    player.getUuid(), player.getGameProfile().getName()));
+            }
+        });
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, disconnectServer) -> {
+            GameEventStream current = stream;
+            if (current != null) {
+                ServerPlayerEntity player = handler.getPlayer();
+                current.publish(GameEvent.player(GameEvent.Type.PLAYER_LEAVE,
+                    player.getUuid(), player.getGameProfile().getName()));
+            }
+        });
+        ServerLivingEntityEvents.AFTER_DEATH.register((entity, source) -> {
+            GameEventStream current = stream;
+            if (current != null && entity instanceof ServerPlayerEntity) {
+                ServerPlayerEntity player = (ServerPlayerEntity) entity;
+                Text message = player.getDamageTracker().getDeathMessage();
+                current.publish(GameEvent.death(player.getUuid(), player.getGameProfile().getName(),
+                    message.getString(), source.getName()));
+            }
+        });
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public String getId() {
+        return "gameEvents";
+    }
+}
@@ -0,0 +1,178 @@
+package com.devcl.aetherbridge.feature;
+
+import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.metrics.Metrics;
+import com.devcl.aetherbridge.network.MessageCodec;
+import com.devcl.aetherbridge.network.MessageSender;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 游戏事件的采样、汇总和发送
+ *
+ * 主线程只创建GameEvent并交给AetherBridge-Events线程，采样、汇总窗口、序列化和放入发送队列
+ * 都在这个线程中完成，汇总状态只由它读写，不需要加锁。在线人数快照也由它按固定间隔生成。
+ * 事件与聊天消息共用MessageSender的发送队列、发件箱和额外目标。
+ */
+final class GameEventStream {
+    private final MinecraftServer server;
+    private final ModConfig.EventsConfig config;
+    private final ScheduledThreadPoolExecutor executor;
+    // 只在事件线程中访问
+    private final Map<GameEvent.Type, Aggregate> aggregates = new EnumMap<>(GameEvent.Type.class);
+
+    GameEventStream(MinecraftServer server, ModConfig.EventsConfig config) {
+        this.server = server;
+        this.config = config;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "AetherBridge-Events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 关闭时由close主动输出未结束的汇总窗口，不等待定时任务
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        int interval = config.getPlayerCountIntervalSeconds();
+        if (interval > 0) {
+            executor.scheduleAtFixedRate(this::snapshotPlayerCount, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 交给事件线程处理，可以在任意线程调用
+     */
+    void publish(GameEvent event) {
+        try {
+            executor.execute(() -> handle(event));
+        } catch (RejectedExecutionException e) {
+            // 已经关闭
+            Metrics.GAME_EVENTS_SKIPPED.increment();
+        }
+    }
+
+    /**
+     * 输出未结束的汇总窗口，等待已提交的事件处理完后停止事件线程
+     */
+    void close() {
+        try {
+            executor.execute(this::flushAll);
+        } catch (RejectedExecutionException e) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
+                AetherBridge.LOGGER.warn("游戏事件线程未能在2秒内结束，剩余事件将被丢弃");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(GameEvent event) {
+        ModConfig.EventTypeConfig type = typeConfig(event.getType());
+        if (type == null) {
+            // 生命周期事件和在线人数没有采样和汇总
+            send(event.toJson(1.0));
+            return;
+        }
+        if (!type.isEnabled()) {
+            return;
+        }
+        if (type.getAggregateSeconds() > 0) {
+            Aggregate aggregate = aggregates.get(event.getType());
+            if (aggregate == null) {
+                aggregate = new Aggregate(event.getType(), type.getAggregateSeconds());
+                aggregates.put(event.getType(), aggregate);
+                GameEvent.Type key = event.getType();
+                executor.schedule(() -> flush(key), type.getAggregateSeconds(), TimeUnit.SECONDS);
+            }
+            aggregate.add(event.getPlayerName(), config.getMaxAggregatedPlayers());
+            // 汇总的事件会随窗口结束时的汇总事件送出，不算作跳过
+            Metrics.GAME_EVENTS_AGGREGATED.increment();
+            return;
+        }
+        double rate = type.getSampleRate();
+        if (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            Metrics.GAME_EVENTS_SKIPPED.increment();
+            return;
+        }
+        send(event.toJson(rate));
+    }
+
+    private ModConfig.EventTypeConfig typeConfig(GameEvent.Type type) {
+        switch (type) {
+            case PLAYER_JOIN: return config.getJoin();
+            case PLAYER_LEAVE: return config.getLeave();
+            case PLAYER_DEATH: return config.getDeath();
+            case ADVANCEMENT: return config.getAdvancement();
+            default: return null;
+        }
+    }
+
+    private void snapshotPlayerCount() {
+        // 只读取玩家列表的大小和配置的上限，不遍历玩家，不需要回到主线程
+        handle(GameEvent.playerCount(server.getCurrentPlayerCount(), server.getPlayerManager().getMaxPlayerCount()));
+    }
+
+    private void flush(GameEvent.Type type) {
+        Aggregate aggregate = aggregates.remove(type);
+        if (aggregate != null) {
+            send(aggregate.toJson());
+        }
+    }
+
+    private void flushAll() {
+        for (Aggregate aggregate : aggregates.values()) {
+            send(aggregate.toJson());
+        }
+        aggregates.clear();
+    }
+
+    private void send(byte[] json) {
+        Metrics.GAME_EVENTS.increment();
+        MessageSender.sendEvent(json);
+    }
+
+    /**
+     * 一个汇总窗口内的同类事件
+     */
+    private static final class Aggregate {
+        private final GameEvent.Type type;
+        private final int windowSeconds;
+        private final List<String> players = new ArrayList<>();
+        private int count;
+
+        Aggregate(GameEvent.Type type, int windowSeconds) {
+            this.type = type;
+            this.windowSeconds = windowSeconds;
+        }
+
+        void add(String playerName, int maxPlayers) {
+            count++;
+            if (playerName != null && players.size() < maxPlayers && !players.contains(playerName)) {
+                players.add(playerName);
+            }
+        }
+
+        byte[] toJson() {
+            return new MessageCodec.ObjectWriter()
+                .field("type", type.getWireName())
+                .field("time", System.currentTimeMillis())
+                .field("count", count)
+                .field("windowSeconds", windowSeconds)
+                .field("players", players)
+                .toBytes();
+        }
+    }
+}
@@ -2,24 +2,68 @@ package com.devcl.aetherbridge.feature;
 
 import com.devcl.aetherbridge.AetherBridge;
 import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.logging.BridgeLog;
+import com.devcl.aetherbridge.metrics.Metrics;
+import com.devcl.aetherbridge.network.IdempotencyIndex;
+import com.devcl.aetherbridge.network.MessageCodec;
+import com.devcl.aetherbridge.network.NioHttpServer;
+import com.devcl.aetherbridge.ratelimit.RateLimiter;
+import com.devcl.aetherbridge.ratelimit.RateLimits;
+import com.devcl.aetherbridge.scheduler.MainThreadScheduler;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.sun.net.httpserver.HttpServer;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.text.Text;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class MessageReceiverFeature implements Feature {
     private final MinecraftServer server;
-    private boolean enabled = false;
-    private HttpServer httpServer;
-    private java.util.concurrent.ExecutorService executor;
+    // 启用和禁用在AetherBridge-Config线程中进行，命令在主线程上读取
+    private volatile boolean enabled = false;
+    private NioHttpServer httpServer;
     private static final Gson GSON = new Gson();
+    
+    // 跨域请求头，接口的所有响应共用
+    private static final NioHttpServer.HeaderSet CORS = NioHttpServer.HeaderSet.of(
+        "Access-Control-Allow-Origin", "*",
+        "Access-Control-Allow-Methods", "GET, POST, OPTIONS",
+        "Access-Control-Allow-Headers", "Content-Type, Authorization, Idempotency-Key"
+    );
+    // 内容固定的响应在类加载时预先编码，处理请求时不再拼接响应头和响应体
+    private static final NioHttpServer.Response NO_CONTENT = new NioHttpServer.Response(204).headers(CORS).prepare();
+    private static final NioHttpServer.Response NOT_FOUND = new NioHttpServer.Response(404).headers(CORS).prepare();
+    private static final NioHttpServer.Response DISABLED = new NioHttpServer.Response(503).prepare();
+    private static final NioHttpServer.Response FORBIDDEN = new NioHttpServer.Response(403).headers(CORS).prepare();
+    private static final NioHttpServer.Response SUCCESS = new NioHttpServer.Response(200)
+        .json("{\"status\":\"success\"}").headers(CORS).prepare();
+    private static final NioHttpServer.Response REPLAYED = new NioHttpServer.Response(200)
+        .json("{\"status\":\"success\"}").headers(CORS)
+        .header("Idempotent-Replayed", "true")
+        .header("Access-Control-Expose-Headers", "Idempotent-Replayed").prepare();
+    private static final NioHttpServer.Response QUEUE_FULL = new NioHttpServer.Response(503)
+        .json("{\"error\":\"broadcast queue full\"}").headers(CORS).prepare();
+    private static final NioHttpServer.Response MISSING_MESSAGE = new NioHttpServer.Response(400)
+        .json("{\"error\":\"missing message field\"}").headers(CORS).prepare();
+    private static final NioHttpServer.Response EXPECTED_ARRAY = new NioHttpServer.Response(400)
+        .json("{\"error\":\"expected message array\"}").headers(CORS).prepare();
+    private static final NioHttpServer.Response INTERNAL_ERROR = new NioHttpServer.Response(500)
+        .json("{\"error\":\"internal server error\"}").headers(CORS).prepare();
+    private static final NioHttpServer.Response METRICS_FORBIDDEN = new NioHttpServer.Response(403).prepare();
+    private static final NioHttpServer.Response METRICS_METHOD_NOT_ALLOWED = new NioHttpServer.Response(405)
+        .header("Allow", "GET").prepare();
+
+    // 入站幂等索引，HTTP接收和WebSocket传输共用一张表，键按客户端和种类区分，配置的idempotency段变化时重建
+    private static IdempotencyIndex idempotency;
+    private static ModConfig.IdempotencyConfig idempotencyConfig;
 
     public MessageReceiverFeature(MinecraftServer server) {
         this.server = server;
@@ -60,169 +104,405 @@ public class MessageReceiverFeature implements Feature {
     }
 
     private void startHttpServer() throws IOException {
+        ModConfig.ReceiverConfig config = ModConfig.getInstance().getReceiver();
         try {
             // 支持IPv6
             InetSocketAddress addr = new InetSocketAddress("::", ModConfig.getInstance().getListenPort());
-            httpServer = HttpServer.create(addr, 0);
+            httpServer = new NioHttpServer(
+                addr,
+                config.getMaxRequestBytes(),
+                config.getMaxConnections(),
+                config.getKeepAliveTimeoutMs(),
+                this::handleRequest
+            );
             AetherBridge.LOGGER.info("正在启动HTTP服务器，端口: " + ModConfig.getInstance().getListenPort());
+            httpServer.start();
 
+            AetherBridge.LOGGER.info("HTTP服务器已启动，监听所有地址(IPv4/IPv6)，端口: " + ModConfig.getInstance().getListenPort());
+        } catch (IOException e) {
+            AetherBridge.LOGGER.error("启动HTTP服务器失败: " + e.getMessage());
+            if (e.getMessage() != null && e.getMessage().contains("Address already in use")) {
+                AetherBridge.LOGGER.error("端口 " + ModConfig.getInstance().getListenPort() + " 已被占用，请检查配置或其他程序");
+            }
+            httpServer = null;
+            throw e;
+        }
+    }
+
+    /**
+     * 处理HTTP请求，在HTTP服务器的选择器线程上执行
+     */
+    private NioHttpServer.Response handleRequest(NioHttpServer.Request request) {
+        String remoteAddr = request.remoteAddress();
+        // 整个请求的处理使用同一个配置快照
+        ModConfig config = ModConfig.getInstance();
+        
+        if ("/metrics".equals(request.path()) && config.getMetrics().isEnabled()) {
+            return handleMetrics(request, config);
+        }
+        
+        boolean batch = "/api/send-to-mc/batch".equals(request.path());
+        if (!batch && !"/api/send-to-mc".equals(request.path())) {
+            BridgeLog.trace("inbound.unknown", "remote", remoteAddr, "method", request.method(), "path", request.path());
             // 添加CORS支持
-            httpServer.createContext("/", exchange -> {
-                String remoteAddr = exchange.getRemoteAddress().getAddress().getHostAddress();
-                AetherBridge.LOGGER.debug("收到来自 " + remoteAddr + " 的请求: " + exchange.getRequestMethod() + " " + exchange.getRequestURI());
-                
-                exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-                exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-                exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
-                
-                if (exchange.getRequestMethod().equalsIgnoreCase("OPTIONS")) {
-                    exchange.sendResponseHeaders(204, -1);
-                    return;
-                }
-                
-                exchange.sendResponseHeaders(404, -1);
-            });
+            if (request.method().equalsIgnoreCase("OPTIONS")) {
+                return NO_CONTENT;
+            }
+            return NOT_FOUND;
+        }
+        
+        BridgeLog.trace("inbound.request", "remote", remoteAddr, "method", request.method(), "path", request.path());
+        Metrics.INBOUND_REQUESTS.increment();
+        
+        if (!enabled) {
+            BridgeLog.warn("receiver-disabled", "功能已禁用，拒绝请求");
+            return DISABLED;
+        }
 
-            httpServer.createContext("/api/send-to-mc", exchange -> {
-                String remoteAddr = exchange.getRemoteAddress().getAddress().getHostAddress();
-                AetherBridge.LOGGER.info("收到来自 " + remoteAddr + " 的消息发送请求: " + 
-                                      exchange.getRequestMethod() + " " + exchange.getRequestURI());
+        // 处理预检请求
+        if (request.method().equalsIgnoreCase("OPTIONS")) {
+            return NO_CONTENT;
+        }
+
+        // 验证token
+        String authHeader = request.header("Authorization");
+        if (!isAuthorized(authHeader, config.getExpectedAuthorization())) {
+            BridgeLog.warn("inbound-auth", "API密钥验证失败，来自: {}", remoteAddr);
+            Metrics.INBOUND_REJECTED.increment();
+            return FORBIDDEN;
+        }
+        
+        // 按来源地址和API密钥限流，批量请求在解码后按消息条数计算
+        int clientKey = 31 * remoteAddr.hashCode() + authHeader.hashCode();
+
+        // 读取请求体
+        try {
+            ByteBuffer body = request.body();
+            BridgeLog.trace("inbound.body", "bytes", body.remaining(), "body", body);
+            
+            if (batch) {
+                return handleBatch(body, clientKey, remoteAddr, request.header("Idempotency-Key"), config);
+            }
+            
+            long waitNanos = RateLimits.inbound().tryAcquire(clientKey, 1);
+            if (waitNanos > 0) {
+                return rateLimited(waitNanos, 1, remoteAddr);
+            }
+            
+            MessageCodec.Inbound inbound = decodeInbound(body);
+            
+            if (inbound != null && inbound.message != null) {
+                // 请求头中的幂等键优先于消息的id字段
+                String key = request.header("Idempotency-Key");
+                int kind = IdempotencyIndex.KIND_REQUEST;
+                if (key == null) {
+                    key = inbound.id;
+                    kind = IdempotencyIndex.KIND_MESSAGE;
+                }
+                IdempotencyIndex index = key != null ? idempotency(config) : null;
+                long keyHash = index != null ? IdempotencyIndex.hash(kind, clientKey, key) : 0;
+                if (index != null && index.claim(keyHash) != IdempotencyIndex.NEW) {
+                    BridgeLog.trace("inbound.replay", "key", key);
+                    Metrics.INBOUND_REPLAYED.increment();
+                    return REPLAYED;
+                }
                 
-                if (!enabled) {
-                    AetherBridge.LOGGER.warn("功能已禁用，拒绝请求");
-                    exchange.sendResponseHeaders(503, -1);
-                    exchange.close();
-                    return;
+                // 提交到主线程调度器，在tick结束时广播
+                boolean staged = false;
+                try {
+                    staged = stageMessage(inbound);
+                } finally {
+                    if (index != null) {
+                        settle(index, keyHash, staged, packResult(1, 0));
+                    }
+                }
+                if (!staged) {
+                    BridgeLog.warn("broadcast-queue-full", "主线程任务队列已满，拒绝消息");
+                    Metrics.INBOUND_REJECTED.increment();
+                    return QUEUE_FULL;
                 }
-
-                // 添加CORS头
-                exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-                exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-                exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization");
                 
-                // 处理预检请求
-                if (exchange.getRequestMethod().equalsIgnoreCase("OPTIONS")) {
-                    exchange.sendResponseHeaders(204, -1);
-                    return;
+                // 返回成功响应
+                return SUCCESS;
+            } else {
+                BridgeLog.warn("inbound-malformed", "请求缺少message字段");
+                Metrics.INBOUND_REJECTED.increment();
+                return MISSING_MESSAGE;
+            }
+        } catch (Exception e) {
+            BridgeLog.error("inbound-error", "处理HTTP请求失败", e);
+            return INTERNAL_ERROR;
+        }
+    }
+    
+    /**
+     * 处理批量请求，请求体为消息对象数组，每个元素的格式与单条接口相同
+     * 缺少message字段或主线程任务队列已满的元素计入rejected，id重复的元素计入accepted和replayed
+     * @param batchKey 请求头中的幂等键，作用于整个请求，可以为null
+     */
+    private NioHttpServer.Response handleBatch(ByteBuffer body, int clientKey, String remoteAddr,
+                                               String batchKey, ModConfig config) {
+        List<MessageCodec.Inbound> messages = decodeInboundBatch(body);
+        if (messages == null) {
+            BridgeLog.warn("inbound-malformed", "批量请求体为空");
+            Metrics.INBOUND_REJECTED.increment();
+            return EXPECTED_ARRAY;
+        }
+        
+        // 批量请求按消息条数取令牌，超过桶容量的批次等待多久都不会被允许，直接拒绝而不是返回429让客户端重试
+        RateLimiter limiter = RateLimits.inbound();
+        int maxMessages = limiter.maxPermits();
+        if (messages.size() > maxMessages) {
+            BridgeLog.warn("inbound-batch-too-large", "来自 {} 的批量请求有 {} 条消息，超过限流允许的突发条数 {}",
+                remoteAddr, messages.size(), maxMessages);
+            Metrics.INBOUND_REJECTED.add(messages.size());
+            return new NioHttpServer.Response(413)
+                .json("{\"error\":\"batch exceeds rate limit burst\",\"maxMessages\":" + maxMessages + "}")
+                .headers(CORS);
+        }
+        long waitNanos = limiter.tryAcquire(clientKey, messages.size());
+        if (waitNanos > 0) {
+            return rateLimited(waitNanos, messages.size(), remoteAddr);
+        }
+        
+        IdempotencyIndex index = idempotency(config);
+        long batchHash = index != null && batchKey != null ? IdempotencyIndex.hash(IdempotencyIndex.KIND_BATCH, clientKey, batchKey) : 0;
+        if (batchHash != 0) {
+            int result = index.claim(batchHash);
+            if (result != IdempotencyIndex.NEW) {
+                // 整个请求是重放，返回第一次的计数；第一次的请求尚未处理完时按全部接受返回
+                int accepted = result != IdempotencyIndex.PENDING ? (result - 1) >>> 15 : messages.size();
+                int rejected = result != IdempotencyIndex.PENDING ? (result - 1) & 0x7fff : 0;
+                BridgeLog.trace("inbound.replay", "key", batchKey);
+                Metrics.INBOUND_REPLAYED.add(messages.size());
+                return batchResponse(accepted, rejected, accepted).header("Idempotent-Replayed", "true")
+                    .header("Access-Control-Expose-Headers", "Idempotent-Replayed");
+            }
+        }
+        
+        int accepted = 0;
+        int rejected = 0;
+        int replayed = 0;
+        try {
+            for (MessageCodec.Inbound inbound : messages) {
+                if (inbound == null || inbound.message == null) {
+                    rejected++;
+                    continue;
                 }
-
-                // 验证token
-                String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
-                if (authHeader == null || !authHeader.startsWith("Bearer ") || 
-                    !authHeader.substring(7).equals(ModConfig.getInstance().getApiKey())) {
-                    AetherBridge.LOGGER.warn("API密钥验证失败，来自: " + remoteAddr);
-                    exchange.sendResponseHeaders(403, 0);
-                    exchange.close();
-                    return;
+                long idHash = index != null && inbound.id != null
+                    ? IdempotencyIndex.hash(IdempotencyIndex.KIND_MESSAGE, clientKey, inbound.id) : 0;
+                if (idHash != 0 && index.claim(idHash) != IdempotencyIndex.NEW) {
+                    accepted++;
+                    replayed++;
+                    continue;
                 }
-
-                // 读取请求体
-                try (InputStream is = exchange.getRequestBody()) {
-                    String requestBody = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-                    AetherBridge.LOGGER.debug("收到请求体: " + requestBody);
-                    
-                    JsonObject json = GSON.fromJson(requestBody, JsonObject.class);
-                    
-                    if (json.has("message")) {
-                        String message = json.get("message").getAsString();
-                        String prefix = json.has("prefix") ? json.get("prefix").getAsString() : null;
-                        
-                        AetherBridge.LOGGER.info("收到消息: " + message + (prefix != null ? ", 前缀: " + prefix : ""));
-                        
-                        // 构建完整消息
-                        String fullMessage = prefix != null ? String.format("[%s] %s", prefix, message) : message;
-                        
-                        // 在主线程中广播消息
-                        broadcastMessage(fullMessage);
-                        
-                        // 返回成功响应
-                        String response = "{\"status\":\"success\"}";
-                        exchange.getResponseHeaders().set("Content-Type", "application/json");
-                        exchange.sendResponseHeaders(200, response.length());
-                        exchange.getResponseBody().write(response.getBytes());
-                        
-                        AetherBridge.LOGGER.debug("消息处理成功");
-                    } else {
-                        AetherBridge.LOGGER.warn("请求缺少message字段");
-                        String error = "{\"error\":\"missing message field\"}";
-                        exchange.getResponseHeaders().set("Content-Type", "application/json");
-                        exchange.sendResponseHeaders(400, error.length());
-                        exchange.getResponseBody().write(error.getBytes());
-                    }
-                } catch (Exception e) {
-                    AetherBridge.LOGGER.error("处理HTTP请求失败", e);
-                    String error = "{\"error\":\"internal server error\"}";
-                    exchange.getResponseHeaders().set("Content-Type", "application/json");
-                    exchange.sendResponseHeaders(500, error.length());
-                    exchange.getResponseBody().write(error.getBytes());
+                boolean staged = false;
+                try {
+                    staged = stageMessage(inbound);
                 } finally {
-                    exchange.close();
+                    if (idHash != 0) {
+                        settle(index, idHash, staged, packResult(1, 0));
+                    }
+                }
+                if (staged) {
+                    accepted++;
+                } else {
+                    rejected++;
                 }
-            });
-
-            // 使用线程池处理请求
-            executor = Executors.newFixedThreadPool(4);
-            httpServer.setExecutor(executor);
-            httpServer.start();
-
-            AetherBridge.LOGGER.info("HTTP服务器已启动，监听所有地址(IPv4/IPv6)，端口: " + ModConfig.getInstance().getListenPort());
-        } catch (IOException e) {
-            AetherBridge.LOGGER.error("启动HTTP服务器失败: " + e.getMessage());
-            if (e.getMessage().contains("Address already in use")) {
-                AetherBridge.LOGGER.error("端口 " + ModConfig.getInstance().getListenPort() + " 已被占用，请检查配置或其他程序");
             }
-            throw e;
+        } finally {
+            if (batchHash != 0) {
+                // 有元素被拒绝时也记录结果，重试的请求应当换一个幂等键或只重发被拒绝的元素
+                settle(index, batchHash, accepted + rejected == messages.size(), packResult(accepted, rejected));
+            }
+        }
+        BridgeLog.trace("inbound.batch", "accepted", accepted, "rejected", rejected, "replayed", replayed);
+        Metrics.INBOUND_REJECTED.add(rejected);
+        Metrics.INBOUND_REPLAYED.add(replayed);
+        return batchResponse(accepted, rejected, replayed);
+    }
+    
+    private static NioHttpServer.Response batchResponse(int accepted, int rejected, int replayed) {
+        return new NioHttpServer.Response(200).json("{\"status\":\"success\",\"accepted\":" + accepted
+            + ",\"rejected\":" + rejected + ",\"replayed\":" + replayed + "}").headers(CORS);
+    }
+    
+    /**
+     * 获取与配置对应的幂等索引，配置的idempotency段没有变化时沿用原来的索引
+     * @return 幂等功能关闭时返回null
+     */
+    static synchronized IdempotencyIndex idempotency(ModConfig config) {
+        ModConfig.IdempotencyConfig section = config.getIdempotency();
+        if (section != idempotencyConfig) {
+            idempotencyConfig = section;
+            idempotency = section.isEnabled()
+                ? new IdempotencyIndex(section.getSlots(), TimeUnit.SECONDS.toMillis(section.getWindowSeconds()))
+                : null;
+        }
+        return idempotency;
+    }
+    
+    /**
+     * 处理结束后更新幂等键：成功时记录结果，失败时撤销占位，允许调用方用同一个键重试
+     */
+    static void settle(IdempotencyIndex index, long keyHash, boolean succeeded, int result) {
+        if (succeeded) {
+            index.complete(keyHash, result);
+        } else {
+            index.release(keyHash);
         }
     }
+    
+    /**
+     * 把接受和拒绝的消息数压缩为幂等索引中保存的结果，各占15位，超出时按上限记录
+     * 单条消息的结果为packResult(1, 0)
+     */
+    static int packResult(int accepted, int rejected) {
+        return 1 + (Math.min(accepted, 0x7fff) << 15 | Math.min(rejected, 0x7fff));
+    }
+    
+    private boolean stageMessage(MessageCodec.Inbound inbound) {
+        BridgeLog.trace("inbound.message", "message", inbound.message, "prefix", inbound.prefix);
+        return broadcastMessage(server, inbound.prefix, inbound.message);
+    }
+    
+    /**
+     * 解码单条消息请求体，快速解码器无法识别时回退到Gson
+     * @return 请求体为空时返回null
+     */
+    static MessageCodec.Inbound decodeInbound(ByteBuffer body) {
+        try {
+            return MessageCodec.decodeInbound(body);
+        } catch (MessageCodec.MalformedException e) {
+            BridgeLog.trace("inbound.fallback", "reason", e.getMessage());
+            JsonObject json = GSON.fromJson(StandardCharsets.UTF_8.decode(body.duplicate()).toString(), JsonObject.class);
+            return json != null ? toInbound(json) : null;
+        }
+    }
+    
+    /**
+     * 解码批量请求体，不是对象的元素解码为null
+     * @return 请求体为空时返回null
+     */
+    static List<MessageCodec.Inbound> decodeInboundBatch(ByteBuffer body) {
+        try {
+            return MessageCodec.decodeInboundBatch(body);
+        } catch (MessageCodec.MalformedException e) {
+            BridgeLog.trace("inbound.fallback", "reason", e.getMessage());
+            JsonArray array = GSON.fromJson(StandardCharsets.UTF_8.decode(body.duplicate()).toString(), JsonArray.class);
+            if (array == null) {
+                return null;
+            }
+            List<MessageCodec.Inbound> messages = new ArrayList<>(array.size());
+            for (JsonElement element : array) {
+                messages.add(element.isJsonObject() ? toInbound(element.getAsJsonObject()) : null);
+            }
+            return messages;
+        }
+    }
+    
+    private static MessageCodec.Inbound toInbound(JsonObject json) {
+        return new MessageCodec.Inbound(getString(json, "message"), getString(json, "prefix"), getString(json, "id"));
+    }
+    
+    private static String getString(JsonObject json, String name) {
+        JsonElement element = json.get(name);
+        return element != null && !element.isJsonNull() ? element.getAsString() : null;
+    }
+    
+    /**
+     * 校验Authorization请求头中的Bearer令牌，耗时与令牌内容无关
+     *
+     * 请求头按ISO-8859-1解码，每个字符就是原始的一个字节，因此可以直接与期望值的UTF-8字节逐个比较，
+     * 不需要截取子串或重新编码。比较总是走完期望值的全部字节，不会在第一个不同的字节处提前返回，
+     * 无法通过响应时间逐字节猜出密钥。
+     * @param expected "Bearer "加API密钥的UTF-8字节，见ModConfig.getExpectedAuthorization
+     */
+    static boolean isAuthorized(String authHeader, byte[] expected) {
+        if (authHeader == null) {
+            return false;
+        }
+        int length = authHeader.length();
+        int diff = length ^ expected.length;
+        for (int i = 0; i < expected.length; i++) {
+            // 请求头较短时与0比较，仍然走完全部字节
+            int actual = i < length ? authHeader.charAt(i) : 0;
+            diff |= actual ^ (expected[i] & 0xff);
+        }
+        return diff == 0;
+    }
+    
+    /**
+     * 以Prometheus文本格式返回所有指标
+     */
+    private NioHttpServer.Response handleMetrics(NioHttpServer.Request request, ModConfig config) {
+        if (!request.method().equalsIgnoreCase("GET")) {
+            return METRICS_METHOD_NOT_ALLOWED;
+        }
+        if (config.getMetrics().isRequireAuth()
+                && !isAuthorized(request.header("Authorization"), config.getExpectedAuthorization())) {
+            BridgeLog.warn("metrics-auth", "指标接口API密钥验证失败，来自: {}", request.remoteAddress());
+            return METRICS_FORBIDDEN;
+        }
+        StringBuilder out = new StringBuilder(4096);
+        Metrics.writePrometheus(out);
+        return new NioHttpServer.Response(200)
+            .body("text/plain; version=0.0.4; charset=utf-8", out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * 限流拒绝的响应，Retry-After按秒向上取整
+     */
+    private static NioHttpServer.Response rateLimited(long waitNanos, int messages, String remoteAddr) {
+        BridgeLog.warn("inbound-rate-limited", "来自 {} 的请求过于频繁，已拒绝", remoteAddr);
+        Metrics.INBOUND_RATE_LIMITED.add(messages);
+        Metrics.INBOUND_REJECTED.add(messages);
+        long retryAfter = Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+        return new NioHttpServer.Response(429)
+            .header("Retry-After", String.valueOf(retryAfter))
+            .json("{\"error\":\"rate limited\"}")
+            .headers(CORS);
+    }
 
     private void stopHttpServer() {
         if (httpServer != null) {
             AetherBridge.LOGGER.info("正在停止HTTP服务器...");
-            httpServer.stop(0);
-            // 优雅关闭线程池
-            if (executor != null) {
-                executor.shutdown();
-                try {
-                    if (!executor.awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS)) {
-                        executor.shutdownNow();
-                    }
-                } catch (InterruptedException e) {
-                    executor.shutdownNow();
-                }
-            }
+            httpServer.stop();
             httpServer = null;
-            executor = null;
             AetherBridge.LOGGER.info("HTTP服务器已停止");
         }
     }
 
-    private void broadcastMessage(String message) {
-        // 安全检查：消息长度限制
-        if (message == null || message.length() > 256) {
-            AetherBridge.LOGGER.warn("消息长度超出限制或为空");
-            return;
+    /**
+     * 提交广播任务，由主线程调度器在tick结束时执行
+     * 供HTTP接收和WebSocket传输共用。消息组件在调用线程上构建，主线程只负责广播
+     * @param prefix 消息前缀，为null时不显示前缀
+     * @return 调度队列已满时返回false，其余情况（包括消息被安全检查拦下）返回true
+     */
+    static boolean broadcastMessage(MinecraftServer server, String prefix, String message) {
+        // 安全检查：消息长度限制，按"[前缀] 消息"的完整长度计算
+        if (message == null || message.length() + (prefix != null ? prefix.length() + 3 : 0) > 256) {
+            BridgeLog.warn("broadcast-invalid", "消息长度超出限制或为空");
+            return true;
         }
         
         // 安全检查：检查服务器是否在运行
         if (server == null || !server.isRunning()) {
-            AetherBridge.LOGGER.error("服务器未运行，无法广播消息");
-            return;
+            BridgeLog.error("broadcast-stopped", "服务器未运行，无法广播消息");
+            return true;
         }
         
-        AetherBridge.LOGGER.info("准备广播消息到服务器: " + message);
-        
-        // 确保在主线程中执行
-        server.execute(() -> {
-            try {
-                AetherBridge.LOGGER.debug("在主线程中广播消息");
-                server.getPlayerManager().broadcast(
-                    Text.literal(message),
-                    false
-                );
-                AetherBridge.LOGGER.debug("消息广播成功");
-            } catch (Exception e) {
-                AetherBridge.LOGGER.error("广播消息时发生错误", e);
-            }
+        Text text = PrefixTextCache.compose(prefix, message);
+        long submitted = System.nanoTime();
+        boolean accepted = MainThreadScheduler.submit(() -> {
+            server.getPlayerManager().broadcast(text, false);
+            Metrics.BROADCASTS.increment();
+            Metrics.BROADCAST_LATENCY.recordSince(submitted);
+            BridgeLog.trace("inbound.broadcast", "latencyNanos", System.nanoTime() - submitted);
         });
+        if (accepted) {
+            Metrics.INBOUND_MESSAGES.increment();
+        }
+        return accepted;
     }
 } 
\ No newline at end of file
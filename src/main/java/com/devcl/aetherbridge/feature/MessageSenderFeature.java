@@ -2,48 +2,79 @@ package com.devcl.aetherbridge.feature;
 
 import com.devcl.aetherbridge.AetherBridge;
 import com.devcl.aetherbridge.config.ModConfig;
-import com.devcl.aetherbridge.network.MessageSender;
+import com.devcl.aetherbridge.metrics.Metrics;
+import com.devcl.aetherbridge.routing.RulePipeline;
+import com.devcl.aetherbridge.scheduler.MainThreadScheduler;
 import net.minecraft.server.MinecraftServer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.message.v1.ServerMessageEvents;
 
 public class MessageSenderFeature implements Feature {
     private final MinecraftServer server;
-    private boolean enabled = false;
+    // 启用和禁用在AetherBridge-Config线程中进行，命令在主线程上读取
+    private volatile boolean enabled = false;
+    // Fabric不支持注销监听器，只注册一次，之后通过capture是否存在控制
+    private boolean registered = false;
     private final ServerMessageEvents.ChatMessage chatListener;
+    private final ServerTickEvents.EndTick tickListener;
+    // 启用和禁用可能在AetherBridge-Config线程中进行，监听器在主线程上每次只读取一次
+    private volatile ChatCapture capture;
+    // 只在主线程上读写
+    private RulePipeline rules = RulePipeline.empty();
 
     public MessageSenderFeature(MinecraftServer server) {
         this.server = server;
+        // 主线程上只检查规则需要的权限等级并发布到采集队列，其余处理都在采集线程中进行
         this.chatListener = (message, sender, params) -> {
-            if (enabled) {
-                AetherBridge.LOGGER.debug("捕获到聊天消息: " + 
-                                       "玩家=" + sender.getName().getString() + 
-                                       ", UUID=" + sender.getUuid() + 
-                                       ", 消息=" + message.getContent().getString());
-                
-                try {
-                    String prefix = ModConfig.getInstance().getDefaultChatPrefix();
-                    AetherBridge.LOGGER.debug("使用前缀: " + prefix);
-                    
-                    MessageSender.sendToRemote(
-                        sender.getUuid(),
-                        sender.getName().getString(),
-                        message.getContent().getString(),
-                        prefix
-                    );
-                } catch (Exception e) {
-                    AetherBridge.LOGGER.error("处理聊天消息时发生错误", e);
+            ChatCapture target = capture;
+            if (target != null) {
+                RulePipeline current = rules;
+                int levels = current.getPermissionLevels();
+                int granted = 0;
+                while (levels != 0) {
+                    int level = Integer.numberOfTrailingZeros(levels);
+                    levels &= levels - 1;
+                    if (sender.hasPermissionLevel(level)) {
+                        granted |= 1 << level;
+                    }
+                }
+                if (!target.publish(new ChatCapture.Captured(
+                        sender, sender.getUuid(), sender.getGameProfile().getName(), message, current, granted))) {
+                    Metrics.CHAT_CAPTURE_DROPPED.increment();
                 }
-            } else {
-                AetherBridge.LOGGER.debug("捕获到聊天消息，但功能已禁用，不进行转发");
+            }
+        };
+        this.tickListener = tickServer -> {
+            ChatCapture current = capture;
+            if (current != null) {
+                current.signal();
             }
         };
     }
 
+    /**
+     * 更新聊天监听器使用的规则，需要在主线程调用
+     */
+    void applyRules(RulePipeline rules) {
+        this.rules = rules;
+    }
+
     @Override
     public void enable() throws Exception {
         if (!enabled) {
             AetherBridge.LOGGER.info("正在启用消息发送功能...");
-            ServerMessageEvents.CHAT_MESSAGE.register(chatListener);
+            if (!registered) {
+                ServerMessageEvents.CHAT_MESSAGE.register(chatListener);
+                ServerTickEvents.END_SERVER_TICK.register(tickListener);
+                registered = true;
+            }
+            RulePipeline pipeline = ModConfig.getInstance().getRulePipeline();
+            if (server.isOnThread()) {
+                rules = pipeline;
+            } else {
+                MainThreadScheduler.submit(() -> rules = pipeline);
+            }
+            capture = new ChatCapture(ChatCapture::process);
             enabled = true;
             AetherBridge.LOGGER.info("消息发送功能已启用，将转发聊天消息到: " + ModConfig.getInstance().getApiUrl());
         } else {
@@ -56,8 +87,12 @@ public class MessageSenderFeature implements Feature {
         if (enabled) {
             AetherBridge.LOGGER.info("正在禁用消息发送功能...");
             // 注意：Fabric API可能不支持注销事件监听器
-            // 我们通过enabled标志来控制功能
+            // 监听器通过capture是否存在来判断功能是否启用
             enabled = false;
+            // 已采集的消息处理完后再停止采集线程
+            ChatCapture current = capture;
+            capture = null;
+            current.close();
             AetherBridge.LOGGER.info("消息发送功能已禁用");
         } else {
             AetherBridge.LOGGER.debug("消息发送功能已经处于禁用状态");
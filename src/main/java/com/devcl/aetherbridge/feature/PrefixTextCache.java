@@ -0,0 +1,54 @@
+package com.devcl.aetherbridge.feature;
+
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 入站消息前缀组件的LRU缓存
+ *
+ * 入站消息的前缀种类很少（例如Discord频道名、QQ群名），"[前缀] "组件对每个前缀只构建一次，
+ * 之后每条消息只需要新建消息正文组件并与缓存的前缀组件拼接。缓存的组件在多条消息之间共用，
+ * 构建后不能再修改。HTTP接收线程和WebSocket线程都会调用，访问需要加锁。
+ */
+final class PrefixTextCache {
+    // 超过这个数量时淘汰最久未使用的前缀
+    private static final int CAPACITY = 128;
+
+    private static final Map<String, Text> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Text> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private PrefixTextCache() {
+    }
+
+    /**
+     * 构建完整的消息组件，显示效果为"[前缀] 消息"，没有前缀时只有消息
+     */
+    static Text compose(String prefix, String message) {
+        if (prefix == null) {
+            return Text.literal(message);
+        }
+        MutableText text = Text.empty();
+        return text.append(prefix(prefix)).append(message);
+    }
+
+    /**
+     * 获取前缀组件，不存在时构建并放入缓存
+     */
+    static Text prefix(String prefix) {
+        synchronized (CACHE) {
+            Text text = CACHE.get(prefix);
+            if (text == null) {
+                text = Text.literal("[" + prefix + "] ");
+                CACHE.put(prefix, text);
+            }
+            return text;
+        }
+    }
+}
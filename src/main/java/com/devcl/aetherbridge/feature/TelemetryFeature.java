@@ -0,0 +1,74 @@
+package com.devcl.aetherbridge.feature;
+
+import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.metrics.Metrics;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.server.MinecraftServer;
+
+/**
+ * 运行数据推送功能
+ *
+ * 按telemetry.intervalSeconds把TPS、MSPT、tick耗时分布、在线人数、各维度区块数、堆内存和GC统计
+ * 作为type为telemetry的事件发送到远程服务器。主线程上每个tick只记录一次tick耗时，
+ * 几次原子递增，不分配对象；采样和序列化都在TelemetrySampler的线程中进行。
+ */
+public class TelemetryFeature implements Feature {
+    private final MinecraftServer server;
+    // 启用和禁用可能在AetherBridge-Config线程中进行，tick监听器在主线程上读取
+    private volatile boolean enabled = false;
+    // Fabric不支持注销监听器，只注册一次，之后通过enabled标志控制
+    private boolean registered = false;
+    private final ServerTickEvents.EndTick tickListener;
+    private TelemetrySampler sampler;
+
+    public TelemetryFeature(MinecraftServer server) {
+        this.server = server;
+        // END_SERVER_TICK在tick方法末尾触发，此时lastTickLengths中已经写入本tick的耗时
+        this.tickListener = tickServer -> {
+            if (enabled) {
+                Metrics.TICK_DURATION.record(tickServer.lastTickLengths[tickServer.getTicks() % 100]);
+            }
+        };
+    }
+
+    @Override
+    public void enable() throws Exception {
+        if (!enabled) {
+            AetherBridge.LOGGER.info("正在启用运行数据推送功能...");
+            if (!registered) {
+                ServerTickEvents.END_SERVER_TICK.register(tickListener);
+                registered = true;
+            }
+            ModConfig.TelemetryConfig config = ModConfig.getInstance().getTelemetry();
+            sampler = new TelemetrySampler(server, config);
+            enabled = true;
+            AetherBridge.LOGGER.info("运行数据推送功能已启用，每 " + config.getIntervalSeconds() + " 秒发送一次快照");
+        } else {
+            AetherBridge.LOGGER.debug("运行数据推送功能已经处于启用状态");
+        }
+    }
+
+    @Override
+    public void disable() throws Exception {
+        if (enabled) {
+            AetherBridge.LOGGER.info("正在禁用运行数据推送功能...");
+            enabled = false;
+            sampler.close();
+            sampler = null;
+            AetherBridge.LOGGER.info("运行数据推送功能已禁用");
+        } else {
+            AetherBridge.LOGGER.debug("运行数据推送功能已经处于禁用状态");
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public String getId() {
+        return "telemetry";
+    }
+}
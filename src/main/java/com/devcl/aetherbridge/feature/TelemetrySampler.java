@@ -0,0 +1,193 @@
+package com.devcl.aetherbridge.feature;
+
+import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.metrics.LatencyHistogram;
+import com.devcl.aetherbridge.metrics.Metrics;
+import com.devcl.aetherbridge.network.MessageCodec;
+import com.devcl.aetherbridge.network.MessageSender;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 运行数据快照的采样和发送
+ *
+ * 主线程在每个tick结束时只把tick耗时记入Metrics.TICK_DURATION，其余数据都由AetherBridge-Telemetry线程
+ * 按间隔读取：tick耗时取两次直方图快照之差，TPS由两次采样之间的tick数算出，在线人数和区块数只读取集合大小，
+ * 不会回到主线程，也不在主线程上分配对象。
+ *
+ * 快照按增量编码：区间统计（tick数、MSPT、tick耗时分布）每次都发送；GC次数和耗时发送本区间的增量，
+ * 为0时省略；在线人数、区块数和堆内存与上次发送的值相同时省略。每fullSnapshotEvery次发送一次
+ * 包含所有数值的完整快照（full为true），漏收快照的接收方在下一个完整快照后恢复。
+ */
+final class TelemetrySampler {
+    // tick耗时分布的上界（毫秒），最后一个桶为超过100ms的tick
+    private static final long[] TICK_BUCKET_MILLIS = {10, 25, 50, 100};
+
+    private final MinecraftServer server;
+    private final ModConfig.TelemetryConfig config;
+    private final ScheduledExecutorService executor;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    // 以下字段只在采样线程中访问
+    private final long[] tickBuckets = new long[TICK_BUCKET_MILLIS.length + 1];
+    private final Map<String, Long> sent = new HashMap<>();
+    private LatencyHistogram.Snapshot lastTicks;
+    private int lastTickCount;
+    private long lastNanos;
+    private long lastGcCount;
+    private long lastGcMillis;
+    private long seq;
+
+    TelemetrySampler(MinecraftServer server, ModConfig.TelemetryConfig config) {
+        this.server = server;
+        this.config = config;
+        this.lastTicks = Metrics.TICK_DURATION.snapshot();
+        this.lastTickCount = server.getTicks();
+        this.lastNanos = System.nanoTime();
+        this.lastGcCount = gcCount();
+        this.lastGcMillis = gcMillis();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "AetherBridge-Telemetry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::sampleSafely, config.getIntervalSeconds(), config.getIntervalSeconds(),
+            TimeUnit.SECONDS);
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private void sampleSafely() {
+        try {
+            MessageSender.sendEvent(sample());
+        } catch (RuntimeException e) {
+            // 定时任务抛出异常后不会再执行，这里只记录
+            AetherBridge.LOGGER.warn("采样运行数据失败: " + e.getMessage());
+        }
+    }
+
+    byte[] sample() {
+        boolean full = seq % config.getFullSnapshotEvery() == 0;
+        long now = System.nanoTime();
+        int tickCount = server.getTicks();
+        LatencyHistogram.Snapshot ticks = Metrics.TICK_DURATION.snapshot();
+        LatencyHistogram.Snapshot interval = ticks.since(lastTicks);
+        double seconds = (now - lastNanos) / 1e9;
+        int elapsedTicks = tickCount - lastTickCount;
+        lastTicks = ticks;
+        lastTickCount = tickCount;
+        lastNanos = now;
+
+        MessageCodec.ObjectWriter writer = new MessageCodec.ObjectWriter()
+            .field("type", "telemetry")
+            .field("time", System.currentTimeMillis())
+            .field("seq", seq++);
+        if (full) {
+            writer.field("full", true);
+        }
+        writer.field("ticks", elapsedTicks)
+            .field("tps", round(seconds > 0 ? elapsedTicks / seconds : 0))
+            .field("msptAvg", millis(interval.meanNanos()))
+            .field("msptP50", millis(interval.percentileNanos(0.5)))
+            .field("msptP99", millis(interval.percentileNanos(0.99)))
+            .field("msptMax", millis(interval.maxNanos))
+            .field("tickBuckets", tickBuckets, bucketTicks(interval));
+
+        gauge(writer, "players", server.getCurrentPlayerCount(), full);
+        if (config.isChunks()) {
+            Map<String, Long> chunks = new LinkedHashMap<>();
+            for (ServerWorld world : server.getWorlds()) {
+                String dimension = world.getRegistryKey().getValue().toString();
+                long loaded = world.getChunkManager().getLoadedChunkCount();
+                Long previous = sent.put("chunks." + dimension, loaded);
+                if (full || previous == null || previous != loaded) {
+                    chunks.put(dimension, loaded);
+                }
+            }
+            if (!chunks.isEmpty()) {
+                writer.field("chunks", chunks);
+            }
+        }
+        if (config.isJvm()) {
+            MemoryUsage heap = memory.getHeapMemoryUsage();
+            gauge(writer, "heapUsedMb", heap.getUsed() >> 20, full);
+            gauge(writer, "heapCommittedMb", heap.getCommitted() >> 20, full);
+            gauge(writer, "heapMaxMb", heap.getMax() >> 20, full);
+            long gcCount = gcCount();
+            long gcMillis = gcMillis();
+            if (full || gcCount != lastGcCount) {
+                writer.field("gcCount", gcCount - lastGcCount).field("gcTimeMs", gcMillis - lastGcMillis);
+            }
+            lastGcCount = gcCount;
+            lastGcMillis = gcMillis;
+        }
+        return writer.toBytes();
+    }
+
+    // 与上次发送的值相同时省略，完整快照总是写出
+    private void gauge(MessageCodec.ObjectWriter writer, String name, long value, boolean full) {
+        Long previous = sent.put(name, value);
+        if (full || previous == null || previous != value) {
+            writer.field(name, value);
+        }
+    }
+
+    // 填充tickBuckets，返回去掉末尾0后的长度
+    private int bucketTicks(LatencyHistogram.Snapshot interval) {
+        long below = 0;
+        int length = 0;
+        for (int i = 0; i < TICK_BUCKET_MILLIS.length; i++) {
+            long atMost = interval.countAtMost(TimeUnit.MILLISECONDS.toNanos(TICK_BUCKET_MILLIS[i]));
+            tickBuckets[i] = atMost - below;
+            below = atMost;
+        }
+        tickBuckets[TICK_BUCKET_MILLIS.length] = interval.count() - below;
+        for (int i = 0; i < tickBuckets.length; i++) {
+            if (tickBuckets[i] != 0) {
+                length = i + 1;
+            }
+        }
+        return length;
+    }
+
+    private long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            total += Math.max(0, collector.getCollectionCount());
+        }
+        return total;
+    }
+
+    private long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static double millis(long nanos) {
+        return round(nanos / 1e6);
+    }
+
+    // 保留两位小数，缩短请求体
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
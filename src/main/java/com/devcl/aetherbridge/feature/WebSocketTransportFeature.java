@@ -0,0 +1,119 @@
+package com.devcl.aetherbridge.feature;
+
+import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.logging.BridgeLog;
+import com.devcl.aetherbridge.metrics.Metrics;
+import com.devcl.aetherbridge.network.IdempotencyIndex;
+import com.devcl.aetherbridge.network.MessageSender;
+import com.devcl.aetherbridge.network.WebSocketTransport;
+import com.devcl.aetherbridge.ratelimit.RateLimits;
+import com.google.gson.JsonObject;
+import net.minecraft.server.MinecraftServer;
+
+/**
+ * WebSocket传输功能
+ * transport配置为websocket时启用，与桥接服务保持一条长连接，
+ * 出站聊天消息和入站广播消息都通过这条连接传输，远程服务不再需要访问listenPort
+ */
+public class WebSocketTransportFeature implements Feature {
+    private static final int WEBSOCKET_CLIENT_KEY = "websocket".hashCode();
+
+    private final MinecraftServer server;
+    // 启用和禁用在AetherBridge-Config线程中进行，命令在主线程上读取
+    private volatile boolean enabled = false;
+    private WebSocketTransport transport;
+
+    public WebSocketTransportFeature(MinecraftServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public void enable() throws Exception {
+        if (!enabled) {
+            AetherBridge.LOGGER.info("正在启用WebSocket传输功能...");
+            ModConfig config = ModConfig.getInstance();
+            transport = new WebSocketTransport(
+                config.getWebsocket(),
+                config.getApiKey(),
+                this::handleInbound,
+                MessageSender::ackAll
+            );
+            transport.start();
+            MessageSender.setWebSocketTransport(transport);
+            enabled = true;
+            AetherBridge.LOGGER.info("WebSocket传输功能已启用，连接地址: " + config.getWebsocket().getUrl());
+        } else {
+            AetherBridge.LOGGER.debug("WebSocket传输功能已经处于启用状态");
+        }
+    }
+
+    @Override
+    public void disable() throws Exception {
+        if (enabled) {
+            AetherBridge.LOGGER.info("正在禁用WebSocket传输功能...");
+            // 先切回HTTP发送，再关闭连接
+            MessageSender.setWebSocketTransport(null);
+            transport.close();
+            transport = null;
+            enabled = false;
+            AetherBridge.LOGGER.info("WebSocket传输功能已禁用");
+        } else {
+            AetherBridge.LOGGER.debug("WebSocket传输功能已经处于禁用状态");
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public String getId() {
+        return "websocketTransport";
+    }
+
+    private void handleInbound(JsonObject json) {
+        ModConfig config = ModConfig.getInstance();
+        if (!config.isFeatureEnabled("messageReceiver")) {
+            BridgeLog.trace("websocket.ignored", "reason", "messageReceiver disabled");
+            return;
+        }
+        if (!json.has("message")) {
+            BridgeLog.warn("websocket-malformed", "WebSocket消息缺少message字段");
+            return;
+        }
+        String message = json.get("message").getAsString();
+        String prefix = json.has("prefix") ? json.get("prefix").getAsString() : null;
+        String id = json.has("id") && !json.get("id").isJsonNull() ? json.get("id").getAsString() : null;
+        BridgeLog.trace("websocket.message", "message", message, "prefix", prefix);
+        
+        // 整条WebSocket连接视为一个入站客户端，超出限制的消息无法返回429，直接丢弃
+        if (RateLimits.inbound().tryAcquire(WEBSOCKET_CLIENT_KEY, 1) > 0) {
+            Metrics.INBOUND_RATE_LIMITED.increment();
+            BridgeLog.warn("websocket-rate-limited", "WebSocket消息过于频繁，已丢弃");
+            return;
+        }
+        
+        // 与HTTP接口共用幂等索引但键互不相通，重连后重发的消息不会再次广播
+        IdempotencyIndex index = id != null ? MessageReceiverFeature.idempotency(config) : null;
+        long idHash = index != null ? IdempotencyIndex.hash(IdempotencyIndex.KIND_WEBSOCKET, WEBSOCKET_CLIENT_KEY, id) : 0;
+        if (index != null && index.claim(idHash) != IdempotencyIndex.NEW) {
+            BridgeLog.trace("websocket.replay", "id", id);
+            Metrics.INBOUND_REPLAYED.increment();
+            return;
+        }
+        
+        boolean staged = false;
+        try {
+            staged = MessageReceiverFeature.broadcastMessage(server, prefix, message);
+        } finally {
+            if (index != null) {
+                MessageReceiverFeature.settle(index, idHash, staged, MessageReceiverFeature.packResult(1, 0));
+            }
+        }
+        if (!staged) {
+            BridgeLog.warn("broadcast-queue-full", "主线程任务队列已满，丢弃WebSocket消息");
+        }
+    }
+} 
@@ -0,0 +1,167 @@
+package com.devcl.aetherbridge.logging;
+
+import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.config.ModConfig;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息收发路径上的日志
+ *
+ * 逐条消息的详细日志只在跟踪模式下输出（可以用 /aetherbridge trace 随时开关），
+ * 格式为 "event=名称 键=值 ..."，参数以占位符传给slf4j，关闭时不会拼接任何字符串。
+ * 跟踪日志可以按 logging.traceSampleEvery 抽样。
+ *
+ * 告警和错误按键限流，同一个键每秒最多输出 logging.warnPerSecond 条，
+ * 被省略的条数会在下一次输出时一并报告，避免对端故障时刷屏。
+ */
+public final class BridgeLog {
+    private static final ConcurrentHashMap<String, Limiter> LIMITERS = new ConcurrentHashMap<>();
+    private static final AtomicLong TRACE_SEQUENCE = new AtomicLong();
+    private static volatile boolean trace = false;
+    private static volatile int traceSampleEvery = 1;
+    private static volatile int warnPerSecond = 5;
+
+    private BridgeLog() {
+    }
+
+    /**
+     * 应用配置文件中的日志设置，在加载配置后调用
+     */
+    public static void applyConfig(ModConfig.LoggingConfig config) {
+        trace = config.isTrace();
+        traceSampleEvery = config.getTraceSampleEvery();
+        warnPerSecond = config.getWarnPerSecond();
+    }
+
+    /**
+     * 运行时开关跟踪模式，不写入配置文件
+     */
+    public static void setTrace(boolean enabled) {
+        trace = enabled;
+        AetherBridge.LOGGER.info("消息跟踪日志已" + (enabled ? "开启" : "关闭"));
+    }
+
+    /**
+     * 是否需要输出逐条消息的日志
+     * 参数本身计算代价较高时（例如需要解码消息内容），调用方应先检查这个方法
+     */
+    public static boolean isTraceEnabled() {
+        return trace || AetherBridge.LOGGER.isDebugEnabled();
+    }
+
+    // ========== 逐条消息的跟踪日志 ==========
+
+    public static void trace(String event) {
+        if (shouldTrace()) {
+            log("event={}", event);
+        }
+    }
+
+    public static void trace(String event, String k1, Object v1) {
+        if (shouldTrace()) {
+            log("event={} {}={}", event, k1, value(v1));
+        }
+    }
+
+    public static void trace(String event, String k1, Object v1, String k2, Object v2) {
+        if (shouldTrace()) {
+            log("event={} {}={} {}={}", event, k1, value(v1), k2, value(v2));
+        }
+    }
+
+    public static void trace(String event, String k1, Object v1, String k2, Object v2, String k3, Object v3) {
+        if (shouldTrace()) {
+            log("event={} {}={} {}={} {}={}", event, k1, value(v1), k2, value(v2), k3, value(v3));
+        }
+    }
+
+    private static boolean shouldTrace() {
+        if (!isTraceEnabled()) {
+            return false;
+        }
+        int every = traceSampleEvery;
+        return every <= 1 || TRACE_SEQUENCE.getAndIncrement() % every == 0;
+    }
+
+    // 跟踪模式下用INFO输出，不需要修改日志级别；否则跟随DEBUG级别
+    private static void log(String template, Object... args) {
+        if (trace) {
+            AetherBridge.LOGGER.info(template, args);
+        } else {
+            AetherBridge.LOGGER.debug(template, args);
+        }
+    }
+
+    // 字节形式的消息体在真正输出时才解码
+    private static Object value(Object value) {
+        if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        if (value instanceof ByteBuffer) {
+            return StandardCharsets.UTF_8.decode(((ByteBuffer) value).duplicate()).toString();
+        }
+        return value;
+    }
+
+    // ========== 限流的告警和错误 ==========
+
+    /**
+     * 按键限流输出告警
+     * @param key 限流键，同一类问题使用同一个键
+     */
+    public static void warn(String key, String template, Object... args) {
+        int suppressed = acquire(key);
+        if (suppressed < 0) {
+            return;
+        }
+        AetherBridge.LOGGER.warn(template, args);
+        if (suppressed > 0) {
+            AetherBridge.LOGGER.warn("上一秒内省略了 {} 条同类日志: {}", suppressed, key);
+        }
+    }
+
+    /**
+     * 按键限流输出错误，最后一个参数为异常时会输出堆栈
+     */
+    public static void error(String key, String template, Object... args) {
+        int suppressed = acquire(key);
+        if (suppressed < 0) {
+            return;
+        }
+        AetherBridge.LOGGER.error(template, args);
+        if (suppressed > 0) {
+            AetherBridge.LOGGER.error("上一秒内省略了 {} 条同类日志: {}", suppressed, key);
+        }
+    }
+
+    /**
+     * @return 允许输出时返回之前被省略的条数，需要省略时返回-1
+     */
+    private static int acquire(String key) {
+        return LIMITERS.computeIfAbsent(key, k -> new Limiter()).acquire(warnPerSecond);
+    }
+
+    private static final class Limiter {
+        private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicInteger suppressed = new AtomicInteger();
+
+        int acquire(int limit) {
+            long now = System.nanoTime();
+            long start = windowStart.get();
+            if (now - start >= 1_000_000_000L && windowStart.compareAndSet(start, now)) {
+                count.set(0);
+            }
+            if (count.incrementAndGet() > limit) {
+                suppressed.incrementAndGet();
+                return -1;
+            }
+            return suppressed.getAndSet(0);
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.devcl.aetherbridge.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 只增不减的计数器，多线程并发递增时不会互相竞争
+ */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,152 @@
+package com.devcl.aetherbridge.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的延迟直方图，按纳秒记录
+ *
+ * 分桶方式与HdrHistogram相同：按数值的最高位分组，每组再线性分成32个子桶，
+ * 任意数值的相对误差不超过1/32（约3%），整个long范围只需约1900个桶。
+ * 记录只涉及几次原子递增，可以在发送线程、选择器线程和主线程上直接调用。
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram() {
+    }
+
+    /**
+     * 记录一次耗时，负数按0处理
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * 记录从startNanos（System.nanoTime()）到现在的耗时
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(counts, total, sum.sum(), max.get());
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int group = magnitude - SUB_BUCKET_BITS + 1;
+        int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+        return group * SUB_BUCKET_COUNT + sub;
+    }
+
+    // 桶内的最大值，报告分位数时使用
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int group = index / SUB_BUCKET_COUNT;
+        long sub = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        long lowest = sub << (group - 1);
+        return lowest + (1L << (group - 1)) - 1;
+    }
+
+    /**
+     * 直方图在某一时刻的快照
+     * 由于记录和读取并发进行，各字段之间可能有细微出入
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long total;
+        public final long sumNanos;
+        public final long maxNanos;
+
+        Snapshot(long[] counts, long total, long sumNanos, long maxNanos) {
+            this.counts = counts;
+            this.total = total;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long count() {
+            return total;
+        }
+
+        public long meanNanos() {
+            return total > 0 ? sumNanos / total : 0;
+        }
+
+        /**
+         * 从earlier到这个快照之间记录的数值，用于按时间段统计
+         * 最大值取这段时间内最高的非空桶，误差与分位数相同
+         */
+        public Snapshot since(Snapshot earlier) {
+            long[] delta = new long[counts.length];
+            long deltaTotal = 0;
+            int highest = -1;
+            for (int i = 0; i < counts.length; i++) {
+                delta[i] = counts[i] - earlier.counts[i];
+                if (delta[i] > 0) {
+                    deltaTotal += delta[i];
+                    highest = i;
+                }
+            }
+            long deltaMax = highest >= 0 ? Math.min(highestValueOf(highest), maxNanos) : 0;
+            return new Snapshot(delta, deltaTotal, sumNanos - earlier.sumNanos, deltaMax);
+        }
+
+        /**
+         * 不超过nanos的数值个数，桶跨越nanos时整个桶计入
+         */
+        public long countAtMost(long nanos) {
+            int last = indexOf(Math.max(0, nanos));
+            long seen = 0;
+            for (int i = 0; i <= last && i < counts.length; i++) {
+                seen += counts[i];
+            }
+            return seen;
+        }
+
+        /**
+         * @param quantile 0到1之间，例如0.99
+         */
+        public long percentileNanos(double quantile) {
+            if (total == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(highestValueOf(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+    }
+}
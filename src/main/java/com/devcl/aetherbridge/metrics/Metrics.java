@@ -0,0 +1,159 @@
+package com.devcl.aetherbridge.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * 指标注册表
+ *
+ * 各模块在静态字段中注册自己的计数器、直方图和测量值，记录时不加锁。
+ * {@link #writePrometheus} 按Prometheus文本格式（0.0.4）导出所有指标，
+ * 直方图以summary形式导出分位数，单位统一换算为秒。
+ */
+public final class Metrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    // 按名称排序，导出结果稳定
+    private static final Map<String, Metric> REGISTRY = new ConcurrentSkipListMap<>();
+
+    // ========== 出站 ==========
+    public static final Counter OUTBOUND_SENT = counter(
+        "aetherbridge_outbound_sent_total", "成功送达的出站请求数（单条或批量）");
+    public static final Counter OUTBOUND_FAILED = counter(
+        "aetherbridge_outbound_failed_total", "重试耗尽或不可重试而放弃的出站请求数");
+    public static final Counter OUTBOUND_RETRIES = counter(
+        "aetherbridge_outbound_retries_total", "出站请求的重试次数");
+    public static final Counter OUTBOX_DEAD_LETTERED = counter(
+        "aetherbridge_outbox_dead_lettered_total", "被对端拒绝、转入死信文件的发件箱记录数");
+    public static final Counter OUTBOUND_WEBSOCKET = counter(
+        "aetherbridge_outbound_websocket_total", "通过WebSocket发送的消息数");
+    public static final Counter OUTBOUND_BODY_BYTES = counter(
+        "aetherbridge_outbound_body_bytes_total", "主目标HTTP请求体编码后、压缩前的字节数（不含重试）");
+    public static final Counter OUTBOUND_WIRE_BYTES = counter(
+        "aetherbridge_outbound_wire_bytes_total", "主目标HTTP请求体实际发送的字节数（压缩后，不含重试）");
+    public static final Counter OUTBOUND_RATE_LIMITED = counter(
+        "aetherbridge_outbound_rate_limited_total", "因限流未转发的聊天消息数");
+    public static final Counter CHAT_CAPTURE_DROPPED = counter(
+        "aetherbridge_chat_capture_dropped_total", "采集队列已满、没有处理的聊天消息数");
+    public static final Counter OUTBOUND_RULE_DROPPED = counter(
+        "aetherbridge_outbound_rule_dropped_total", "被规则丢弃、没有转发的聊天消息数");
+    public static final Counter OUTBOUND_DEDUPLICATED = counter(
+        "aetherbridge_outbound_deduplicated_total", "在去重窗口内被省略、只计入汇总的重复消息数");
+    public static final Counter GAME_EVENTS = counter(
+        "aetherbridge_game_events_total", "交给发送队列的游戏事件数，一条汇总事件计为一条");
+    public static final Counter GAME_EVENTS_SKIPPED = counter(
+        "aetherbridge_game_events_skipped_total", "因采样或事件流已关闭没有发送的游戏事件数");
+    public static final Counter GAME_EVENTS_AGGREGATED = counter(
+        "aetherbridge_game_events_aggregated_total", "计入汇总窗口、随汇总事件一起发送的游戏事件数");
+    public static final LatencyHistogram SEND_LATENCY = histogram(
+        "aetherbridge_send_latency_seconds", "出站请求首次发送的耗时");
+    public static final LatencyHistogram RETRY_LATENCY = histogram(
+        "aetherbridge_retry_latency_seconds", "出站请求重试发送的耗时");
+
+    // ========== 入站 ==========
+    public static final Counter INBOUND_REQUESTS = counter(
+        "aetherbridge_inbound_requests_total", "收到的消息接收接口请求数");
+    public static final Counter INBOUND_REJECTED = counter(
+        "aetherbridge_inbound_rejected_total", "被拒绝的入站请求或消息数（认证失败、格式错误、限流、队列已满）");
+    public static final Counter INBOUND_RATE_LIMITED = counter(
+        "aetherbridge_inbound_rate_limited_total", "因限流被拒绝的入站请求或消息数");
+    public static final Counter INBOUND_MESSAGES = counter(
+        "aetherbridge_inbound_messages_total", "已提交广播的入站消息数");
+    public static final Counter INBOUND_REPLAYED = counter(
+        "aetherbridge_inbound_replayed_total", "幂等键重复、返回第一次处理结果而没有再次广播的入站请求或消息数");
+    public static final Counter INBOUND_IDEMPOTENCY_EVICTED = counter(
+        "aetherbridge_inbound_idempotency_evicted_total", "幂等索引已满、在窗口结束前被淘汰的幂等键数");
+    public static final Counter BROADCASTS = counter(
+        "aetherbridge_broadcasts_total", "已在游戏内广播的消息数");
+    public static final LatencyHistogram BROADCAST_LATENCY = histogram(
+        "aetherbridge_broadcast_latency_seconds", "入站消息从提交到在主线程广播的耗时");
+
+    // ========== 服务器 ==========
+    public static final LatencyHistogram TICK_DURATION = histogram(
+        "aetherbridge_tick_duration_seconds", "服务器每个tick的耗时，仅在telemetry启用时记录");
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name, String help) {
+        Counter counter = new Counter();
+        register(new Metric(name, help, "counter", counter::get, null));
+        return counter;
+    }
+
+    /**
+     * 注册一个由其他组件维护的计数值，例如发送队列自身的统计
+     */
+    public static void counter(String name, String help, LongSupplier supplier) {
+        register(new Metric(name, help, "counter", supplier, null));
+    }
+
+    public static void gauge(String name, String help, LongSupplier supplier) {
+        register(new Metric(name, help, "gauge", supplier, null));
+    }
+
+    public static LatencyHistogram histogram(String name, String help) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        register(new Metric(name, help, "summary", null, histogram));
+        return histogram;
+    }
+
+    private static void register(Metric metric) {
+        // 同名指标以最后一次注册为准，热重载后重新注册的组件会覆盖旧的
+        REGISTRY.put(metric.name, metric);
+    }
+
+    /**
+     * 以Prometheus文本格式输出所有指标
+     */
+    public static void writePrometheus(StringBuilder out) {
+        for (Metric metric : REGISTRY.values()) {
+            if (metric.histogram == null) {
+                long value;
+                try {
+                    value = metric.supplier.getAsLong();
+                } catch (RuntimeException e) {
+                    // 组件尚未初始化或已关闭，跳过该指标
+                    continue;
+                }
+                writeHeader(out, metric);
+                out.append(metric.name).append(' ').append(value).append('\n');
+                continue;
+            }
+            writeHeader(out, metric);
+            LatencyHistogram.Snapshot snapshot = metric.histogram.snapshot();
+            for (double quantile : QUANTILES) {
+                out.append(metric.name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(snapshot.percentileNanos(quantile))).append('\n');
+            }
+            out.append(metric.name).append("_sum ").append(seconds(snapshot.sumNanos)).append('\n');
+            out.append(metric.name).append("_count ").append(snapshot.count()).append('\n');
+        }
+    }
+
+    private static void writeHeader(StringBuilder out, Metric metric) {
+        out.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+        out.append("# TYPE ").append(metric.name).append(' ').append(metric.type).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static final class Metric {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final LongSupplier supplier;
+        private final LatencyHistogram histogram;
+
+        Metric(String name, String help, String type, LongSupplier supplier, LatencyHistogram histogram) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.supplier = supplier;
+            this.histogram = histogram;
+        }
+    }
+}
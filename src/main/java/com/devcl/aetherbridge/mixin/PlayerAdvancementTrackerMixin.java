@@ -0,0 +1,28 @@
+package com.devcl.aetherbridge.mixin;
+
+import com.devcl.aetherbridge.feature.GameEventFeature;
+import net.minecraft.advancement.Advancement;
+import net.minecraft.advancement.PlayerAdvancementTracker;
+import net.minecraft.server.network.ServerPlayerEntity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+/**
+ * 玩家完成进度时触发游戏事件
+ * Fabric API没有进度事件，这里在发放进度奖励处注入，每个进度只会执行一次
+ */
+@Mixin(PlayerAdvancementTracker.class)
+public abstract class PlayerAdvancementTrackerMixin {
+    @Shadow
+    private ServerPlayerEntity owner;
+
+    @Inject(method = "grantCriterion", at = @At(value = "INVOKE",
+        target = "Lnet/minecraft/advancement/AdvancementRewards;apply(Lnet/minecraft/server/network/ServerPlayerEntity;)V"))
+    private void aetherbridge$onAdvancementDone(Advancement advancement, String criterionName,
+                                                CallbackInfoReturnable<Boolean> cir) {
+        GameEventFeature.onAdvancement(owner, advancement);
+    }
+}
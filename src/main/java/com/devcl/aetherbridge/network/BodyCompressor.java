@@ -0,0 +1,153 @@
+package com.devcl.aetherbridge.network;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 出站请求体的压缩器
+ *
+ * Deflater持有本地zlib状态，创建和销毁的开销远大于压缩一个几KB的请求体，因此放在池中复用：
+ * 发送线程借出一个Deflater，压缩完成后reset放回。池中最多保留POOL_SIZE个空闲实例，
+ * 多出的实例用完后立即end释放本地内存。压缩输出写入线程内复用的缓冲区，只在最后复制一次。
+ *
+ * 小于阈值的请求体不压缩；压缩后没有变小的请求体也按原样发送。
+ */
+public final class BodyCompressor {
+    // 池中保留的空闲Deflater数，超过发送线程数没有意义
+    private static final int POOL_SIZE = 16;
+    // gzip头：魔数、deflate算法、无标志、无时间戳、无额外标志、未知操作系统
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final ThreadLocal<byte[]> OUTPUT_BUFFER = ThreadLocal.withInitial(() -> new byte[4096]);
+
+    /**
+     * 压缩算法，对应请求头Content-Encoding的取值
+     */
+    public enum Algorithm {
+        NONE("none"),
+        // RFC 1952，deflate数据加gzip头和CRC32尾
+        GZIP("gzip"),
+        // RFC 1950，即HTTP中的deflate：deflate数据加zlib头和Adler-32尾
+        DEFLATE("deflate");
+
+        private final String configName;
+
+        Algorithm(String configName) {
+            this.configName = configName;
+        }
+
+        public String getConfigName() {
+            return configName;
+        }
+
+        public static Algorithm fromConfig(String name) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.configName.equalsIgnoreCase(name)) {
+                    return algorithm;
+                }
+            }
+            throw new IllegalStateException("未知的压缩算法: " + name);
+        }
+    }
+
+    private final Algorithm algorithm;
+    private final int level;
+    private final int threshold;
+    private final ArrayBlockingQueue<Deflater> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private volatile boolean closed = false;
+
+    /**
+     * @param algorithm 不能为NONE
+     * @param level 压缩级别，1最快，9压缩率最高
+     * @param threshold 小于该字节数的请求体不压缩
+     */
+    public BodyCompressor(Algorithm algorithm, int level, int threshold) {
+        if (algorithm == Algorithm.NONE) {
+            throw new IllegalArgumentException("algorithm不能为NONE");
+        }
+        this.algorithm = algorithm;
+        this.level = level;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Content-Encoding请求头的取值
+     */
+    public String getContentEncoding() {
+        return algorithm.getConfigName();
+    }
+
+    /**
+     * 压缩请求体
+     * @return 小于阈值或压缩后没有变小时返回null，调用方按原样发送
+     */
+    public byte[] compress(byte[] body) {
+        if (body.length < threshold) {
+            return null;
+        }
+        Deflater deflater = borrow();
+        try {
+            byte[] out = OUTPUT_BUFFER.get();
+            int length = 0;
+            if (algorithm == Algorithm.GZIP) {
+                System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+                length = GZIP_HEADER.length;
+            }
+            deflater.setInput(body);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            if (algorithm == Algorithm.GZIP) {
+                if (length + 8 > out.length) {
+                    out = Arrays.copyOf(out, length + 8);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                length = writeIntLE(out, length, (int) crc.getValue());
+                length = writeIntLE(out, length, body.length);
+            }
+            // 缓冲区扩容后保存下来，供下次复用
+            OUTPUT_BUFFER.set(out);
+            return length < body.length ? Arrays.copyOf(out, length) : null;
+        } finally {
+            giveBack(deflater);
+        }
+    }
+
+    /**
+     * 释放池中的Deflater，之后借出的实例用完即释放
+     */
+    public void close() {
+        closed = true;
+        Deflater deflater;
+        while ((deflater = pool.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    private Deflater borrow() {
+        Deflater deflater = pool.poll();
+        // gzip自己写头和尾，deflate数据不带zlib包装
+        return deflater != null ? deflater : new Deflater(level, algorithm == Algorithm.GZIP);
+    }
+
+    private void giveBack(Deflater deflater) {
+        deflater.reset();
+        if (closed || !pool.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private static int writeIntLE(byte[] out, int offset, int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >>> 8);
+        out[offset + 2] = (byte) (value >>> 16);
+        out[offset + 3] = (byte) (value >>> 24);
+        return offset + 4;
+    }
+}
@@ -0,0 +1,116 @@
+package com.devcl.aetherbridge.network;
+
+/**
+ * 出站请求的熔断器
+ *
+ * - CLOSED: 正常发送，连续失败达到阈值后打开
+ * - OPEN: 不再发送，等待打开时长结束；服务端返回Retry-After时按其给出的时长打开
+ * - HALF_OPEN: 打开时长结束后只放行一个探测请求，成功则关闭，失败则再次打开且打开时长加倍
+ *
+ * 所有方法都是同步的，状态变化只在请求结束时发生，不会成为热点。
+ */
+public final class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final long maxOpenNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long currentOpenNanos;
+    private long openUntilNanos;
+    private long openedCount;
+
+    public CircuitBreaker(int failureThreshold, long openNanos, long maxOpenNanos) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+        this.maxOpenNanos = maxOpenNanos;
+        this.currentOpenNanos = openNanos;
+    }
+
+    /**
+     * 是否允许发出一个请求
+     * 打开时长结束后第一次调用会转为HALF_OPEN并放行一个探测请求，探测结束前其余调用都返回false
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openUntilNanos >= 0) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 记录一次成功（包括服务端可达但不需要重试的失败），关闭熔断器
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        currentOpenNanos = openNanos;
+    }
+
+    /**
+     * 记录一次可重试的失败
+     * @param retryAfterNanos 服务端通过Retry-After要求等待的时长，没有时为0
+     */
+    public synchronized void onFailure(long retryAfterNanos) {
+        consecutiveFailures++;
+        switch (state) {
+            case HALF_OPEN:
+                // 探测失败，打开时长加倍
+                currentOpenNanos = Math.min(currentOpenNanos * 2, maxOpenNanos);
+                open(retryAfterNanos > 0 ? retryAfterNanos : currentOpenNanos);
+                break;
+            case CLOSED:
+                if (retryAfterNanos > 0) {
+                    open(retryAfterNanos);
+                } else if (consecutiveFailures >= failureThreshold) {
+                    open(currentOpenNanos);
+                }
+                break;
+            default:
+                // 打开之前发出的请求陆续失败，只在Retry-After更长时延长打开时间
+                long until = System.nanoTime() + retryAfterNanos;
+                if (until - openUntilNanos > 0) {
+                    openUntilNanos = until;
+                }
+                break;
+        }
+    }
+
+    private void open(long durationNanos) {
+        if (state != State.OPEN) {
+            openedCount++;
+        }
+        state = State.OPEN;
+        openUntilNanos = System.nanoTime() + durationNanos;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 距离允许探测还剩的时间，未打开时为0
+     */
+    public synchronized long remainingOpenNanos() {
+        return state == State.OPEN ? Math.max(0, openUntilNanos - System.nanoTime()) : 0;
+    }
+
+    /**
+     * 熔断器打开的累计次数
+     */
+    public synchronized long getOpenedCount() {
+        return openedCount;
+    }
+} 
\ No newline at end of file
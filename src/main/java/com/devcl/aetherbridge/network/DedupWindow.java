@@ -0,0 +1,196 @@
+package com.devcl.aetherbridge.network;
+
+import com.devcl.aetherbridge.logging.BridgeLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * 出站消息去重窗口
+ *
+ * 同一玩家的同一条消息在窗口内第一次出现时照常发送，之后的重复消息只计数不发送；
+ * 窗口结束时如果有重复，再发送一条带重复次数的汇总消息。刷屏时上游只收到两条消息，
+ * 但仍能看到刷屏的规模。
+ *
+ * 记录保存在固定大小的开放寻址表中，每个槽位只有64位哈希、窗口截止时间和重复次数三个基本类型，
+ * 外加窗口第一条消息的引用（用于生成汇总）。重复消息不会创建任何对象。
+ * 探测范围内没有空槽时新消息不做去重，直接发送，内存占用不会超过表的大小。
+ */
+class DedupWindow<T> {
+    // 每条消息最多探测的槽位数
+    private static final int PROBES = 4;
+
+    private final long[] hashes;
+    private final long[] deadlines;
+    private final int[] repeats;
+    private final Object[] firsts;
+    private final int mask;
+    private final long windowNanos;
+    private final ObjIntConsumer<T> summaryHandler;
+    private final ScheduledExecutorService scheduler;
+    private boolean closed = false;
+
+    /**
+     * @param slots 表的大小，向上取整为2的幂
+     * @param summaryHandler 接收窗口第一条消息和窗口内被省略的重复次数
+     */
+    DedupWindow(int slots, long windowMs, ObjIntConsumer<T> summaryHandler) {
+        int size = Integer.highestOneBit(Math.max(slots, PROBES) - 1) << 1;
+        this.hashes = new long[size];
+        this.deadlines = new long[size];
+        this.repeats = new int[size];
+        this.firsts = new Object[size];
+        this.mask = size - 1;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.summaryHandler = summaryHandler;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "AetherBridge-Dedup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 计算去重用的哈希，玩家ID为null时（插件或系统消息）按玩家名区分
+     */
+    static long hash(UUID playerId, String playerName, String message) {
+        long h = 0xcbf29ce484222325L;
+        if (playerId != null) {
+            h = mix(h ^ playerId.getMostSignificantBits());
+            h = mix(h ^ playerId.getLeastSignificantBits());
+        } else if (playerName != null) {
+            h = fnv(h, playerName);
+        }
+        // 分隔玩家和消息，避免拼接后相同的两组输入得到同一个哈希
+        h = mix(h ^ 0x9e3779b97f4a7c15L);
+        if (message != null) {
+            h = fnv(h, message);
+        }
+        h = mix(h);
+        // 0表示空槽
+        return h != 0 ? h : 1;
+    }
+
+    /**
+     * 登记一条消息
+     * @return 需要发送时返回true；是窗口内的重复消息、已被计数时返回false
+     */
+    boolean offer(long hash, T message) {
+        long now = System.nanoTime();
+        int free = -1;
+        synchronized (this) {
+            if (closed) {
+                return true;
+            }
+            int index = (int) (hash ^ (hash >>> 32)) & mask;
+            for (int i = 0; i < PROBES; i++) {
+                int slot = (index + i) & mask;
+                long current = hashes[slot];
+                if (current == hash && deadlines[slot] - now > 0) {
+                    // 第一次重复时安排窗口结束后的汇总
+                    if (repeats[slot]++ == 0) {
+                        schedule(slot, hash, deadlines[slot], now);
+                    }
+                    return false;
+                }
+                // 窗口已结束且没有待汇总的重复，槽位可以复用
+                if (free < 0 && (current == 0 || (deadlines[slot] - now <= 0 && repeats[slot] == 0))) {
+                    free = slot;
+                }
+            }
+            if (free < 0) {
+                return true;
+            }
+            hashes[free] = hash;
+            deadlines[free] = now + windowNanos;
+            repeats[free] = 0;
+            firsts[free] = message;
+        }
+        return true;
+    }
+
+    /**
+     * 关闭去重窗口，立即发出所有待汇总的重复次数
+     */
+    void close() {
+        List<Object> pendingFirsts = new ArrayList<>();
+        List<Integer> pendingRepeats = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int slot = 0; slot < hashes.length; slot++) {
+                if (repeats[slot] > 0) {
+                    pendingFirsts.add(firsts[slot]);
+                    pendingRepeats.add(repeats[slot]);
+                }
+                hashes[slot] = 0;
+                repeats[slot] = 0;
+                firsts[slot] = null;
+            }
+        }
+        scheduler.shutdownNow();
+        for (int i = 0; i < pendingFirsts.size(); i++) {
+            emit(pendingFirsts.get(i), pendingRepeats.get(i));
+        }
+    }
+
+    // 调用方需持有锁
+    private void schedule(int slot, long hash, long deadline, long now) {
+        try {
+            scheduler.schedule(() -> flush(slot, hash, deadline), deadline - now, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // 正在关闭，close会发出这个槽位的汇总
+        }
+    }
+
+    private void flush(int slot, long hash, long deadline) {
+        Object first;
+        int count;
+        synchronized (this) {
+            if (closed || hashes[slot] != hash || deadlines[slot] != deadline) {
+                return;
+            }
+            first = firsts[slot];
+            count = repeats[slot];
+            hashes[slot] = 0;
+            repeats[slot] = 0;
+            firsts[slot] = null;
+        }
+        emit(first, count);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void emit(Object first, int count) {
+        try {
+            summaryHandler.accept((T) first, count);
+        } catch (Exception e) {
+            BridgeLog.error("dedup-summary", "发送去重汇总消息失败: {}", e.toString());
+        }
+    }
+
+    private static long fnv(long h, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // MurmurHash3的64位终结函数
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
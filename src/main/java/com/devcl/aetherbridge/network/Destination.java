@@ -0,0 +1,205 @@
+package com.devcl.aetherbridge.network;
+
+import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.logging.BridgeLog;
+import com.devcl.aetherbridge.scheduler.VirtualThreads;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * 一个额外的出站目标
+ *
+ * 每个目标有自己的有界队列、发送线程、HTTP客户端和重试熔断，和主目标以及其他目标互不影响：
+ * 目标变慢时只有自己的队列积压并按溢出策略丢弃，入队本身从不等待。
+ * 所有目标收到的是同一个已序列化的请求体，不会为每个目标重新编码。
+ */
+public final class Destination {
+    private final ModConfig.DestinationConfig config;
+    private final URI uri;
+    private final OutboundQueue<byte[]> queue;
+    private final HttpTransport transport;
+    private final RetryScheduler retry;
+    private final List<Thread> workers = new ArrayList<>();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean running = true;
+
+    Destination(ModConfig.DestinationConfig config, ModConfig.HttpConfig http, boolean virtualThreads) {
+        this.config = config;
+        this.uri = URI.create(config.getUrl());
+        this.queue = new OutboundQueue<>(config.getQueueCapacity(), config.getPolicy(), 0, null);
+        // 并发请求数与发送线程数相同，每个发送线程等待自己的请求结束后再取下一条
+        this.transport = new HttpTransport(
+            http.getClientVersion(),
+            1,
+            config.getWorkers(),
+            Duration.ofMillis(http.getConnectTimeoutMs()),
+            Duration.ofMillis(http.getRequestTimeoutMs()),
+            virtualThreads
+        );
+        this.retry = new RetryScheduler(transport, config.getRetry(), config.getName());
+        String threadName = "AetherBridge-Dest-" + config.getName() + "-";
+        ThreadFactory factory = virtualThreads ? VirtualThreads.factory(threadName) : null;
+        for (int i = 0; i < config.getWorkers(); i++) {
+            Thread worker;
+            if (factory != null) {
+                worker = factory.newThread(this::runWorker);
+            } else {
+                worker = new Thread(this::runWorker, threadName + i);
+                worker.setDaemon(true);
+            }
+            worker.start();
+            workers.add(worker);
+        }
+        AetherBridge.LOGGER.info("出站目标已创建: " + config.getName() + " -> " + config.getUrl() +
+                               ", 队列容量=" + config.getQueueCapacity() +
+                               ", 发送线程数=" + config.getWorkers());
+    }
+
+    public String getName() {
+        return config.getName();
+    }
+
+    ModConfig.DestinationConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * 消息是否满足该目标的过滤条件
+     */
+    boolean accepts(UUID playerId, String prefix, String message, int repeat) {
+        ModConfig.DestinationFilter filter = config.getFilter();
+        if (filter.isPlayersOnly() && playerId == null) {
+            return false;
+        }
+        if (repeat > 0 && !filter.isIncludeRepeats()) {
+            return false;
+        }
+        List<String> prefixes = filter.getPrefixes();
+        if (!prefixes.isEmpty() && !prefixes.contains(prefix != null ? prefix : "")) {
+            return false;
+        }
+        Pattern pattern = filter.getPattern();
+        return pattern == null || (message != null && pattern.matcher(message).find());
+    }
+
+    /**
+     * 放入该目标的队列，队列满时按溢出策略丢弃，不会等待
+     */
+    void offer(byte[] json) {
+        if (!queue.offer(json)) {
+            BridgeLog.warn("destination-queue-full:" + config.getName(),
+                "出站目标 {} 的队列已满，消息被丢弃", config.getName());
+        }
+    }
+
+    public OutboundQueue.Stats getQueueStats() {
+        return queue.getStats();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return retry.getBreaker().getState();
+    }
+
+    public int getHeldCount() {
+        return retry.getHeldCount();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    int getDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 通知发送线程退出，不等待
+     */
+    void stop() {
+        running = false;
+    }
+
+    /**
+     * 等待发送线程退出并释放资源，最多等到deadlineNanos
+     * 队列中尚未发送的消息会被丢弃，额外目标不使用发件箱
+     */
+    void close(long deadlineNanos) throws InterruptedException {
+        stop();
+        for (Thread worker : workers) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (remaining > 0) {
+                worker.join(remaining);
+            }
+            if (worker.isAlive()) {
+                worker.interrupt();
+            }
+        }
+        int pending = queue.size();
+        if (pending > 0) {
+            AetherBridge.LOGGER.warn("出站目标 " + config.getName() + " 的队列中仍有 " + pending + " 条消息未发送");
+        }
+        retry.close();
+        transport.close();
+    }
+
+    private void runWorker() {
+        while (running) {
+            try {
+                // 与主目标的发送线程相同：先发出熔断期间保留的请求，保留队列已满时暂停取新消息
+                RetryScheduler.Delivery held = retry.pollHeld();
+                if (held != null) {
+                    retry.deliver(held, running);
+                    continue;
+                }
+                if (retry.isHoldFull()) {
+                    retry.awaitHoldCapacity(1000);
+                    continue;
+                }
+                byte[] json = queue.poll(1, TimeUnit.SECONDS);
+                if (json != null) {
+                    RetryScheduler.Delivery delivery = new RetryScheduler.Delivery(buildRequest(json));
+                    delivery.result().thenAccept(ok -> (ok ? delivered : failed).increment());
+                    retry.deliver(delivery, running);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                BridgeLog.error("destination-send:" + config.getName(),
+                    "向出站目标 {} 发送消息时发生错误: {}", config.getName(), e.toString());
+            }
+        }
+    }
+
+    private HttpRequest buildRequest(byte[] json) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+            .uri(uri)
+            .header("Content-Type", "application/json; charset=UTF-8")
+            .header("Accept", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(json))
+            .timeout(transport.requestTimeout());
+        if (!config.getApiKey().isEmpty()) {
+            builder.header("Authorization", "Bearer " + config.getApiKey());
+        }
+        for (Map.Entry<String, String> header : config.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.build();
+    }
+}
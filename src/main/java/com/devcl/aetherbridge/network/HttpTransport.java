@@ -0,0 +1,106 @@
+package com.devcl.aetherbridge.network;
+
+import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.scheduler.VirtualThreads;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 出站HTTP客户端及其资源
+ *
+ * 每个实例持有一个HttpClient、一个专用的线程池和一个限制并发请求数的信号量。
+ * 使用虚拟线程时线程池换成每个任务一个虚拟线程的执行器，executorThreads不再生效。
+ * 热重载时由MessageSender关闭旧实例、按新配置创建新实例。
+ */
+public final class HttpTransport {
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final Duration requestTimeout;
+
+    public HttpTransport(HttpClient.Version version, int executorThreads, int maxInFlight,
+                         Duration connectTimeout, Duration requestTimeout) {
+        this(version, executorThreads, maxInFlight, connectTimeout, requestTimeout, false);
+    }
+
+    public HttpTransport(HttpClient.Version version, int executorThreads, int maxInFlight,
+                         Duration connectTimeout, Duration requestTimeout, boolean virtualThreads) {
+        if (virtualThreads) {
+            this.executor = VirtualThreads.newPerTaskExecutor("AetherBridge-Http-");
+        } else {
+            AtomicInteger threadIndex = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(executorThreads, r -> {
+                Thread thread = new Thread(r, "AetherBridge-Http-" + threadIndex.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        // HTTP/2下同一连接上的请求会多路复用；http://地址会先尝试h2c升级，对方不支持时退回HTTP/1.1
+        this.client = HttpClient.newBuilder()
+            .connectTimeout(connectTimeout)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .version(version)
+            .executor(executor)
+            .build();
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.requestTimeout = requestTimeout;
+    }
+
+    public static HttpTransport fromConfig(ModConfig.HttpConfig config, boolean virtualThreads) {
+        return new HttpTransport(
+            config.getClientVersion(),
+            config.getExecutorThreads(),
+            config.getMaxInFlight(),
+            Duration.ofMillis(config.getConnectTimeoutMs()),
+            Duration.ofMillis(config.getRequestTimeoutMs()),
+            virtualThreads
+        );
+    }
+
+    public HttpClient client() {
+        return client;
+    }
+
+    public Duration requestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * 占用一个并发请求名额，名额用完时等待
+     */
+    public void acquire() throws InterruptedException {
+        inFlight.acquire();
+    }
+
+    public void release() {
+        inFlight.release();
+    }
+
+    /**
+     * 当前正在进行中的请求数（包括等待重试的请求）
+     */
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * 关闭专用线程池
+     * 已提交的任务会执行完毕，之后线程退出；HttpClient本身不再被引用后由GC回收其连接和选择器线程
+     */
+    public void close() {
+        executor.shutdown();
+        AetherBridge.LOGGER.debug("HTTP客户端已关闭，进行中的请求数: " + getInFlight());
+    }
+}
@@ -0,0 +1,168 @@
+package com.devcl.aetherbridge.network;
+
+import com.devcl.aetherbridge.metrics.Metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 入站请求的幂等键索引
+ *
+ * 调用方在请求头Idempotency-Key或消息的id字段中携带幂等键，同一个键在窗口内再次出现时
+ * 视为重放，直接返回第一次处理的结果，不再广播。
+ *
+ * 索引是固定大小的开放寻址表，每个槽位只有64位键哈希、时间桶编号和处理结果三个基本类型，
+ * 不保存键本身，也不会为每个请求创建对象，内存占用与请求速率无关。时间按窗口的1/8分桶，
+ * 记录至少保留一个完整窗口，过期的槽位直接复用；探测范围内的槽位都未过期时淘汰其中最旧的一个，
+ * 因此请求速率超过表的容量时，较早的键可能在窗口结束前被淘汰。
+ *
+ * 哈希中混入了客户端和键的种类，不同客户端使用相同的键、同一个字符串分别作为请求的幂等键和消息id
+ * 互不影响，HTTP接口和WebSocket传输也各自独立。
+ */
+public final class IdempotencyIndex {
+    // 每个窗口划分的时间桶数
+    private static final int BUCKETS_PER_WINDOW = 8;
+    // 每个键最多探测的槽位数
+    private static final int PROBES = 8;
+
+    /**
+     * claim返回该值表示键第一次出现，已经占位，处理完成后需要调用complete或release
+     */
+    public static final int NEW = -1;
+    /**
+     * 已占位但尚未完成的键被重放时返回该值，按处理成功对待
+     */
+    public static final int PENDING = 0;
+
+    /**
+     * 单条HTTP请求的Idempotency-Key请求头
+     */
+    public static final int KIND_REQUEST = 1;
+    /**
+     * 批量HTTP请求的Idempotency-Key请求头，记录的结果是整批的计数
+     */
+    public static final int KIND_BATCH = 2;
+    /**
+     * HTTP请求中消息的id字段
+     */
+    public static final int KIND_MESSAGE = 3;
+    /**
+     * WebSocket传输中消息的id字段
+     */
+    public static final int KIND_WEBSOCKET = 4;
+
+    private final long[] hashes;
+    private final int[] buckets;
+    private final int[] results;
+    private final int mask;
+    private final long bucketNanos;
+    private final long origin = System.nanoTime();
+
+    /**
+     * @param slots 表的大小，向上取整为2的幂
+     */
+    public IdempotencyIndex(int slots, long windowMillis) {
+        int size = Integer.highestOneBit(Math.max(slots, PROBES) - 1) << 1;
+        this.hashes = new long[size];
+        this.buckets = new int[size];
+        this.results = new int[size];
+        this.mask = size - 1;
+        this.bucketNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(windowMillis) / BUCKETS_PER_WINDOW);
+    }
+
+    /**
+     * 计算幂等键的64位哈希
+     * @param kind 键的种类，KIND_开头的常量之一
+     * @param clientKey 客户端的哈希，与限流使用的键相同
+     */
+    public static long hash(int kind, int clientKey, String key) {
+        long h = 0xcbf29ce484222325L;
+        h ^= kind;
+        h *= 0x100000001b3L;
+        h ^= clientKey & 0xffffffffL;
+        h *= 0x100000001b3L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // MurmurHash3的64位终结函数
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        // 0表示空槽
+        return h != 0 ? h : 1;
+    }
+
+    /**
+     * 登记一个键
+     * @return 第一次出现时返回NEW；窗口内的重放返回第一次处理的结果，处理尚未完成时返回PENDING
+     */
+    public synchronized int claim(long hash) {
+        int now = currentBucket();
+        int index = (int) (hash ^ (hash >>> 32)) & mask;
+        int free = -1;
+        int oldest = -1;
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (index + i) & mask;
+            long current = hashes[slot];
+            boolean live = current != 0 && now - buckets[slot] <= BUCKETS_PER_WINDOW;
+            if (live && current == hash) {
+                return results[slot];
+            }
+            if (!live) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (oldest < 0 || buckets[slot] - buckets[oldest] < 0) {
+                oldest = slot;
+            }
+        }
+        if (free < 0) {
+            // 探测范围内的记录都未过期，淘汰最旧的一个，保证内存固定
+            free = oldest;
+            Metrics.INBOUND_IDEMPOTENCY_EVICTED.increment();
+        }
+        hashes[free] = hash;
+        buckets[free] = now;
+        results[free] = PENDING;
+        return NEW;
+    }
+
+    /**
+     * 记录处理结果，之后的重放都会得到这个结果
+     * @param result 由调用方定义，必须大于0
+     */
+    public synchronized void complete(long hash, int result) {
+        int slot = find(hash);
+        if (slot >= 0) {
+            results[slot] = result;
+        }
+    }
+
+    /**
+     * 处理失败、允许调用方重试时撤销占位
+     */
+    public synchronized void release(long hash) {
+        int slot = find(hash);
+        if (slot >= 0) {
+            hashes[slot] = 0;
+        }
+    }
+
+    // 调用方需持有锁
+    private int find(long hash) {
+        int index = (int) (hash ^ (hash >>> 32)) & mask;
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (index + i) & mask;
+            if (hashes[slot] == hash) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int currentBucket() {
+        return (int) ((System.nanoTime() - origin) / bucketNanos);
+    }
+}
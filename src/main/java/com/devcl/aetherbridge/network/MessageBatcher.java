@@ -0,0 +1,156 @@
+package com.devcl.aetherbridge.network;
+
+import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.logging.BridgeLog;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 消息攒批器
+ *
+ * 收集已序列化的单条消息，在以下任一条件满足时合并为一个请求体交给发送方：
+ * - 条数达到 batch.maxMessages
+ * - 字节数达到 batch.maxBytes
+ * - 第一条消息入批后等待了 batch.lingerMs 毫秒
+ *
+ * JSON格式的消息合并为数组；二进制帧本身带有长度，直接拼接。
+ */
+class MessageBatcher {
+    private final BiConsumer<byte[], List<Outbox.Entry>> flushHandler;
+    private final ScheduledExecutorService scheduler;
+    private final List<byte[]> pending = new ArrayList<>();
+    // 与pending一一对应的发件箱记录，未启用发件箱时为null
+    private final List<Outbox.Entry> pendingEntries = new ArrayList<>();
+    // 消息是否为二进制帧
+    private final boolean binary;
+    // 空批次的字节数，JSON为数组的两个括号
+    private final int emptyBytes;
+    // 当前批次的字节数，包含数组括号和分隔逗号
+    private int pendingBytes;
+    private ScheduledFuture<?> lingerTask;
+    private boolean closed = false;
+
+    /**
+     * @param flushHandler 接收合并后的请求体和其中每条消息对应的发件箱记录
+     */
+    MessageBatcher(BiConsumer<byte[], List<Outbox.Entry>> flushHandler) {
+        this(flushHandler, false);
+    }
+
+    /**
+     * @param binary 为true时add传入的是MessageCodec.encodeChatFrame编码的二进制帧
+     */
+    MessageBatcher(BiConsumer<byte[], List<Outbox.Entry>> flushHandler, boolean binary) {
+        this.flushHandler = flushHandler;
+        this.binary = binary;
+        this.emptyBytes = binary ? 0 : 2;
+        this.pendingBytes = emptyBytes;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "AetherBridge-Batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 添加一条已序列化的消息
+     * @param entry 消息对应的发件箱记录，可以为null
+     * @return 攒批器已关闭时返回false，调用方需要自行发送
+     */
+    boolean add(byte[] message, Outbox.Entry entry) {
+        ModConfig.BatchConfig config = ModConfig.getInstance().getBatch();
+        byte[] body = null;
+        List<Outbox.Entry> entries = null;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            // 加入这条消息会超出字节上限时，先把已有的消息发出去
+            int separator = pending.isEmpty() || binary ? 0 : 1;
+            if (!pending.isEmpty() && pendingBytes + separator + message.length > config.getMaxBytes()) {
+                entries = new ArrayList<>(pendingEntries);
+                body = drain();
+                separator = 0;
+            }
+            pending.add(message);
+            pendingEntries.add(entry);
+            pendingBytes += separator + message.length;
+
+            if (body == null && (pending.size() >= config.getMaxMessages() || pendingBytes >= config.getMaxBytes())) {
+                entries = new ArrayList<>(pendingEntries);
+                body = drain();
+            } else if (lingerTask == null) {
+                lingerTask = scheduler.schedule(this::flush, config.getLingerMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (body != null) {
+            flushHandler.accept(body, entries);
+        }
+        return true;
+    }
+
+    boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * 立即发送当前批次中的所有消息
+     */
+    void flush() {
+        byte[] body;
+        List<Outbox.Entry> entries;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                lingerTask = null;
+                return;
+            }
+            entries = new ArrayList<>(pendingEntries);
+            body = drain();
+        }
+        flushHandler.accept(body, entries);
+    }
+
+    /**
+     * 关闭攒批器，剩余消息会被立即发送
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        scheduler.shutdownNow();
+    }
+
+    // 调用方需持有锁
+    private byte[] drain() {
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(pendingBytes);
+        if (!binary) {
+            out.write('[');
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            if (i > 0 && !binary) {
+                out.write(',');
+            }
+            out.writeBytes(pending.get(i));
+        }
+        if (!binary) {
+            out.write(']');
+        }
+        pending.clear();
+        pendingEntries.clear();
+        pendingBytes = emptyBytes;
+        BridgeLog.trace("outbound.merged", "bytes", out.size());
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,997 @@
+package com.devcl.aetherbridge.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 聊天消息专用的JSON编解码器
+ *
+ * 出站消息直接按UTF-8写入线程内复用的字节缓冲区，不经过反射和中间String；
+ * 入站请求体直接在字节上扫描，只取出message、prefix和id字段，不构建JsonObject树。
+ * 遇到无法识别的输入时抛出 {@link MalformedException}，调用方可以回退到Gson处理。
+ *
+ * 出站消息还可以编码为紧凑的二进制帧，见 {@link #encodeChatFrame}。
+ */
+public final class MessageCodec {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_MESSAGE = {'m', 'e', 's', 's', 'a', 'g', 'e'};
+    private static final byte[] KEY_PREFIX = {'p', 'r', 'e', 'f', 'i', 'x'};
+    private static final byte[] KEY_ID = {'i', 'd'};
+    // 二进制帧第一个字节中各字段的标志位
+    private static final int FLAG_PLAYER_ID = 1;
+    private static final int FLAG_PLAYER_NAME = 1 << 1;
+    private static final int FLAG_MESSAGE = 1 << 2;
+    private static final int FLAG_PREFIX = 1 << 3;
+    private static final int FLAG_REPEAT = 1 << 4;
+    // 事件帧：后面是varint字节数加事件的JSON对象
+    private static final int FLAG_EVENT = 1 << 7;
+    // 编码和解码共用的线程内缓冲区，按需扩容
+    private static final ThreadLocal<byte[]> ENCODE_BUFFER = ThreadLocal.withInitial(() -> new byte[512]);
+    private static final ThreadLocal<char[]> DECODE_BUFFER = ThreadLocal.withInitial(() -> new char[256]);
+
+    /**
+     * 二进制格式请求体的Content-Type，请求体由一个或多个连续的消息帧组成
+     */
+    public static final String BINARY_CONTENT_TYPE = "application/x-aetherbridge-chat; version=1";
+
+    private MessageCodec() {
+    }
+
+    // ========== 出站编码 ==========
+
+    /**
+     * 编码一条出站聊天消息，字段与之前Gson序列化的结果一致，值为null的字段省略
+     */
+    public static byte[] encodeChatMessage(UUID playerId, String playerName, String message, String prefix) {
+        return encodeChatMessage(playerId, playerName, message, prefix, 0);
+    }
+
+    /**
+     * 编码一条出站聊天消息，repeat大于0时附加repeat字段，表示去重窗口内省略的重复次数
+     */
+    public static byte[] encodeChatMessage(UUID playerId, String playerName, String message, String prefix, int repeat) {
+        Writer writer = new Writer(ENCODE_BUFFER.get());
+        writer.chatMessage(playerId, playerName, message, prefix, repeat);
+        // 缓冲区扩容后保存下来，供下次复用
+        ENCODE_BUFFER.set(writer.buffer);
+        return Arrays.copyOf(writer.buffer, writer.length);
+    }
+
+    // ========== 出站二进制编码 ==========
+
+    /**
+     * 编码一条出站聊天消息的二进制帧，字段与encodeChatMessage相同
+     *
+     * 帧的第一个字节标明后面有哪些字段（第0到4位依次为playerId、playerName、message、prefix、repeat），
+     * 字段按这个顺序排列：playerId为16字节原始值（高64位在前，大端），字符串为varint字节数加UTF-8内容，
+     * repeat为varint。varint为无符号LEB128，每字节低7位为数据，最高位表示后面还有字节。
+     * 帧之间没有分隔符，多条消息的帧直接拼接。
+     *
+     * 游戏事件等带有type字段的对象没有固定结构，编码为事件帧：第一个字节只有第7位为1，
+     * 后面是varint字节数加原样的JSON对象。
+     */
+    public static byte[] encodeChatFrame(UUID playerId, String playerName, String message, String prefix, int repeat) {
+        Writer writer = new Writer(ENCODE_BUFFER.get());
+        writer.frame(playerId, playerName, message, prefix, repeat);
+        ENCODE_BUFFER.set(writer.buffer);
+        return Arrays.copyOf(writer.buffer, writer.length);
+    }
+
+    /**
+     * 把encodeChatMessage或ObjectWriter生成的JSON转为二进制帧，用于发件箱中以JSON保存的消息和游戏事件
+     * 带有type字段的对象编码为事件帧
+     *
+     * @throws MalformedException JSON不是一个对象
+     */
+    public static byte[] jsonToFrame(byte[] json) {
+        Reader reader = new Reader(ByteBuffer.wrap(json));
+        reader.skipWhitespace();
+        Writer writer = new Writer(new byte[json.length + 8]);
+        boolean event = reader.readChatMessage(writer);
+        reader.skipWhitespace();
+        reader.expectEnd();
+        if (event) {
+            writer.length = 0;
+            writer.eventFrame(json);
+        }
+        return Arrays.copyOf(writer.buffer, writer.length);
+    }
+
+    /**
+     * 逐个字段编码一个JSON对象，用于聊天消息以外的出站数据，例如游戏事件
+     * 值为null的字段省略
+     */
+    public static final class ObjectWriter {
+        private final Writer writer = new Writer(new byte[256]);
+        private boolean first = true;
+
+        public ObjectWriter() {
+            writer.raw('{');
+        }
+
+        public ObjectWriter field(String name, String value) {
+            if (value != null) {
+                writer.field(name, value, first);
+                first = false;
+            }
+            return this;
+        }
+
+        public ObjectWriter field(String name, UUID value) {
+            return value != null ? field(name, value.toString()) : this;
+        }
+
+        public ObjectWriter field(String name, long value) {
+            writer.numberField(name, Long.toString(value), first);
+            first = false;
+            return this;
+        }
+
+        public ObjectWriter field(String name, boolean value) {
+            writer.numberField(name, value ? "true" : "false", first);
+            first = false;
+            return this;
+        }
+
+        /**
+         * 有限的double值，例如采样率
+         */
+        public ObjectWriter field(String name, double value) {
+            writer.numberField(name, Double.toString(value), first);
+            first = false;
+            return this;
+        }
+
+        public ObjectWriter field(String name, List<String> values) {
+            if (values == null) {
+                return this;
+            }
+            if (!first) {
+                writer.raw(',');
+            }
+            writer.string(name);
+            writer.raw(':');
+            writer.raw('[');
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    writer.raw(',');
+                }
+                writer.string(values.get(i));
+            }
+            writer.raw(']');
+            first = false;
+            return this;
+        }
+
+        public ObjectWriter field(String name, long[] values, int length) {
+            if (!first) {
+                writer.raw(',');
+            }
+            writer.string(name);
+            writer.raw(':');
+            writer.raw('[');
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    writer.raw(',');
+                }
+                writer.digits(Long.toString(values[i]));
+            }
+            writer.raw(']');
+            first = false;
+            return this;
+        }
+
+        /**
+         * 以数字为值的嵌套对象，按Map的迭代顺序写出
+         */
+        public ObjectWriter field(String name, Map<String, Long> values) {
+            if (values == null) {
+                return this;
+            }
+            if (!first) {
+                writer.raw(',');
+            }
+            writer.string(name);
+            writer.raw(':');
+            writer.raw('{');
+            boolean firstEntry = true;
+            for (Map.Entry<String, Long> entry : values.entrySet()) {
+                writer.numberField(entry.getKey(), Long.toString(entry.getValue()), firstEntry);
+                firstEntry = false;
+            }
+            writer.raw('}');
+            first = false;
+            return this;
+        }
+
+        public byte[] toBytes() {
+            writer.raw('}');
+            return Arrays.copyOf(writer.buffer, writer.length);
+        }
+    }
+
+    /**
+     * 把连续的二进制帧还原为JSON，对端不接受二进制格式时使用
+     *
+     * @param array 为true时输出消息数组（批量接口），否则输出第一条消息的对象
+     * @throws MalformedException 帧不完整
+     */
+    public static byte[] framesToJson(byte[] frames, boolean array) {
+        FrameReader reader = new FrameReader(frames);
+        Writer writer = new Writer(new byte[frames.length * 2 + 16]);
+        if (array) {
+            writer.raw('[');
+        }
+        boolean first = true;
+        while (reader.hasRemaining()) {
+            if (!first) {
+                writer.raw(',');
+            }
+            reader.readFrame(writer);
+            first = false;
+            if (!array) {
+                break;
+            }
+        }
+        if (array) {
+            writer.raw(']');
+        }
+        return Arrays.copyOf(writer.buffer, writer.length);
+    }
+
+    private static final class Writer {
+        private byte[] buffer;
+        private int length;
+
+        Writer(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        void chatMessage(UUID playerId, String playerName, String message, String prefix, int repeat) {
+            raw('{');
+            boolean first = true;
+            if (playerId != null) {
+                field("playerId", playerId.toString(), first);
+                first = false;
+            }
+            if (playerName != null) {
+                field("playerName", playerName, first);
+                first = false;
+            }
+            if (message != null) {
+                field("message", message, first);
+                first = false;
+            }
+            if (prefix != null && !prefix.isEmpty()) {
+                field("prefix", prefix, first);
+                first = false;
+            }
+            if (repeat > 0) {
+                field("repeat", repeat, first);
+            }
+            raw('}');
+        }
+
+        void frame(UUID playerId, String playerName, String message, String prefix, int repeat) {
+            boolean hasPrefix = prefix != null && !prefix.isEmpty();
+            int flags = (playerId != null ? FLAG_PLAYER_ID : 0)
+                | (playerName != null ? FLAG_PLAYER_NAME : 0)
+                | (message != null ? FLAG_MESSAGE : 0)
+                | (hasPrefix ? FLAG_PREFIX : 0)
+                | (repeat > 0 ? FLAG_REPEAT : 0);
+            ensure(17);
+            buffer[length++] = (byte) flags;
+            if (playerId != null) {
+                writeLong(playerId.getMostSignificantBits());
+                writeLong(playerId.getLeastSignificantBits());
+            }
+            if (playerName != null) {
+                utf8(playerName);
+            }
+            if (message != null) {
+                utf8(message);
+            }
+            if (hasPrefix) {
+                utf8(prefix);
+            }
+            if (repeat > 0) {
+                varint(repeat);
+            }
+        }
+
+        void eventFrame(byte[] json) {
+            ensure(1);
+            buffer[length++] = (byte) FLAG_EVENT;
+            varint(json.length);
+            rawBytes(json, 0, json.length);
+        }
+
+        void rawBytes(byte[] bytes, int offset, int count) {
+            ensure(count);
+            System.arraycopy(bytes, offset, buffer, length, count);
+            length += count;
+        }
+
+        private void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void varint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        // varint字节数加UTF-8内容，不成对的代理字符与JSON编码一样写为'?'
+        void utf8(String value) {
+            int bytes = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes++;
+                } else if (c < 0x800) {
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    bytes++;
+                } else {
+                    bytes += 3;
+                }
+            }
+            varint(bytes);
+            ensure(bytes);
+            byte[] out = buffer;
+            int pos = length;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    out[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    out[pos++] = (byte) (0xC0 | (c >> 6));
+                    out[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    out[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                    out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    out[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    out[pos++] = '?';
+                } else {
+                    out[pos++] = (byte) (0xE0 | (c >> 12));
+                    out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    out[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            length = pos;
+        }
+
+        void field(String name, String value, boolean first) {
+            if (!first) {
+                raw(',');
+            }
+            string(name);
+            raw(':');
+            string(value);
+        }
+
+        void field(String name, int value, boolean first) {
+            numberField(name, Integer.toString(value), first);
+        }
+
+        // 写入不加引号的数字或布尔值文本
+        void numberField(String name, String digits, boolean first) {
+            if (!first) {
+                raw(',');
+            }
+            string(name);
+            raw(':');
+            digits(digits);
+        }
+
+        void digits(String digits) {
+            ensure(digits.length());
+            for (int i = 0; i < digits.length(); i++) {
+                buffer[length++] = (byte) digits.charAt(i);
+            }
+        }
+
+        void raw(char c) {
+            ensure(1);
+            buffer[length++] = (byte) c;
+        }
+
+        void string(String value) {
+            // 每个char最多编码为6字节（\\uXXXX），一次性预留足够空间
+            ensure(value.length() * 6 + 2);
+            byte[] out = buffer;
+            int pos = length;
+            out[pos++] = '"';
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    if (c == '"' || c == '\\') {
+                        out[pos++] = '\\';
+                        out[pos++] = (byte) c;
+                    } else if (c < 0x20) {
+                        pos = escapeControl(out, pos, c);
+                    } else {
+                        out[pos++] = (byte) c;
+                    }
+                } else if (c < 0x800) {
+                    out[pos++] = (byte) (0xC0 | (c >> 6));
+                    out[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (c == '\u2028' || c == '\u2029') {
+                    // 与Gson保持一致，避免在JavaScript中被当作换行
+                    pos = escapeUnicode(out, pos, c);
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    out[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                    out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    out[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // 不成对的代理字符，与String.getBytes的处理方式相同
+                    out[pos++] = '?';
+                } else {
+                    out[pos++] = (byte) (0xE0 | (c >> 12));
+                    out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    out[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            out[pos++] = '"';
+            length = pos;
+        }
+
+        private static int escapeControl(byte[] out, int pos, char c) {
+            out[pos++] = '\\';
+            switch (c) {
+                case '\n': out[pos++] = 'n'; return pos;
+                case '\r': out[pos++] = 'r'; return pos;
+                case '\t': out[pos++] = 't'; return pos;
+                case '\b': out[pos++] = 'b'; return pos;
+                case '\f': out[pos++] = 'f'; return pos;
+                default: return escapeUnicode(out, pos - 1, c);
+            }
+        }
+
+        private static int escapeUnicode(byte[] out, int pos, char c) {
+            out[pos++] = '\\';
+            out[pos++] = 'u';
+            out[pos++] = HEX[(c >> 12) & 0xF];
+            out[pos++] = HEX[(c >> 8) & 0xF];
+            out[pos++] = HEX[(c >> 4) & 0xF];
+            out[pos++] = HEX[c & 0xF];
+            return pos;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+    }
+
+    // ========== 入站解码 ==========
+
+    /**
+     * 解码单条入站消息 {"message":"...","prefix":"...","id":"..."}
+     * 其他字段会被跳过；字段缺失或值为null时对应属性为null
+     *
+     * @throws MalformedException 请求体不是单个JSON对象或格式有误
+     */
+    public static Inbound decodeInbound(ByteBuffer body) {
+        Reader reader = new Reader(body);
+        reader.skipWhitespace();
+        Inbound inbound = reader.readInbound();
+        reader.skipWhitespace();
+        reader.expectEnd();
+        return inbound;
+    }
+
+    /**
+     * 解码批量入站消息 [{"message":"..."}, ...]
+     * 不是对象的数组元素解码为null，由调用方计入拒绝数
+     *
+     * @throws MalformedException 请求体不是JSON数组或格式有误
+     */
+    public static List<Inbound> decodeInboundBatch(ByteBuffer body) {
+        Reader reader = new Reader(body);
+        reader.skipWhitespace();
+        reader.expect('[');
+        List<Inbound> messages = new ArrayList<>();
+        reader.skipWhitespace();
+        if (reader.peek() == ']') {
+            reader.position++;
+        } else {
+            while (true) {
+                reader.skipWhitespace();
+                if (reader.peek() == '{') {
+                    messages.add(reader.readInbound());
+                } else {
+                    reader.skipValue();
+                    messages.add(null);
+                }
+                reader.skipWhitespace();
+                byte next = reader.next();
+                if (next == ']') {
+                    break;
+                }
+                if (next != ',') {
+                    throw new MalformedException("数组元素之间缺少逗号");
+                }
+            }
+        }
+        reader.skipWhitespace();
+        reader.expectEnd();
+        return messages;
+    }
+
+    /**
+     * 入站消息的字段
+     */
+    public static final class Inbound {
+        public final String message;
+        public final String prefix;
+        // 调用方提供的幂等键，可以为null
+        public final String id;
+
+        public Inbound(String message, String prefix) {
+            this(message, prefix, null);
+        }
+
+        public Inbound(String message, String prefix, String id) {
+            this.message = message;
+            this.prefix = prefix;
+            this.id = id;
+        }
+    }
+
+    /**
+     * 请求体无法被快速解码器识别
+     */
+    public static final class MalformedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MalformedException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Reader {
+        private final ByteBuffer in;
+        private final int limit;
+        private int position;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+            this.position = in.position();
+            this.limit = in.limit();
+        }
+
+        Inbound readInbound() {
+            expect('{');
+            String message = null;
+            String prefix = null;
+            String id = null;
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return new Inbound(null, null, null);
+            }
+            while (true) {
+                skipWhitespace();
+                expect('"');
+                int keyStart = position;
+                boolean isMessage = matchKey(KEY_MESSAGE);
+                boolean isPrefix = !isMessage && matchKey(KEY_PREFIX);
+                boolean isId = !isMessage && !isPrefix && matchKey(KEY_ID);
+                if (!isMessage && !isPrefix && !isId) {
+                    position = keyStart;
+                    skipStringBody();
+                }
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if (isMessage) {
+                    message = readScalar();
+                } else if (isPrefix) {
+                    prefix = readScalar();
+                } else if (isId) {
+                    id = readScalar();
+                } else {
+                    skipValue();
+                }
+                skipWhitespace();
+                byte next = next();
+                if (next == '}') {
+                    return new Inbound(message, prefix, id);
+                }
+                if (next != ',') {
+                    throw new MalformedException("对象字段之间缺少逗号");
+                }
+            }
+        }
+
+        // 读取encodeChatMessage生成的对象，按二进制帧写出；对象带有type字段时不写出，返回true
+        boolean readChatMessage(Writer out) {
+            expect('{');
+            UUID playerId = null;
+            String playerName = null;
+            String message = null;
+            String prefix = null;
+            int repeat = 0;
+            boolean event = false;
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    expect('"');
+                    String key = readStringBody();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                    if (event || "type".equals(key)) {
+                        // 事件对象（ObjectWriter把type写在第一个字段）的其他字段可能是数组，只检查结构
+                        event = true;
+                        skipValue();
+                    } else {
+                        String value = readScalar();
+                        try {
+                            switch (key) {
+                                case "playerId": playerId = value != null ? UUID.fromString(value) : null; break;
+                                case "playerName": playerName = value; break;
+                                case "message": message = value; break;
+                                case "prefix": prefix = value; break;
+                                case "repeat": repeat = value != null ? Integer.parseInt(value) : 0; break;
+                                default: break;
+                            }
+                        } catch (IllegalArgumentException e) {
+                            throw new MalformedException("字段" + key + "的值无效");
+                        }
+                    }
+                    skipWhitespace();
+                    byte next = next();
+                    if (next == '}') {
+                        break;
+                    }
+                    if (next != ',') {
+                        throw new MalformedException("对象字段之间缺少逗号");
+                    }
+                }
+            }
+            if (event) {
+                return true;
+            }
+            out.frame(playerId, playerName, message, prefix, repeat);
+            return false;
+        }
+
+        // 键名完全匹配（包括结尾的引号）时消费掉键名并返回true
+        private boolean matchKey(byte[] key) {
+            if (position + key.length >= limit) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (in.get(position + i) != key[i]) {
+                    return false;
+                }
+            }
+            if (in.get(position + key.length) != '"') {
+                return false;
+            }
+            position += key.length + 1;
+            return true;
+        }
+
+        /**
+         * 读取字符串、数字或布尔值的文本，null返回null
+         * 与JsonElement.getAsString的行为一致
+         */
+        private String readScalar() {
+            byte b = peek();
+            if (b == '"') {
+                position++;
+                return readStringBody();
+            }
+            if (b == 'n') {
+                expectLiteral("null");
+                return null;
+            }
+            if (b == '{' || b == '[') {
+                throw new MalformedException("字段值不是字符串");
+            }
+            int start = position;
+            skipValue();
+            char[] chars = chars(position - start);
+            for (int i = start; i < position; i++) {
+                chars[i - start] = (char) in.get(i);
+            }
+            return new String(chars, 0, position - start);
+        }
+
+        // 从开头引号之后开始，解码到结尾引号
+        private String readStringBody() {
+            // UTF-8解码后的字符数不会超过字节数
+            char[] out = chars(Math.min(limit - position, 1 << 20));
+            int count = 0;
+            while (true) {
+                if (position >= limit) {
+                    throw new MalformedException("字符串未结束");
+                }
+                if (count >= out.length) {
+                    out = growChars(out);
+                }
+                int b = in.get(position++) & 0xFF;
+                if (b == '"') {
+                    return new String(out, 0, count);
+                }
+                if (b == '\\') {
+                    char escaped = readEscape();
+                    out[count++] = escaped;
+                } else if (b < 0x80) {
+                    if (b < 0x20) {
+                        throw new MalformedException("字符串中包含控制字符");
+                    }
+                    out[count++] = (char) b;
+                } else if ((b & 0xE0) == 0xC0) {
+                    out[count++] = (char) (((b & 0x1F) << 6) | continuation());
+                } else if ((b & 0xF0) == 0xE0) {
+                    int c = ((b & 0x0F) << 12) | (continuation() << 6);
+                    out[count++] = (char) (c | continuation());
+                } else if ((b & 0xF8) == 0xF0) {
+                    int codePoint = ((b & 0x07) << 18) | (continuation() << 12);
+                    codePoint |= continuation() << 6;
+                    codePoint |= continuation();
+                    if (count + 1 >= out.length) {
+                        out = growChars(out);
+                    }
+                    out[count++] = Character.highSurrogate(codePoint);
+                    out[count++] = Character.lowSurrogate(codePoint);
+                } else {
+                    throw new MalformedException("无效的UTF-8编码");
+                }
+            }
+        }
+
+        private int continuation() {
+            if (position >= limit) {
+                throw new MalformedException("UTF-8编码不完整");
+            }
+            int b = in.get(position++) & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                throw new MalformedException("无效的UTF-8编码");
+            }
+            return b & 0x3F;
+        }
+
+        private char readEscape() {
+            byte b = next();
+            switch (b) {
+                case '"': return '"';
+                case '\\': return '\\';
+                case '/': return '/';
+                case 'n': return '\n';
+                case 'r': return '\r';
+                case 't': return '\t';
+                case 'b': return '\b';
+                case 'f': return '\f';
+                case 'u': {
+                    if (position + 4 > limit) {
+                        throw new MalformedException("\\u转义不完整");
+                    }
+                    int c = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(in.get(position++), 16);
+                        if (digit < 0) {
+                            throw new MalformedException("\\u转义无效");
+                        }
+                        c = (c << 4) | digit;
+                    }
+                    return (char) c;
+                }
+                default:
+                    throw new MalformedException("无效的转义字符");
+            }
+        }
+
+        private void skipStringBody() {
+            while (true) {
+                byte b = next();
+                if (b == '"') {
+                    return;
+                }
+                if (b == '\\') {
+                    next();
+                }
+            }
+        }
+
+        /**
+         * 跳过任意JSON值，嵌套的对象和数组只做括号匹配
+         */
+        void skipValue() {
+            byte b = peek();
+            if (b == '"') {
+                position++;
+                skipStringBody();
+                return;
+            }
+            if (b == '{' || b == '[') {
+                int depth = 0;
+                do {
+                    byte c = next();
+                    if (c == '"') {
+                        skipStringBody();
+                    } else if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                } while (depth > 0);
+                return;
+            }
+            int start = position;
+            while (position < limit) {
+                byte c = in.get(position);
+                if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                    break;
+                }
+                position++;
+            }
+            if (position == start) {
+                throw new MalformedException("缺少字段值");
+            }
+        }
+
+        private void expectLiteral(String literal) {
+            for (int i = 0; i < literal.length(); i++) {
+                if (next() != literal.charAt(i)) {
+                    throw new MalformedException("无效的字面量");
+                }
+            }
+        }
+
+        void skipWhitespace() {
+            while (position < limit) {
+                byte b = in.get(position);
+                if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        void expect(char c) {
+            if (next() != c) {
+                throw new MalformedException("缺少 '" + c + "'");
+            }
+        }
+
+        void expectEnd() {
+            if (position != limit) {
+                throw new MalformedException("JSON之后还有多余内容");
+            }
+        }
+
+        byte peek() {
+            if (position >= limit) {
+                throw new MalformedException("请求体意外结束");
+            }
+            return in.get(position);
+        }
+
+        byte next() {
+            byte b = peek();
+            position++;
+            return b;
+        }
+
+        private static char[] chars(int capacity) {
+            char[] buffer = DECODE_BUFFER.get();
+            if (buffer.length < capacity) {
+                buffer = new char[Math.max(capacity, buffer.length * 2)];
+                DECODE_BUFFER.set(buffer);
+            }
+            return buffer;
+        }
+
+        private static char[] growChars(char[] buffer) {
+            char[] grown = Arrays.copyOf(buffer, buffer.length * 2);
+            DECODE_BUFFER.set(grown);
+            return grown;
+        }
+    }
+
+    /**
+     * 二进制帧的读取器，只用于还原为JSON
+     */
+    private static final class FrameReader {
+        private final byte[] in;
+        private int position;
+
+        FrameReader(byte[] in) {
+            this.in = in;
+        }
+
+        boolean hasRemaining() {
+            return position < in.length;
+        }
+
+        void readFrame(Writer out) {
+            int flags = readByte();
+            if ((flags & FLAG_EVENT) != 0) {
+                int length = readVarint();
+                if (length < 0 || length > in.length - position) {
+                    throw new MalformedException("事件长度超出帧");
+                }
+                out.rawBytes(in, position, length);
+                position += length;
+                return;
+            }
+            UUID playerId = null;
+            if ((flags & FLAG_PLAYER_ID) != 0) {
+                playerId = new UUID(readLong(), readLong());
+            }
+            String playerName = (flags & FLAG_PLAYER_NAME) != 0 ? readUtf8() : null;
+            String message = (flags & FLAG_MESSAGE) != 0 ? readUtf8() : null;
+            String prefix = (flags & FLAG_PREFIX) != 0 ? readUtf8() : null;
+            int repeat = (flags & FLAG_REPEAT) != 0 ? readVarint() : 0;
+            out.chatMessage(playerId, playerName, message, prefix, repeat);
+        }
+
+        private int readByte() {
+            if (position >= in.length) {
+                throw new MalformedException("帧不完整");
+            }
+            return in[position++] & 0xFF;
+        }
+
+        private long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new MalformedException("varint过长");
+        }
+
+        private String readUtf8() {
+            int length = readVarint();
+            if (length < 0 || length > in.length - position) {
+                throw new MalformedException("字符串长度超出帧");
+            }
+            String value = new String(in, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -2,38 +2,92 @@ package com.devcl.aetherbridge.network;
 
 import com.devcl.aetherbridge.AetherBridge;
 import com.devcl.aetherbridge.config.ModConfig;
-import com.google.gson.Gson;
+import com.devcl.aetherbridge.logging.BridgeLog;
+import com.devcl.aetherbridge.metrics.Metrics;
+import com.devcl.aetherbridge.scheduler.VirtualThreads;
+import net.fabricmc.loader.api.FabricLoader;
 
+import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 public class MessageSender {
-    private static final Gson GSON = new Gson();
-    private static final HttpClient CLIENT = HttpClient.newBuilder()
-        .connectTimeout(Duration.ofSeconds(10))
-        .followRedirects(HttpClient.Redirect.NORMAL)
-        .version(HttpClient.Version.HTTP_1_1)
-        .build();
-    private static final int MAX_RETRIES = 3;
-    private static final Duration RETRY_DELAY = Duration.ofSeconds(2);
-    // 创建一个固定大小的线程池用于异步发送消息
-    private static final ExecutorService MESSAGE_EXECUTOR = Executors.newFixedThreadPool(3);
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+    // 聊天监听器与发送线程之间的有界队列，按需创建
+    private static volatile OutboundQueue<OutboundMessage> queue;
+    private static final List<Thread> WORKERS = new ArrayList<>();
+    private static volatile boolean running = false;
+    // 批量发送时使用的攒批器，按需创建
+    private static MessageBatcher batcher;
+    // 出站去重窗口，启用后按需创建
+    private static DedupWindow<OutboundMessage> dedup;
+    // 磁盘发件箱，启用后按需打开
+    private static Outbox outbox;
+    // 出站HTTP客户端，按需创建，热重载时重建
+    private static volatile HttpTransport httpTransport;
+    // 共用的重试调度和熔断器，随HTTP客户端一起创建和关闭
+    private static volatile RetryScheduler retryScheduler;
+    // 主目标请求体的压缩器，启用压缩时按需创建
+    private static BodyCompressor compressor;
+    // 额外的出站目标，按需创建，热重载时只重建配置有变化的目标
+    private static volatile List<Destination> destinations;
+    // WebSocket长连接传输，由WebSocketTransportFeature设置
+    private static volatile WebSocketTransport webSocketTransport;
+    
+    static {
+        Metrics.gauge("aetherbridge_queue_depth", "发送队列中等待发送的消息数", () -> {
+            OutboundQueue<OutboundMessage> current = queue;
+            return current != null ? current.size() : 0;
+        });
+        Metrics.gauge("aetherbridge_queue_capacity", "发送队列容量", () -> ModConfig.getInstance().getQueue().getCapacity());
+        Metrics.counter("aetherbridge_queue_enqueued_total", "进入发送队列的消息数（热重载后重新计数）",
+            () -> queueStat(stats -> stats.enqueued));
+        Metrics.counter("aetherbridge_queue_dropped_total", "因队列已满被丢弃的消息数（热重载后重新计数）",
+            () -> queueStat(stats -> stats.dropped));
+        Metrics.counter("aetherbridge_queue_coalesced_total", "在队列中被合并的消息数（热重载后重新计数）",
+            () -> queueStat(stats -> stats.coalesced));
+        Metrics.gauge("aetherbridge_http_in_flight", "进行中的出站HTTP请求数（包括等待重试的请求）", MessageSender::getHttpInFlight);
+        Metrics.gauge("aetherbridge_websocket_unacked", "WebSocket已发送但未确认的消息数", () -> {
+            WebSocketTransport ws = webSocketTransport;
+            return ws != null ? ws.getUnackedCount() : 0;
+        });
+        Metrics.gauge("aetherbridge_circuit_state", "熔断器状态：0关闭，1打开，2半开（探测中）", () -> {
+            RetryScheduler retry = retryScheduler;
+            return retry != null ? retry.getBreaker().getState().ordinal() : 0;
+        });
+        Metrics.counter("aetherbridge_circuit_opened_total", "熔断器打开次数（热重载后重新计数）", () -> {
+            RetryScheduler retry = retryScheduler;
+            return retry != null ? retry.getBreaker().getOpenedCount() : 0;
+        });
+        Metrics.gauge("aetherbridge_retry_held", "熔断期间保留等待发送的请求数", MessageSender::getHeldCount);
+        Metrics.gauge("aetherbridge_outbox_pending", "发件箱中未确认的消息数", MessageSender::getOutboxPending);
+        Metrics.gauge("aetherbridge_destination_queue_depth", "所有额外出站目标的队列中等待发送的消息数", () -> {
+            long depth = 0;
+            for (Destination destination : getActiveDestinations()) {
+                depth += destination.getDepth();
+            }
+            return depth;
+        });
+    }
     
     public static void sendToRemote(String playerName, String message, String prefix) {
         // 检查功能是否启用
         if (!ModConfig.getInstance().isFeatureEnabled("messageSender")) {
-            AetherBridge.LOGGER.warn("尝试发送消息，但消息发送功能已禁用");
+            BridgeLog.warn("sender-disabled", "尝试发送消息，但消息发送功能已禁用");
             return;
         }
 
-        AetherBridge.LOGGER.debug("准备发送消息 (旧方法): 玩家=" + playerName + ", 消息=" + message);
         // 创建没有UUID的消息（向后兼容）
         sendToRemote(null, playerName, message, prefix);
     }
@@ -41,137 +95,719 @@ public class MessageSender {
     public static void sendToRemote(UUID playerId, String playerName, String message, String prefix) {
         // 检查功能是否启用
         if (!ModConfig.getInstance().isFeatureEnabled("messageSender")) {
-            AetherBridge.LOGGER.warn("尝试发送消息，但消息发送功能已禁用");
+            BridgeLog.warn("sender-disabled", "尝试发送消息，但消息发送功能已禁用");
             return;
         }
 
-        AetherBridge.LOGGER.info("准备发送消息: 玩家ID=" + (playerId != null ? playerId.toString() : "null") + 
-                               ", 玩家名=" + playerName + 
-                               ", 前缀=" + prefix);
+        BridgeLog.trace("outbound.enqueue", "player", playerName, "uuid", playerId, "prefix", prefix);
 
-        // 使用线程池异步执行消息发送
-        MESSAGE_EXECUTOR.submit(() -> {
+        OutboundMessage outbound = new OutboundMessage(playerId, playerName, message, prefix);
+        
+        // 去重窗口内的重复消息只计数，窗口结束时汇总发送
+        DedupWindow<OutboundMessage> window = getDedup();
+        if (window != null && !window.offer(DedupWindow.hash(playerId, playerName, message), outbound)) {
+            Metrics.OUTBOUND_DEDUPLICATED.increment();
+            BridgeLog.trace("outbound.deduplicated", "player", playerName);
+            return;
+        }
+        
+        enqueue(outbound);
+    }
+    
+    /**
+     * 发送聊天以外的事件，json为MessageCodec.ObjectWriter生成、带有type字段的对象
+     * 与聊天消息共用发送队列、发件箱和额外目标，不经过去重窗口
+     */
+    public static void sendEvent(byte[] json) {
+        if (!ModConfig.getInstance().isFeatureEnabled("messageSender")) {
+            BridgeLog.warn("sender-disabled", "尝试发送事件，但消息发送功能已禁用");
+            return;
+        }
+        enqueue(new OutboundMessage(json, null));
+    }
+    
+    /**
+     * 去重窗口结束时发送汇总消息
+     */
+    private static void sendRepeatSummary(OutboundMessage first, int repeat) {
+        BridgeLog.trace("outbound.repeat", "player", first.playerName, "repeat", repeat);
+        enqueue(new OutboundMessage(first.playerId, first.playerName, first.message, first.prefix, repeat));
+    }
+    
+    private static void enqueue(OutboundMessage outbound) {
+        // 有额外目标时在这里序列化一次，主目标和所有额外目标共用同一个请求体
+        List<Destination> targets = getDestinations();
+        if (!targets.isEmpty() && outbound.json == null) {
+            outbound.json = serialize(outbound);
+        }
+        
+        // 启用发件箱时先写入磁盘，再进入队列
+        Outbox box = getOutbox();
+        if (box != null) {
             try {
-                ChatMessage chatMessage = new ChatMessage(playerId, playerName, message);
-                if (prefix != null && !prefix.isEmpty()) {
-                    chatMessage.setPrefix(prefix);
+                if (outbound.json == null) {
+                    outbound.json = serialize(outbound);
                 }
-                String jsonBody = GSON.toJson(chatMessage);
-                
-                AetherBridge.LOGGER.info("发送消息到远程服务器: " + jsonBody);
-                
-                URI targetUri = URI.create(ModConfig.getInstance().getApiUrl());
-                AetherBridge.LOGGER.debug("目标URL: " + targetUri);
-                
-                HttpRequest.BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.ofString(jsonBody);
-                
-                HttpRequest request = HttpRequest.newBuilder()
-                    .uri(targetUri)
-                    .header("Content-Type", "application/json; charset=UTF-8")
-                    .header("Authorization", "Bearer " + ModConfig.getInstance().getApiKey())
-                    .header("Accept", "application/json")
-                    .POST(bodyPublisher)
-                    .timeout(Duration.ofSeconds(10))
-                    .build();
-                    
-                AetherBridge.LOGGER.debug("HTTP请求头: " + request.headers().map().toString());
-                
-                sendWithRetryAsync(request, 0);
-            } catch (Exception e) {
-                AetherBridge.LOGGER.error("创建HTTP请求时发生错误", e);
+                outbound.entry = box.append(outbound.json);
+            } catch (IOException e) {
+                AetherBridge.LOGGER.error("写入发件箱失败，消息将仅在内存中发送", e);
             }
-        });
+        }
+
+        // 放入有界队列，由发送线程异步处理
+        if (!getQueue().offer(outbound)) {
+            // 已写入发件箱的消息会在下次重放时补发
+            BridgeLog.warn("outbound-queue-full", "发送队列已满，消息被丢弃: 玩家名={}", outbound.playerName);
+        }
+        
+        // 额外目标各自入队，队列满时按各自的策略丢弃，不会等待
+        for (Destination target : targets) {
+            if (target.accepts(outbound.playerId, outbound.prefix, outbound.message, outbound.repeat)) {
+                target.offer(outbound.json);
+            }
+        }
     }
     
-    private static void sendWithRetryAsync(HttpRequest request, int retryCount) {
-        AetherBridge.LOGGER.debug("开始异步发送HTTP请求" + (retryCount > 0 ? " (重试 #" + retryCount + ")" : ""));
-        
-        CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-            .thenAccept(response -> {
-                if (response.statusCode() == 200) {
-                    AetherBridge.LOGGER.info("消息发送成功，状态码: 200");
+    /**
+     * 重放发件箱中上次未确认的消息
+     * 在服务器启动时调用，重放在后台线程中进行，队列满时会等待而不是丢弃
+     */
+    public static void replayOutbox() {
+        Outbox box = getOutbox();
+        if (box == null) {
+            return;
+        }
+        OutboundQueue<OutboundMessage> target = getQueue();
+        Thread replayThread = new Thread(() -> {
+            try {
+                int replayed = box.replay((json, entry) -> {
+                    OutboundMessage outbound = new OutboundMessage(json, entry);
                     try {
-                        AetherBridge.LOGGER.debug("服务器响应: " + response.body());
-                    } catch (Exception e) {
-                        // 忽略响应体解析错误
+                        while (running && queue == target) {
+                            if (target.put(outbound, 1, TimeUnit.SECONDS)) {
+                                return true;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
                     }
+                    return false;
+                });
+                if (replayed > 0) {
+                    AetherBridge.LOGGER.info("发件箱重放完成，共重新发送 " + replayed + " 条消息");
+                }
+            } catch (IOException e) {
+                AetherBridge.LOGGER.error("重放发件箱失败", e);
+            }
+        }, "AetherBridge-OutboxReplay");
+        replayThread.setDaemon(true);
+        replayThread.start();
+    }
+    
+    private static synchronized Outbox getOutbox() {
+        ModConfig.OutboxConfig config = ModConfig.getInstance().getOutbox();
+        if (outbox == null && config.isEnabled()) {
+            Path directory = FabricLoader.getInstance().getConfigDir().resolve("aetherbridge/outbox");
+            try {
+                outbox = Outbox.open(directory, config.getSegmentBytes());
+            } catch (IOException e) {
+                AetherBridge.LOGGER.error("打开发件箱失败: " + directory, e);
+                return null;
+            }
+        }
+        return outbox;
+    }
+    
+    /**
+     * 获取发送队列统计信息
+     * @return 队列尚未创建时返回null
+     */
+    public static synchronized OutboundQueue.Stats getQueueStats() {
+        return queue != null ? queue.getStats() : null;
+    }
+    
+    private static long queueStat(ToLongFunction<OutboundQueue.Stats> field) {
+        OutboundQueue<OutboundMessage> current = queue;
+        return current != null ? field.applyAsLong(current.getStats()) : 0;
+    }
+    
+    /**
+     * 进行中的出站HTTP请求数，客户端尚未创建时为0
+     */
+    public static int getHttpInFlight() {
+        HttpTransport transport = httpTransport;
+        return transport != null ? transport.getInFlight() : 0;
+    }
+    
+    /**
+     * 熔断器当前状态，尚未创建时视为关闭
+     */
+    public static CircuitBreaker.State getCircuitState() {
+        RetryScheduler retry = retryScheduler;
+        return retry != null ? retry.getBreaker().getState() : CircuitBreaker.State.CLOSED;
+    }
+    
+    /**
+     * 熔断期间保留等待发送的请求数
+     */
+    public static int getHeldCount() {
+        RetryScheduler retry = retryScheduler;
+        return retry != null ? retry.getHeldCount() : 0;
+    }
+    
+    private static synchronized long getOutboxPending() {
+        return outbox != null ? outbox.pendingCount() : 0;
+    }
+    
+    private static synchronized OutboundQueue<OutboundMessage> getQueue() {
+        if (queue == null) {
+            ModConfig snapshot = ModConfig.getInstance();
+            ModConfig.QueueConfig config = snapshot.getQueue();
+            OutboundQueue<OutboundMessage> created = new OutboundQueue<>(
+                config.getCapacity(),
+                config.getPolicy(),
+                config.getBlockTimeoutMs(),
+                OutboundMessage::coalesce
+            );
+            queue = created;
+            running = true;
+            // 使用虚拟线程时每个进行中的请求占用一个发送线程，线程数提高到最大并发请求数。
+            // WebSocket传输只在锁内排队帧，每个发送线程在锁外等待自己的帧写出，多个线程的等待可以重叠，
+            // 因此同样按这个数量创建；传输方式切换时不会重建发送队列，线程数也不应取决于当前的传输方式
+            boolean virtual = snapshot.getThreads().getMode().useVirtual();
+            int workers = config.getWorkers();
+            if (virtual) {
+                workers = Math.max(workers, snapshot.getHttp().getMaxInFlight());
+            }
+            ThreadFactory factory = virtual ? VirtualThreads.factory("AetherBridge-Sender-") : null;
+            for (int i = 0; i < workers; i++) {
+                Thread worker;
+                if (factory != null) {
+                    worker = factory.newThread(() -> runWorker(created));
                 } else {
-                    if (retryCount < MAX_RETRIES && shouldRetry(response.statusCode())) {
-                        AetherBridge.LOGGER.warn("发送失败，状态码: " + response.statusCode() + 
-                                              "，将在" + RETRY_DELAY.getSeconds() + "秒后重试 (" + 
-                                              (retryCount + 1) + "/" + MAX_RETRIES + ")");
-                        
-                        // 使用CompletableFuture.delayedExecutor进行延迟重试
-                        CompletableFuture.delayedExecutor(RETRY_DELAY.toMillis(), 
-                                                         java.util.concurrent.TimeUnit.MILLISECONDS, 
-                                                         MESSAGE_EXECUTOR)
-                            .execute(() -> sendWithRetryAsync(request, retryCount + 1));
-                    } else {
-                        AetherBridge.LOGGER.error("服务器响应错误: " + response.statusCode());
-                        try {
-                            AetherBridge.LOGGER.error("错误响应内容: " + response.body());
-                        } catch (Exception e) {
-                            // 忽略响应体解析错误
-                        }
+                    worker = new Thread(() -> runWorker(created), "AetherBridge-Sender-" + i);
+                    worker.setDaemon(true);
+                }
+                worker.start();
+                WORKERS.add(worker);
+            }
+            AetherBridge.LOGGER.info("消息发送队列已创建: 容量=" + config.getCapacity() + 
+                                   ", 溢出策略=" + config.getPolicy().getConfigName() + 
+                                   ", 发送线程数=" + workers + 
+                                   ", 线程类型=" + (virtual ? "虚拟线程" : "平台线程"));
+        }
+        return queue;
+    }
+    
+    private static void runWorker(OutboundQueue<OutboundMessage> source) {
+        // 热重载后旧队列被替换，旧发送线程随之退出
+        while (running && queue == source) {
+            try {
+                // 熔断器关闭或允许探测时，先按顺序发出保留队列中的请求
+                RetryScheduler retry = retryScheduler;
+                if (retry != null) {
+                    RetryScheduler.Delivery held = retry.pollHeld();
+                    if (held != null) {
+                        retry.deliver(held, running);
+                        continue;
+                    }
+                    // 保留队列已满时不再取新消息，积压留在发送队列中
+                    if (retry.isHoldFull()) {
+                        retry.awaitHoldCapacity(1000);
+                        continue;
                     }
                 }
-            })
-            .exceptionally(e -> {
-                if (retryCount < MAX_RETRIES) {
-                    AetherBridge.LOGGER.warn("发送失败: " + e.getMessage() + 
-                                          "，将在" + RETRY_DELAY.getSeconds() + "秒后重试 (" + 
-                                          (retryCount + 1) + "/" + MAX_RETRIES + ")");
-                    
-                    // 使用CompletableFuture.delayedExecutor进行延迟重试
-                    CompletableFuture.delayedExecutor(RETRY_DELAY.toMillis(), 
-                                                     java.util.concurrent.TimeUnit.MILLISECONDS, 
-                                                     MESSAGE_EXECUTOR)
-                        .execute(() -> sendWithRetryAsync(request, retryCount + 1));
+                OutboundMessage next = source.poll(1, TimeUnit.SECONDS);
+                if (next != null) {
+                    process(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 在发送线程中处理一条消息
+     * 单条发送时会等待请求（包括重试）结束，发送线程数即为并发上限，积压留在有界队列中
+     */
+    private static void process(OutboundMessage outbound) {
+        try {
+            // 整条消息的处理使用同一个配置快照
+            ModConfig config = ModConfig.getInstance();
+            
+            // 使用WebSocket传输时直接写入长连接，由服务端ack确认
+            WebSocketTransport ws = webSocketTransport;
+            if (ws != null) {
+                byte[] json = json(outbound);
+                if (ws.send(json, outbound.entry)) {
+                    Metrics.OUTBOUND_WEBSOCKET.increment();
+                    BridgeLog.trace("outbound.websocket", "body", json);
+                    return;
+                }
+            }
+            
+            // 批量模式下交给攒批器，由其按条数/字节数/等待时间合并发送
+            // 消息格式以攒批器创建时的配置为准，避免热重载期间同一批次中混入两种格式
+            if (config.getBatch().isActive()) {
+                MessageBatcher target = getBatcher();
+                byte[] encoded = target.isBinary() ? frame(outbound) : json(outbound);
+                if (target.add(encoded, outbound.entry)) {
+                    BridgeLog.trace("outbound.batched", "bytes", encoded.length);
+                    return;
+                }
+            }
+            
+            // 二进制格式只用于主目标的HTTP请求，发件箱、WebSocket和额外目标仍使用JSON
+            boolean binary = config.getEncoding().isBinary();
+            byte[] body = binary ? frame(outbound) : json(outbound);
+            URI targetUri = URI.create(config.getApiUrl());
+            BridgeLog.trace("outbound.send", "url", targetUri, "binary", binary, "bytes", body.length);
+            
+            RetryScheduler.Delivery delivery = prepareDelivery(targetUri, config.getApiKey(), body, binary, 0,
+                () -> json(outbound));
+            
+            awaitDelivery(delivery, outbound.entry != null ? List.of(outbound.entry) : List.of());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            AetherBridge.LOGGER.error("创建HTTP请求时发生错误", e);
+        }
+    }
+    
+    /**
+     * 构建单条消息的POST请求
+     */
+    static HttpRequest buildRequest(URI targetUri, String apiKey, byte[] json, Duration timeout) {
+        return buildRequest(targetUri, apiKey, json, JSON_CONTENT_TYPE, null, 0, timeout);
+    }
+    
+    /**
+     * @param contentEncoding 请求体的压缩算法，未压缩时为null
+     * @param batchSize 批量请求中的消息数，单条请求为0
+     */
+    private static HttpRequest buildRequest(URI targetUri, String apiKey, byte[] body, String contentType,
+                                            String contentEncoding, int batchSize, Duration timeout) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+            .uri(targetUri)
+            .header("Content-Type", contentType)
+            .header("Authorization", "Bearer " + apiKey)
+            .header("Accept", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+            .timeout(timeout);
+        if (contentEncoding != null) {
+            builder.header("Content-Encoding", contentEncoding);
+        }
+        if (batchSize > 0) {
+            builder.header("X-Batch-Size", String.valueOf(batchSize));
+        }
+        return builder.build();
+    }
+    
+    /**
+     * 按encoding配置构建发往主目标的投递
+     * 达到阈值的请求体按配置压缩；使用了二进制格式或压缩时附带一个普通JSON的备用请求，
+     * 对端返回415后由重试调度改发备用请求，此后的请求直接使用普通JSON
+     * @param batchSize 批量请求中的消息数，单条请求为0
+     * @param json 请求体的JSON形式，只在需要时调用
+     */
+    private static RetryScheduler.Delivery prepareDelivery(URI targetUri, String apiKey, byte[] body, boolean binary,
+                                                          int batchSize, Supplier<byte[]> json) {
+        Duration timeout = getHttpTransport().requestTimeout();
+        if (getRetryScheduler().isEncodingRejected()) {
+            byte[] plain = binary ? json.get() : body;
+            Metrics.OUTBOUND_BODY_BYTES.add(plain.length);
+            Metrics.OUTBOUND_WIRE_BYTES.add(plain.length);
+            return new RetryScheduler.Delivery(
+                buildRequest(targetUri, apiKey, plain, JSON_CONTENT_TYPE, null, batchSize, timeout));
+        }
+        
+        BodyCompressor bodyCompressor = getCompressor();
+        byte[] compressed = bodyCompressor != null ? bodyCompressor.compress(body) : null;
+        Metrics.OUTBOUND_BODY_BYTES.add(body.length);
+        Metrics.OUTBOUND_WIRE_BYTES.add(compressed != null ? compressed.length : body.length);
+        HttpRequest request = buildRequest(targetUri, apiKey, compressed != null ? compressed : body,
+            binary ? MessageCodec.BINARY_CONTENT_TYPE : JSON_CONTENT_TYPE,
+            compressed != null ? bodyCompressor.getContentEncoding() : null, batchSize, timeout);
+        if (!binary && compressed == null) {
+            return new RetryScheduler.Delivery(request);
+        }
+        return new RetryScheduler.Delivery(request, () -> buildRequest(targetUri, apiKey,
+            binary ? json.get() : body, JSON_CONTENT_TYPE, null, batchSize, timeout));
+    }
+    
+    /**
+     * 压缩器，未启用压缩时为null
+     */
+    private static synchronized BodyCompressor getCompressor() {
+        ModConfig.EncodingConfig config = ModConfig.getInstance().getEncoding();
+        if (compressor == null && config.getCompression() != BodyCompressor.Algorithm.NONE) {
+            compressor = new BodyCompressor(config.getCompression(), config.getCompressionLevel(),
+                config.getCompressionThreshold());
+        }
+        return compressor;
+    }
+    
+    private static synchronized HttpTransport getHttpTransport() {
+        if (httpTransport == null) {
+            ModConfig snapshot = ModConfig.getInstance();
+            ModConfig.HttpConfig config = snapshot.getHttp();
+            httpTransport = HttpTransport.fromConfig(config, snapshot.getThreads().getMode().useVirtual());
+            AetherBridge.LOGGER.info("HTTP客户端已创建: 协议=" + config.getClientVersion() + 
+                                   ", 最大并发请求=" + config.getMaxInFlight() + 
+                                   ", 请求超时=" + config.getRequestTimeoutMs() + "ms");
+        }
+        return httpTransport;
+    }
+    
+    private static synchronized RetryScheduler getRetryScheduler() {
+        if (retryScheduler == null) {
+            retryScheduler = new RetryScheduler(getHttpTransport(), ModConfig.getInstance().getRetry());
+        }
+        return retryScheduler;
+    }
+    
+    private static byte[] serialize(OutboundMessage outbound) {
+        return MessageCodec.encodeChatMessage(outbound.playerId, outbound.playerName, outbound.message,
+            outbound.prefix, outbound.repeat);
+    }
+    
+    private static byte[] json(OutboundMessage outbound) {
+        return outbound.json != null ? outbound.json : serialize(outbound);
+    }
+    
+    /**
+     * 编码为二进制帧，从发件箱重放的消息只有JSON，由JSON转换
+     */
+    private static byte[] frame(OutboundMessage outbound) {
+        if (outbound.message == null && outbound.json != null) {
+            return MessageCodec.jsonToFrame(outbound.json);
+        }
+        return MessageCodec.encodeChatFrame(outbound.playerId, outbound.playerName, outbound.message,
+            outbound.prefix, outbound.repeat);
+    }
+    
+    /**
+     * 当前运行中的额外出站目标，尚未创建时为空列表
+     */
+    public static List<Destination> getActiveDestinations() {
+        List<Destination> current = destinations;
+        return current != null ? current : List.of();
+    }
+    
+    private static List<Destination> getDestinations() {
+        List<Destination> current = destinations;
+        if (current != null) {
+            return current;
+        }
+        synchronized (MessageSender.class) {
+            if (destinations == null) {
+                destinations = buildDestinations(List.of());
+            }
+            return destinations;
+        }
+    }
+    
+    /**
+     * 按当前配置重建额外出站目标，配置没有变化的目标继续运行
+     * 只有destinations配置变化时由FeatureManager调用，HTTP客户端或线程模式变化时随shutdown一起重建
+     */
+    public static void reloadDestinations() {
+        List<Destination> stale = new ArrayList<>();
+        synchronized (MessageSender.class) {
+            if (destinations == null) {
+                // 尚未创建，下次发送时按新配置创建
+                return;
+            }
+            List<Destination> next = buildDestinations(destinations);
+            for (Destination destination : destinations) {
+                if (!next.contains(destination)) {
+                    stale.add(destination);
+                }
+            }
+            destinations = next;
+        }
+        closeDestinations(stale);
+    }
+    
+    // 调用方需持有锁，配置对象没有变化的目标直接沿用
+    private static List<Destination> buildDestinations(List<Destination> existing) {
+        ModConfig snapshot = ModConfig.getInstance();
+        boolean virtual = snapshot.getThreads().getMode().useVirtual();
+        List<Destination> built = new ArrayList<>();
+        for (ModConfig.DestinationConfig config : snapshot.getDestinations()) {
+            if (!config.isEnabled()) {
+                continue;
+            }
+            Destination reused = null;
+            for (Destination destination : existing) {
+                if (destination.getConfig() == config) {
+                    reused = destination;
+                    break;
+                }
+            }
+            built.add(reused != null ? reused : new Destination(config, snapshot.getHttp(), virtual));
+        }
+        return Collections.unmodifiableList(built);
+    }
+    
+    private static void closeDestinations(List<Destination> targets) {
+        if (targets.isEmpty()) {
+            return;
+        }
+        // 先通知所有目标停止，再统一等待，总等待时间不超过5秒
+        targets.forEach(Destination::stop);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        try {
+            for (Destination destination : targets) {
+                destination.close(deadline);
+                AetherBridge.LOGGER.info("出站目标已关闭: " + destination.getName());
+            }
+        } catch (InterruptedException e) {
+            AetherBridge.LOGGER.error("关闭出站目标时被中断", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static synchronized DedupWindow<OutboundMessage> getDedup() {
+        ModConfig.DedupConfig config = ModConfig.getInstance().getDedup();
+        if (dedup == null && config.isEnabled()) {
+            dedup = new DedupWindow<>(config.getSlots(), config.getWindowMs(), MessageSender::sendRepeatSummary);
+        }
+        return dedup;
+    }
+    
+    private static synchronized MessageBatcher getBatcher() {
+        if (batcher == null) {
+            boolean binary = ModConfig.getInstance().getEncoding().isBinary();
+            batcher = new MessageBatcher((body, entries) -> sendBatch(body, entries, binary), binary);
+        }
+        return batcher;
+    }
+    
+    /**
+     * 发送一批消息到批量接口，请求体为消息对象的JSON数组或连续的二进制帧
+     * 重试以整个批次为单位进行
+     * 与发送线程相同，保留队列已满时先等待，不把批次交给重试调度后直接被丢弃
+     */
+    private static void sendBatch(byte[] body, List<Outbox.Entry> entries, boolean binary) {
+        int count = entries.size();
+        try {
+            BridgeLog.trace("outbound.batch", "messages", count, "bytes", body.length);
+            
+            // 达到批次上限时由发送线程调用，这里也要发出保留的请求，否则所有发送线程都可能停在这里
+            RetryScheduler retry = getRetryScheduler();
+            while (running && retry.isHoldFull()) {
+                RetryScheduler.Delivery held = retry.pollHeld();
+                if (held != null) {
+                    retry.deliver(held, running);
                 } else {
-                    AetherBridge.LOGGER.error("发送消息到远程服务器失败", e);
+                    retry.awaitHoldCapacity(1000);
                 }
-                return null;
-            });
+            }
+            
+            ModConfig config = ModConfig.getInstance();
+            URI targetUri = URI.create(config.getBatch().getApiUrl());
+            
+            RetryScheduler.Delivery delivery = prepareDelivery(targetUri, config.getApiKey(), body, binary, count,
+                () -> MessageCodec.framesToJson(body, true));
+            
+            awaitDelivery(delivery, entries);
+        } catch (InterruptedException e) {
+            // 未确认的记录会在下次启动时重放
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            AetherBridge.LOGGER.error("创建批量HTTP请求时发生错误", e);
+        }
+    }
+    
+    /**
+     * 交给重试调度发送请求，送达后确认对应的发件箱记录，被对端拒绝时转入死信文件
+     * 请求从发出到最终结果（包括重试）期间占用一个并发名额，名额用完时在这里等待；
+     * 熔断期间请求转入保留队列，发送线程不再等待其结果
+     * 关闭过程中不再等待，避免阻塞服务器停止
+     */
+    private static void awaitDelivery(RetryScheduler.Delivery delivery, List<Outbox.Entry> entries) {
+        delivery.result().thenAccept(delivered -> {
+            if (delivered) {
+                ackAll(entries);
+            } else if (delivery.isRejected()) {
+                deadLetterAll(entries);
+            }
+        });
+        try {
+            getRetryScheduler().deliver(delivery, running);
+        } catch (InterruptedException e) {
+            // 未确认的记录会在下次启动时重放
+            Thread.currentThread().interrupt();
+        }
     }
     
-    private static boolean shouldRetry(int statusCode) {
-        // 对于这些状态码进行重试
-        return statusCode == 429 || // Too Many Requests
-               statusCode == 502 || // Bad Gateway
-               statusCode == 503 || // Service Unavailable
-               statusCode == 504;   // Gateway Timeout
+    /**
+     * 设置或清除WebSocket传输
+     * 设置后发送线程不再发起HTTP请求，而是把消息写入长连接
+     */
+    public static void setWebSocketTransport(WebSocketTransport transport) {
+        webSocketTransport = transport;
     }
     
-    // 关闭线程池的方法，应在模组关闭时调用
+    /**
+     * 确认已送达消息对应的发件箱记录
+     */
+    public static synchronized void ackAll(List<Outbox.Entry> entries) {
+        if (outbox == null) {
+            // 发件箱已关闭，未确认的记录会在下次重放
+            return;
+        }
+        for (Outbox.Entry entry : entries) {
+            if (entry != null) {
+                outbox.ack(entry);
+            }
+        }
+    }
+    
+    /**
+     * 把被对端拒绝的消息对应的发件箱记录写入死信文件
+     * 这些消息重放后仍会被拒绝，留在发件箱中只会占用段文件并在每次启动时重复失败
+     */
+    private static void deadLetterAll(List<Outbox.Entry> entries) {
+        Outbox box;
+        synchronized (MessageSender.class) {
+            box = outbox;
+        }
+        if (box == null) {
+            return;
+        }
+        // 写文件不占用MessageSender的锁；发件箱关闭后deadLetter不做任何事
+        for (Outbox.Entry entry : entries) {
+            if (entry != null && box.deadLetter(entry)) {
+                Metrics.OUTBOX_DEAD_LETTERED.increment();
+            }
+        }
+    }
+    
+    // 关闭发送队列和发送线程的方法，应在模组关闭时调用
     public static void shutdown() {
-        AetherBridge.LOGGER.info("正在关闭消息发送线程池...");
-        MESSAGE_EXECUTOR.shutdown();
+        List<Thread> workers;
+        List<Destination> targets;
+        synchronized (MessageSender.class) {
+            running = false;
+            // 去重窗口中待汇总的重复次数先进入队列
+            if (dedup != null) {
+                dedup.close();
+                dedup = null;
+            }
+            // 先把尚未发出的批次发送出去
+            if (batcher != null) {
+                batcher.close();
+                batcher = null;
+            }
+            if (queue != null && queue.size() > 0) {
+                AetherBridge.LOGGER.warn("发送队列中仍有 " + queue.size() + " 条消息未发送");
+            }
+            queue = null;
+            workers = new ArrayList<>(WORKERS);
+            WORKERS.clear();
+            targets = destinations != null ? destinations : List.of();
+            destinations = null;
+        }
+        closeDestinations(targets);
+        
+        AetherBridge.LOGGER.info("正在关闭消息发送线程...");
         try {
-            if (!MESSAGE_EXECUTOR.awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS)) {
-                AetherBridge.LOGGER.warn("消息发送线程池未能在5秒内完全关闭，将强制关闭");
-                MESSAGE_EXECUTOR.shutdownNow();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            for (Thread worker : workers) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining > 0) {
+                    worker.join(remaining);
+                }
+                if (worker.isAlive()) {
+                    AetherBridge.LOGGER.warn("消息发送线程未能在5秒内完全关闭，将强制关闭: " + worker.getName());
+                    worker.interrupt();
+                }
             }
         } catch (InterruptedException e) {
-            AetherBridge.LOGGER.error("关闭消息发送线程池时被中断", e);
+            AetherBridge.LOGGER.error("关闭消息发送线程时被中断", e);
             Thread.currentThread().interrupt();
-            MESSAGE_EXECUTOR.shutdownNow();
+            workers.forEach(Thread::interrupt);
+        }
+        
+        // 未确认的记录留在磁盘上，下次启动时重放
+        synchronized (MessageSender.class) {
+            // 热重载后按新配置重新创建客户端
+            if (retryScheduler != null) {
+                retryScheduler.close();
+                retryScheduler = null;
+            }
+            if (httpTransport != null) {
+                httpTransport.close();
+                httpTransport = null;
+            }
+            if (compressor != null) {
+                compressor.close();
+                compressor = null;
+            }
+            if (outbox != null) {
+                int pending = outbox.pendingCount();
+                if (pending > 0) {
+                    AetherBridge.LOGGER.info("发件箱中有 " + pending + " 条消息未确认，将在下次启动时重新发送");
+                }
+                outbox.close();
+                outbox = null;
+            }
         }
     }
     
-    private static class ChatMessage {
-        private final String playerId;
+    /**
+     * 队列中等待发送的消息
+     */
+    private static final class OutboundMessage {
+        private final UUID playerId;
         private final String playerName;
         private final String message;
-        private String prefix;
+        private final String prefix;
+        // 去重窗口的汇总消息中被省略的重复次数，普通消息为0
+        private final int repeat;
+        // 已序列化的请求体和发件箱记录，仅在启用发件箱时存在
+        private byte[] json;
+        private Outbox.Entry entry;
         
-        public ChatMessage(UUID playerId, String playerName, String message) {
-            this.playerId = playerId != null ? playerId.toString() : null;
+        OutboundMessage(UUID playerId, String playerName, String message, String prefix) {
+            this(playerId, playerName, message, prefix, 0);
+        }
+        
+        OutboundMessage(UUID playerId, String playerName, String message, String prefix, int repeat) {
+            this.playerId = playerId;
             this.playerName = playerName;
             this.message = message;
+            this.prefix = prefix;
+            this.repeat = repeat;
         }
         
-        public void setPrefix(String prefix) {
-            this.prefix = prefix;
+        // 从发件箱重放的消息和游戏事件只有序列化后的请求体
+        OutboundMessage(byte[] json, Outbox.Entry entry) {
+            this(null, null, null, null);
+            this.json = json;
+            this.entry = entry;
+        }
+        
+        /**
+         * 合并同一玩家、同一前缀的两条消息，内容按行拼接
+         * 已写入发件箱的消息、去重汇总消息和事件不参与合并
+         * @return 不能合并时返回null
+         */
+        static OutboundMessage coalesce(OutboundMessage queued, OutboundMessage incoming) {
+            if (queued.entry != null || incoming.entry != null
+                    || queued.message == null || incoming.message == null
+                    || queued.repeat > 0 || incoming.repeat > 0
+                    || !Objects.equals(queued.playerId, incoming.playerId)
+                    || !Objects.equals(queued.playerName, incoming.playerName)
+                    || !Objects.equals(queued.prefix, incoming.prefix)) {
+                return null;
+            }
+            return new OutboundMessage(queued.playerId, queued.playerName,
+                queued.message + "\n" + incoming.message, queued.prefix);
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,715 @@
+package com.devcl.aetherbridge.network;
+
+import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.logging.BridgeLog;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 基于NIO Selector的轻量HTTP/1.1服务器
+ *
+ * 单个选择器线程处理所有连接，不为每个请求占用线程：
+ * - 支持keep-alive和请求流水线，同一连接上的响应按请求顺序返回；
+ *   一个连接上未发出的响应超过MAX_PENDING_RESPONSE_BYTES时停止读取，客户端读走响应后再继续
+ * - 请求头和请求体都有大小上限，超限直接返回413/431并关闭连接
+ * - 请求体直接读入池化的直连缓冲区，连接空闲时归还
+ * - 请求体可以用Content-Length或chunked编码，chunked请求体在缓冲区内原地解码，解码后同样受大小上限限制
+ * - 带有Expect: 100-continue的请求在请求头通过检查、请求体尚未到达时先返回100 Continue
+ *
+ * 处理器在选择器线程上同步执行，必须足够轻量，耗时工作应转交其他线程。
+ */
+public class NioHttpServer {
+    private static final int MAX_HEADER_BYTES = 8192;
+    private static final int MAX_POOLED_BUFFERS = 64;
+    // 每个连接排队中的响应字节数上限，只发请求不读响应的客户端不能让内存无限增长
+    private static final int MAX_PENDING_RESPONSE_BYTES = 64 * 1024;
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    // chunked请求体尚未读完，或解码后超过大小上限
+    private static final int INCOMPLETE = -1;
+    private static final int TOO_LARGE = -2;
+
+    /**
+     * 请求处理器
+     */
+    public interface Handler {
+        Response handle(Request request);
+    }
+
+    private final InetSocketAddress address;
+    private final int maxBodyBytes;
+    private final int maxConnections;
+    private final long keepAliveTimeoutMs;
+    private final Handler handler;
+
+    private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running = false;
+    private int connectionCount = 0;
+    private long lastIdleCheck = 0;
+
+    public NioHttpServer(InetSocketAddress address, int maxBodyBytes, int maxConnections,
+                         long keepAliveTimeoutMs, Handler handler) {
+        this.address = address;
+        this.maxBodyBytes = maxBodyBytes;
+        this.maxConnections = maxConnections;
+        this.keepAliveTimeoutMs = keepAliveTimeoutMs;
+        this.handler = handler;
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(address, 128);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        running = true;
+        thread = new Thread(this::run, "AetherBridge-HttpServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (thread != null) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /**
+     * 实际监听的端口，绑定端口0时可用于获取系统分配的端口
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(1000);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handleKey(key);
+                }
+                selector.selectedKeys().clear();
+                closeIdleConnections();
+            }
+        } catch (IOException e) {
+            AetherBridge.LOGGER.error("HTTP服务器选择器出错", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                AetherBridge.LOGGER.debug("关闭HTTP服务器时出错: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+            } else {
+                if (key.isWritable()) {
+                    flushWrites(key);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read(key);
+                }
+            }
+        } catch (IOException e) {
+            AetherBridge.LOGGER.debug("HTTP连接出错: {}", e.getMessage());
+            closeQuietly(key);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (connectionCount >= maxConnections) {
+                BridgeLog.warn("receiver-connections", "HTTP连接数已达上限 {}，拒绝新连接", maxConnections);
+                channel.close();
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            channel.register(selector, SelectionKey.OP_READ, connection);
+            connectionCount++;
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (connection.in == null) {
+            connection.in = acquireBuffer();
+        }
+        int read = connection.channel.read(connection.in);
+        if (read < 0) {
+            closeQuietly(key);
+            return;
+        }
+        connection.lastActive = System.currentTimeMillis();
+        processRequests(key, connection);
+    }
+
+    /**
+     * 解析缓冲区中所有完整的请求，依次处理并排队响应
+     */
+    private void processRequests(SelectionKey key, Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (!connection.closeAfterWrite) {
+            int start = in.position();
+            int headerEnd = findHeaderEnd(in, start, in.limit());
+            if (headerEnd < 0) {
+                if (in.remaining() > MAX_HEADER_BYTES) {
+                    reject(connection, 431, "request header too large");
+                }
+                break;
+            }
+            if (headerEnd - start > MAX_HEADER_BYTES) {
+                reject(connection, 431, "request header too large");
+                break;
+            }
+            Request request;
+            try {
+                request = parseHeader(in, start, headerEnd, connection);
+            } catch (IllegalArgumentException e) {
+                reject(connection, 400, e.getMessage());
+                break;
+            }
+            String expect = request.header("expect");
+            if (expect != null && !"100-continue".equalsIgnoreCase(expect)) {
+                reject(connection, 417, "expectation failed");
+                break;
+            }
+            String transferEncoding = request.header("transfer-encoding");
+            boolean chunked = transferEncoding != null;
+            if (chunked && !"chunked".equalsIgnoreCase(transferEncoding)) {
+                reject(connection, 501, "unsupported transfer-encoding");
+                break;
+            }
+            if (chunked && request.header("content-length") != null) {
+                // 两种长度同时出现时无法确定请求边界，拒绝而不是猜测
+                reject(connection, 400, "both content-length and transfer-encoding");
+                break;
+            }
+            int contentLength;
+            int requestEnd;
+            if (chunked) {
+                try {
+                    requestEnd = scanChunked(in, headerEnd, in.limit());
+                } catch (IllegalArgumentException e) {
+                    reject(connection, 400, e.getMessage());
+                    break;
+                }
+                if (requestEnd == TOO_LARGE) {
+                    reject(connection, 413, "request body too large");
+                    break;
+                }
+                contentLength = requestEnd != INCOMPLETE ? decodeChunked(in, headerEnd, requestEnd) : 0;
+            } else {
+                try {
+                    String value = request.header("content-length");
+                    contentLength = value != null ? Integer.parseInt(value.trim()) : 0;
+                } catch (NumberFormatException e) {
+                    reject(connection, 400, "invalid content-length");
+                    break;
+                }
+                if (contentLength < 0 || contentLength > maxBodyBytes) {
+                    reject(connection, 413, "request body too large");
+                    break;
+                }
+                requestEnd = in.limit() - headerEnd >= contentLength ? headerEnd + contentLength : INCOMPLETE;
+            }
+            if (requestEnd == INCOMPLETE) {
+                if (start == 0 && in.limit() == in.capacity()) {
+                    // chunked的分块标记占满了缓冲区，继续等待也读不进更多数据
+                    reject(connection, 413, "request body too large");
+                    break;
+                }
+                if (expect != null && !connection.continued) {
+                    // 请求头已经通过检查，告诉客户端可以发送请求体，每个请求只发一次
+                    connection.continued = true;
+                    connection.queue(ByteBuffer.wrap(CONTINUE));
+                }
+                // 请求体尚未读完，回到请求开头等待更多数据，parseHeader已经把位置移到了请求头之后
+                in.position(start);
+                break;
+            }
+            connection.continued = false;
+            ByteBuffer body = in.duplicate();
+            body.position(headerEnd).limit(headerEnd + contentLength);
+            request.body = body.slice().asReadOnlyBuffer();
+            in.position(requestEnd);
+
+            Response response;
+            try {
+                response = handler.handle(request);
+            } catch (Exception e) {
+                AetherBridge.LOGGER.error("处理HTTP请求失败", e);
+                response = new Response(500).json("{\"error\":\"internal server error\"}");
+            }
+            connection.closeAfterWrite = !request.keepAlive;
+            connection.queue(response.encode(request.keepAlive));
+        }
+        in.compact();
+        if (in.position() == 0) {
+            // 连接上没有未处理的数据，缓冲区归还池中
+            releaseBuffer(in);
+            connection.in = null;
+        }
+        flushWrites(key);
+    }
+
+    private void reject(Connection connection, int status, String message) {
+        Response response = new Response(status).json("{\"error\":\"" + message + "\"}");
+        connection.closeAfterWrite = true;
+        connection.queue(response.encode(false));
+    }
+
+    private Request parseHeader(ByteBuffer in, int start, int end, Connection connection) {
+        byte[] raw = new byte[end - start - 4];
+        in.get(start, raw);
+        String[] lines = new String(raw, StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+            throw new IllegalArgumentException("malformed request line");
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("malformed header");
+            }
+            headers.putIfAbsent(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                lines[i].substring(colon + 1).trim());
+        }
+        String target = requestLine[1];
+        int query = target.indexOf('?');
+        String path = query >= 0 ? target.substring(0, query) : target;
+        String version = requestLine[2];
+        String connectionHeader = headers.getOrDefault("connection", "");
+        boolean keepAlive = "HTTP/1.1".equals(version)
+            ? !"close".equalsIgnoreCase(connectionHeader)
+            : "keep-alive".equalsIgnoreCase(connectionHeader);
+        in.position(end);
+        return new Request(requestLine[0], path, headers, keepAlive, connection.channel);
+    }
+
+    /**
+     * 检查chunked请求体是否完整，不修改缓冲区
+     * @return 请求体（包括结尾的trailer）之后的位置，尚未读完时返回INCOMPLETE，解码后超过上限时返回TOO_LARGE
+     */
+    private int scanChunked(ByteBuffer in, int from, int to) {
+        int position = from;
+        long size = 0;
+        while (true) {
+            int lineEnd = findLineEnd(in, position, to);
+            if (lineEnd < 0) {
+                return INCOMPLETE;
+            }
+            int chunkSize = parseChunkSize(in, position, lineEnd - 2);
+            size += chunkSize;
+            if (size > maxBodyBytes) {
+                return TOO_LARGE;
+            }
+            position = lineEnd;
+            if (chunkSize == 0) {
+                break;
+            }
+            if (to - position < chunkSize + 2) {
+                return INCOMPLETE;
+            }
+            if (in.get(position + chunkSize) != '\r' || in.get(position + chunkSize + 1) != '\n') {
+                throw new IllegalArgumentException("malformed chunk");
+            }
+            position += chunkSize + 2;
+        }
+        // 跳过trailer，以空行结束
+        while (true) {
+            int lineEnd = findLineEnd(in, position, to);
+            if (lineEnd < 0) {
+                return INCOMPLETE;
+            }
+            if (lineEnd - position == 2) {
+                return lineEnd;
+            }
+            position = lineEnd;
+        }
+    }
+
+    /**
+     * 把scanChunked确认完整的请求体原地解码，各分块的数据依次前移到from开始的连续区域
+     * @return 解码后的字节数
+     */
+    private static int decodeChunked(ByteBuffer in, int from, int end) {
+        int read = from;
+        int write = from;
+        while (true) {
+            int lineEnd = findLineEnd(in, read, end);
+            int chunkSize = parseChunkSize(in, read, lineEnd - 2);
+            if (chunkSize == 0) {
+                return write - from;
+            }
+            // 目标位置总在源位置之前，同一缓冲区内的复制允许区域重叠
+            in.put(write, in, lineEnd, chunkSize);
+            write += chunkSize;
+            read = lineEnd + chunkSize + 2;
+        }
+    }
+
+    // 分块大小行的格式为十六进制长度，后面可以跟;开始的扩展
+    private static int parseChunkSize(ByteBuffer in, int from, int to) {
+        long size = 0;
+        int digits = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(in.get(i), 16);
+            if (digit < 0) {
+                if (digits > 0 && (in.get(i) == ';' || in.get(i) == ' ' || in.get(i) == '\t')) {
+                    break;
+                }
+                throw new IllegalArgumentException("malformed chunk size");
+            }
+            size = size * 16 + digit;
+            if (++digits > 8 || size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("malformed chunk size");
+            }
+        }
+        if (digits == 0) {
+            throw new IllegalArgumentException("malformed chunk size");
+        }
+        return (int) size;
+    }
+
+    // 返回from开始的一行在\r\n之后的位置，没有完整的一行时返回-1
+    private static int findLineEnd(ByteBuffer in, int from, int to) {
+        for (int i = from; i + 1 < to; i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n') {
+                return i + 2;
+            }
+        }
+        return -1;
+    }
+
+    private static int findHeaderEnd(ByteBuffer in, int from, int to) {
+        for (int i = from; i + 3 < to; i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    private void flushWrites(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        while (!connection.out.isEmpty()) {
+            ByteBuffer head = connection.out.peek();
+            connection.channel.write(head);
+            if (head.hasRemaining()) {
+                // 积压的响应超过上限时不再读取新的请求，缓冲区中已有的请求数量受缓冲区大小限制
+                key.interestOps(connection.pendingBytes > MAX_PENDING_RESPONSE_BYTES
+                    ? SelectionKey.OP_WRITE : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            connection.out.poll();
+            connection.pendingBytes -= head.limit();
+        }
+        if (connection.closeAfterWrite) {
+            closeQuietly(key);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheck < 1000) {
+            return;
+        }
+        lastIdleCheck = now;
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection
+                    && now - ((Connection) key.attachment()).lastActive > keepAliveTimeoutMs) {
+                closeQuietly(key);
+            }
+        }
+    }
+
+    private void closeQuietly(SelectionKey key) {
+        key.cancel();
+        Object attachment = key.attachment();
+        try {
+            if (attachment instanceof Connection) {
+                Connection connection = (Connection) attachment;
+                if (connection.in != null) {
+                    releaseBuffer(connection.in);
+                    connection.in = null;
+                }
+                if (connection.channel.isOpen()) {
+                    connectionCount--;
+                }
+                connection.channel.close();
+            }
+        } catch (IOException e) {
+            // 忽略关闭错误
+        }
+    }
+
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(MAX_HEADER_BYTES + maxBodyBytes);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+            bufferPool.add(buffer);
+        }
+    }
+
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        // out中尚未发出的响应字节数
+        private int pendingBytes;
+        private ByteBuffer in;
+        private long lastActive = System.currentTimeMillis();
+        private boolean closeAfterWrite = false;
+        // 缓冲区中未读完的请求已经收到过100 Continue
+        private boolean continued = false;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void queue(ByteBuffer response) {
+            out.add(response);
+            pendingBytes += response.limit();
+        }
+    }
+
+    /**
+     * HTTP请求
+     * 请求体是池化缓冲区的只读视图，只在处理器执行期间有效
+     */
+    public static final class Request {
+        private final String method;
+        private final String path;
+        private final Map<String, String> headers;
+        private final boolean keepAlive;
+        private final SocketChannel channel;
+        private ByteBuffer body;
+
+        Request(String method, String path, Map<String, String> headers, boolean keepAlive, SocketChannel channel) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+            this.keepAlive = keepAlive;
+            this.channel = channel;
+        }
+
+        public String method() { return method; }
+        public String path() { return path; }
+        public ByteBuffer body() { return body; }
+
+        /**
+         * 获取请求头，名称不区分大小写
+         */
+        public String header(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        public String remoteAddress() {
+            try {
+                return ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+            } catch (IOException e) {
+                return "unknown";
+            }
+        }
+    }
+
+    /**
+     * 预先编码的一组响应头，可以在多个响应之间共用
+     */
+    public static final class HeaderSet {
+        private final byte[] encoded;
+
+        private HeaderSet(byte[] encoded) {
+            this.encoded = encoded;
+        }
+
+        /**
+         * @param namesAndValues 依次为名称和值
+         */
+        public static HeaderSet of(String... namesAndValues) {
+            if (namesAndValues.length % 2 != 0) {
+                throw new IllegalArgumentException("响应头的名称和值必须成对出现");
+            }
+            StringBuilder out = new StringBuilder();
+            for (int i = 0; i < namesAndValues.length; i += 2) {
+                out.append(namesAndValues[i]).append(": ").append(namesAndValues[i + 1]).append("\r\n");
+            }
+            return new HeaderSet(out.toString().getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    /**
+     * HTTP响应
+     *
+     * 内容固定的响应可以在启动时调用prepare()预先编码，之后每次发送只复制缓冲区的视图，
+     * 不再拼接响应头、不再分配字节数组。预编码后的响应不能再修改，可以在多个线程之间共用。
+     */
+    public static final class Response {
+        private final int status;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private HeaderSet headerSet;
+        private byte[] body = new byte[0];
+        // 预编码结果，分别对应keep-alive和close
+        private ByteBuffer preparedKeepAlive;
+        private ByteBuffer preparedClose;
+
+        public Response(int status) {
+            this.status = status;
+        }
+
+        public Response header(String name, String value) {
+            checkMutable();
+            headers.put(name, value);
+            return this;
+        }
+
+        /**
+         * 附加一组预先编码的响应头，写在逐个设置的响应头之后
+         */
+        public Response headers(HeaderSet set) {
+            checkMutable();
+            headerSet = set;
+            return this;
+        }
+
+        public Response json(String json) {
+            checkMutable();
+            headers.put("Content-Type", "application/json");
+            body = json.getBytes(StandardCharsets.UTF_8);
+            return this;
+        }
+
+        /**
+         * 设置任意类型的响应体
+         */
+        public Response body(String contentType, byte[] content) {
+            checkMutable();
+            headers.put("Content-Type", contentType);
+            body = content;
+            return this;
+        }
+
+        /**
+         * 预先编码响应，之后不能再修改
+         */
+        public Response prepare() {
+            if (preparedKeepAlive == null) {
+                preparedKeepAlive = toDirect(encodeNow(true));
+                preparedClose = toDirect(encodeNow(false));
+            }
+            return this;
+        }
+
+        public int status() {
+            return status;
+        }
+
+        ByteBuffer encode(boolean keepAlive) {
+            if (preparedKeepAlive != null) {
+                return (keepAlive ? preparedKeepAlive : preparedClose).duplicate();
+            }
+            return encodeNow(keepAlive);
+        }
+
+        private ByteBuffer encodeNow(boolean keepAlive) {
+            StringBuilder head = new StringBuilder(128)
+                .append("HTTP/1.1 ").append(status).append(' ').append(reasonPhrase(status)).append("\r\n");
+            headers.forEach((name, value) -> head.append(name).append(": ").append(value).append("\r\n"));
+            StringBuilder tail = new StringBuilder(48);
+            if (status != 204) {
+                tail.append("Content-Length: ").append(body.length).append("\r\n");
+            }
+            tail.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+            byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+            byte[] setBytes = headerSet != null ? headerSet.encoded : new byte[0];
+            byte[] tailBytes = tail.toString().getBytes(StandardCharsets.ISO_8859_1);
+            ByteBuffer buffer = ByteBuffer.allocate(headBytes.length + setBytes.length + tailBytes.length + body.length);
+            buffer.put(headBytes).put(setBytes).put(tailBytes).put(body).flip();
+            return buffer;
+        }
+
+        private static ByteBuffer toDirect(ByteBuffer heap) {
+            // 直连缓冲区写入套接字时不需要再复制到临时缓冲区
+            ByteBuffer direct = ByteBuffer.allocateDirect(heap.remaining());
+            direct.put(heap).flip();
+            return direct.asReadOnlyBuffer();
+        }
+
+        private void checkMutable() {
+            if (preparedKeepAlive != null) {
+                throw new IllegalStateException("响应已预先编码，不能再修改");
+            }
+        }
+
+        private static String reasonPhrase(int status) {
+            switch (status) {
+                case 200: return "OK";
+                case 204: return "No Content";
+                case 400: return "Bad Request";
+                case 403: return "Forbidden";
+                case 404: return "Not Found";
+                case 405: return "Method Not Allowed";
+                case 413: return "Payload Too Large";
+                case 417: return "Expectation Failed";
+                case 429: return "Too Many Requests";
+                case 431: return "Request Header Fields Too Large";
+                case 500: return "Internal Server Error";
+                case 501: return "Not Implemented";
+                case 503: return "Service Unavailable";
+                default: return "Status";
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.devcl.aetherbridge.network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+
+/**
+ * 有界环形缓冲队列
+ *
+ * 位于聊天监听器和HTTP发送线程之间，容量固定，队列满时按溢出策略处理新消息，
+ * 保证远程接口变慢时积压不会无限增长。同时统计队列深度、丢弃数和入队耗时。
+ */
+public class OutboundQueue<T> {
+    /**
+     * 队列满时的处理策略
+     */
+    public enum OverflowPolicy {
+        // 丢弃队列中最旧的消息
+        DROP_OLDEST("drop-oldest"),
+        // 丢弃新到达的消息
+        DROP_NEWEST("drop-newest"),
+        // 尝试与队列中可合并的消息合并，无法合并时丢弃最旧的消息
+        COALESCE("coalesce"),
+        // 阻塞等待空位，超时后丢弃新消息
+        BLOCK("block");
+
+        private final String configName;
+
+        OverflowPolicy(String configName) {
+            this.configName = configName;
+        }
+
+        public String getConfigName() {
+            return configName;
+        }
+
+        public static OverflowPolicy fromConfig(String name) {
+            for (OverflowPolicy policy : values()) {
+                if (policy.configName.equalsIgnoreCase(name)) {
+                    return policy;
+                }
+            }
+            throw new IllegalStateException("未知的队列溢出策略: " + name);
+        }
+    }
+
+    private final Object[] items;
+    private int head = 0;
+    private int count = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private final OverflowPolicy policy;
+    private final long blockTimeoutNanos;
+    private final BinaryOperator<T> coalescer;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder enqueueNanos = new LongAdder();
+    private final AtomicLong maxEnqueueNanos = new AtomicLong();
+
+    /**
+     * @param capacity 队列容量
+     * @param policy 溢出策略
+     * @param blockTimeoutMillis BLOCK策略下的最长等待时间
+     * @param coalescer COALESCE策略下的合并函数，返回null表示两条消息不能合并
+     */
+    public OutboundQueue(int capacity, OverflowPolicy policy, long blockTimeoutMillis, BinaryOperator<T> coalescer) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("队列容量必须大于0");
+        }
+        this.items = new Object[capacity];
+        this.policy = policy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        this.coalescer = coalescer;
+    }
+
+    /**
+     * 入队
+     * @return 消息已进入队列（或已与队列中的消息合并）时返回true，被丢弃时返回false
+     */
+    public boolean offer(T item) {
+        long start = System.nanoTime();
+        boolean accepted;
+        try {
+            accepted = policy == OverflowPolicy.BLOCK ? offerBlocking(item, blockTimeoutNanos) : offerNonBlocking(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        long elapsed = System.nanoTime() - start;
+        enqueueNanos.add(elapsed);
+        maxEnqueueNanos.accumulateAndGet(elapsed, Math::max);
+        if (accepted) {
+            enqueued.increment();
+        } else {
+            dropped.increment();
+        }
+        return accepted;
+    }
+
+    private boolean offerNonBlocking(T item) {
+        lock.lock();
+        try {
+            if (count == items.length) {
+                switch (policy) {
+                    case DROP_NEWEST:
+                        return false;
+                    case COALESCE:
+                        if (tryCoalesce(item)) {
+                            return true;
+                        }
+                        // 无法合并时按丢弃最旧处理
+                        removeHead();
+                        dropped.increment();
+                        break;
+                    default:
+                        removeHead();
+                        dropped.increment();
+                        break;
+                }
+            }
+            insertTail(item);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 不论溢出策略，等待空位后入队
+     * 用于可以承受等待的内部生产者（例如发件箱重放），不计入入队统计
+     * @return 超时返回false
+     */
+    public boolean put(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        return offerBlocking(item, unit.toNanos(timeout));
+    }
+
+    private boolean offerBlocking(T item, long timeoutNanos) throws InterruptedException {
+        long remaining = timeoutNanos;
+        lock.lockInterruptibly();
+        try {
+            while (count == items.length) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            insertTail(item);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 调用方需持有锁，从队尾向前查找第一条可以合并的消息
+    @SuppressWarnings("unchecked")
+    private boolean tryCoalesce(T item) {
+        if (coalescer == null) {
+            return false;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            int index = (head + i) % items.length;
+            T merged = coalescer.apply((T) items[index], item);
+            if (merged != null) {
+                items[index] = merged;
+                coalesced.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 调用方需持有锁
+    private void insertTail(T item) {
+        items[(head + count) % items.length] = item;
+        count++;
+        notEmpty.signal();
+    }
+
+    // 调用方需持有锁
+    @SuppressWarnings("unchecked")
+    private T removeHead() {
+        T item = (T) items[head];
+        items[head] = null;
+        head = (head + 1) % items.length;
+        count--;
+        notFull.signal();
+        return item;
+    }
+
+    /**
+     * 出队，队列为空时最多等待指定时间
+     * @return 超时返回null
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return removeHead();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前队列深度
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return items.length;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * 获取队列统计信息快照
+     */
+    public Stats getStats() {
+        long total = enqueued.sum() + dropped.sum();
+        long avg = total > 0 ? enqueueNanos.sum() / total : 0;
+        return new Stats(size(), items.length, enqueued.sum(), dropped.sum(), coalesced.sum(),
+            avg, maxEnqueueNanos.get());
+    }
+
+    /**
+     * 队列统计信息
+     */
+    public static class Stats {
+        public final int depth;
+        public final int capacity;
+        public final long enqueued;
+        public final long dropped;
+        public final long coalesced;
+        public final long avgEnqueueNanos;
+        public final long maxEnqueueNanos;
+
+        Stats(int depth, int capacity, long enqueued, long dropped, long coalesced,
+              long avgEnqueueNanos, long maxEnqueueNanos) {
+            this.depth = depth;
+            this.capacity = capacity;
+            this.enqueued = enqueued;
+            this.dropped = dropped;
+            this.coalesced = coalesced;
+            this.avgEnqueueNanos = avgEnqueueNanos;
+            this.maxEnqueueNanos = maxEnqueueNanos;
+        }
+    }
+}
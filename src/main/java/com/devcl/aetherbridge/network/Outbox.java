@@ -0,0 +1,401 @@
+package com.devcl.aetherbridge.network;
+
+import com.devcl.aetherbridge.AetherBridge;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+/**
+ * 发送消息的磁盘预写日志
+ *
+ * 消息在发送前追加到内存映射的分段文件中，收到2xx响应后在原位置标记为已确认。
+ * 段文件写满后切换到新段；旧段中所有记录都被确认后直接删除。
+ * 大部分记录已确认的旧段由后台线程定期压缩：剩余的记录搬到当前段后删除旧段。
+ * 对端拒绝或被丢弃、重发也不会送达的记录写入死信文件后确认。
+ * 服务器启动时把上次遗留的未确认记录搬到新段并重新发送，保证至少一次送达。
+ *
+ * 记录格式: [int 负载长度][byte 状态][负载]，长度为0表示段内数据结束。
+ * 先写状态和负载、最后写长度，写到一半崩溃的记录会被当作段尾忽略。
+ */
+public class Outbox {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_BYTES = 5;
+    private static final byte STATE_PENDING = 0;
+    private static final byte STATE_ACKED = 1;
+    private static final String DEAD_LETTER_FILE = "dead-letter.jsonl";
+    private static final long COMPACT_INTERVAL_SECONDS = 60;
+    // 未确认记录不超过段内记录数的这个百分比时压缩该段
+    private static final int COMPACT_MAX_PENDING_PERCENT = 10;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final ScheduledExecutorService compactor;
+    // 死信文件单独加锁，写文件时不占用发件箱的锁
+    private final Object deadLetterLock = new Object();
+    // 打开时已存在的段，等待重放
+    private final List<Path> legacySegments = new ArrayList<>();
+    private final List<Segment> sealedSegments = new ArrayList<>();
+    private Segment active;
+    private long nextSegmentId;
+    private boolean closed = false;
+
+    private Outbox(Path directory, int segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "AetherBridge-Outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 打开日志目录，已有的段文件会保留下来等待 {@link #replay} 处理
+     */
+    public static Outbox open(Path directory, int segmentBytes) throws IOException {
+        Files.createDirectories(directory);
+        Outbox outbox = new Outbox(directory, segmentBytes);
+        long maxId = -1;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                long id = parseSegmentId(file);
+                if (id < 0) {
+                    continue;
+                }
+                outbox.legacySegments.add(file);
+                maxId = Math.max(maxId, id);
+            }
+        }
+        outbox.legacySegments.sort(Path::compareTo);
+        outbox.nextSegmentId = maxId + 1;
+        outbox.active = outbox.createSegment();
+        outbox.compactor.scheduleWithFixedDelay(outbox::compactSafely,
+            COMPACT_INTERVAL_SECONDS, COMPACT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        AetherBridge.LOGGER.info("发件箱已打开: " + directory + ", 待重放段数=" + outbox.legacySegments.size());
+        return outbox;
+    }
+
+    /**
+     * 追加一条待发送记录
+     * @return 记录位置，发送成功后交给 {@link #ack} 确认
+     */
+    public synchronized Entry append(byte[] payload) throws IOException {
+        if (closed) {
+            throw new IOException("发件箱已关闭");
+        }
+        // 段尾需要留出4字节的结束标记
+        if (HEADER_BYTES + payload.length + 4 > segmentBytes) {
+            throw new IOException("消息过大，无法写入发件箱: " + payload.length + " 字节");
+        }
+        Entry entry = new Entry();
+        write(payload, entry);
+        return entry;
+    }
+
+    /**
+     * 确认一条记录已送达
+     */
+    public synchronized void ack(Entry entry) {
+        Segment segment = entry.segment;
+        if (segment.closed || segment.buffer.get(entry.position + 4) == STATE_ACKED) {
+            return;
+        }
+        segment.buffer.put(entry.position + 4, STATE_ACKED);
+        if (segment.pending.decrementAndGet() == 0 && segment != active) {
+            // 已封存的段全部确认后直接回收
+            sealedSegments.remove(segment);
+            segment.delete();
+        }
+    }
+
+    /**
+     * 把一条重发也不会送达的记录写入死信文件，然后确认
+     * 用于对端拒绝（不可重试的4xx）的消息，避免它们一直占用段文件、
+     * 在每次启动时重放后再次被拒绝。死信文件为发件箱目录下的dead-letter.jsonl，每行一条消息，
+     * 超过段大小时改名为dead-letter.jsonl.1，只保留一个旧文件。写入失败时记录保持未确认。
+     * @return 是否写入了死信文件，记录已确认或发件箱已关闭时为false
+     */
+    public boolean deadLetter(Entry entry) {
+        byte[] payload;
+        synchronized (this) {
+            Segment segment = entry.segment;
+            if (segment.closed || segment.buffer.get(entry.position + 4) == STATE_ACKED) {
+                return false;
+            }
+            payload = new byte[segment.buffer.getInt(entry.position)];
+            segment.buffer.get(entry.position + HEADER_BYTES, payload);
+        }
+        synchronized (deadLetterLock) {
+            Path file = directory.resolve(DEAD_LETTER_FILE);
+            try {
+                if (Files.exists(file) && Files.size(file) + payload.length + 1 > segmentBytes) {
+                    Files.move(file, directory.resolve(DEAD_LETTER_FILE + ".1"), StandardCopyOption.REPLACE_EXISTING);
+                }
+                byte[] line = new byte[payload.length + 1];
+                System.arraycopy(payload, 0, line, 0, payload.length);
+                line[payload.length] = '\n';
+                Files.write(file, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                AetherBridge.LOGGER.warn("写入发件箱死信文件失败，消息将在下次启动时重放: " + e.getMessage());
+                return false;
+            }
+        }
+        ack(entry);
+        return true;
+    }
+
+    /**
+     * 压缩大部分记录已确认的封存段
+     *
+     * 把段中剩余的未确认记录复制到当前段，原有的Entry改为指向新位置，之后删除旧段。
+     * 少数长时间未确认的记录（例如重试耗尽、等待下次启动重放的消息）不会让整个段文件一直留在磁盘上。
+     *
+     * @return 删除的段数
+     */
+    public synchronized int compact() throws IOException {
+        if (closed) {
+            return 0;
+        }
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment segment : sealedSegments) {
+            if (segment.pending.get() * 100L <= (long) segment.entries.size() * COMPACT_MAX_PENDING_PERCENT) {
+                candidates.add(segment);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        int moved = 0;
+        for (Segment segment : candidates) {
+            for (Entry entry : segment.entries) {
+                // 已经搬走或确认的记录跳过
+                if (entry.segment != segment || segment.buffer.get(entry.position + 4) == STATE_ACKED) {
+                    continue;
+                }
+                byte[] payload = new byte[segment.buffer.getInt(entry.position)];
+                segment.buffer.get(entry.position + HEADER_BYTES, payload);
+                int oldPosition = entry.position;
+                write(payload, entry);
+                // 旧段删除失败时，下次启动重放也不会重复发送搬走的记录
+                segment.buffer.put(oldPosition + 4, STATE_ACKED);
+                moved++;
+            }
+        }
+        // 复制出的记录先落盘，再删除旧段
+        active.buffer.force();
+        for (Segment segment : candidates) {
+            sealedSegments.remove(segment);
+            segment.delete();
+        }
+        AetherBridge.LOGGER.debug("发件箱压缩完成: 删除 " + candidates.size() + " 个段，搬移 " + moved + " 条记录");
+        return candidates.size();
+    }
+
+    /**
+     * 重放上次遗留的未确认记录
+     *
+     * 逐条读取旧段中的未确认记录，复制到当前段后交给sink，旧段处理完后删除。
+     * 整个过程一次只在内存中保留一条记录。
+     *
+     * @param sink 接收记录负载和新位置，返回false表示停止重放（例如正在关闭）
+     * @return 重放的记录数
+     */
+    public int replay(BiPredicate<byte[], Entry> sink) throws IOException {
+        List<Path> segments;
+        synchronized (this) {
+            segments = new ArrayList<>(legacySegments);
+        }
+        int replayed = 0;
+        for (Path file : segments) {
+            try (FileChannel channel = FileChannel.open(file)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                long position = 0;
+                long size = channel.size();
+                while (position + HEADER_BYTES <= size) {
+                    header.clear();
+                    channel.read(header, position);
+                    int length = header.getInt(0);
+                    if (length <= 0 || position + HEADER_BYTES + length > size) {
+                        break;
+                    }
+                    if (header.get(4) == STATE_PENDING) {
+                        ByteBuffer payload = ByteBuffer.allocate(length);
+                        channel.read(payload, position + HEADER_BYTES);
+                        byte[] bytes = payload.array();
+                        if (!sink.test(bytes, append(bytes))) {
+                            // 已复制的记录会在下次启动时再次重放
+                            return replayed;
+                        }
+                        replayed++;
+                    }
+                    position += HEADER_BYTES + length;
+                }
+            }
+            synchronized (this) {
+                legacySegments.remove(file);
+            }
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // 删除失败时这些记录会在下次启动时再次重放
+                AetherBridge.LOGGER.warn("删除已重放的发件箱段失败: " + file.getFileName());
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * 当前未确认的记录数（不含等待重放的旧段）
+     */
+    public synchronized int pendingCount() {
+        int pending = active.pending.get();
+        for (Segment segment : sealedSegments) {
+            pending += segment.pending.get();
+        }
+        return pending;
+    }
+
+    /**
+     * 当前段文件数量
+     */
+    public synchronized int segmentCount() {
+        return legacySegments.size() + sealedSegments.size() + 1;
+    }
+
+    /**
+     * 刷盘并关闭所有段，未确认的记录留在磁盘上
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        compactor.shutdownNow();
+        for (Segment segment : sealedSegments) {
+            segment.close();
+        }
+        sealedSegments.clear();
+        if (active.pending.get() == 0) {
+            active.delete();
+        } else {
+            active.close();
+        }
+    }
+
+    // 写入一条记录并让entry指向它，调用方需持有锁
+    private void write(byte[] payload, Entry entry) throws IOException {
+        int recordBytes = HEADER_BYTES + payload.length;
+        if (active.writePosition + recordBytes + 4 > segmentBytes) {
+            rotate();
+        }
+        Segment segment = active;
+        int position = segment.writePosition;
+        segment.buffer.put(position + 4, STATE_PENDING);
+        segment.buffer.put(position + HEADER_BYTES, payload);
+        segment.buffer.putInt(position, payload.length);
+        segment.writePosition += recordBytes;
+        segment.pending.incrementAndGet();
+        segment.entries.add(entry);
+        entry.segment = segment;
+        entry.position = position;
+    }
+
+    private void compactSafely() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            // 定时任务抛出异常后不会再执行，这里只记录
+            AetherBridge.LOGGER.warn("压缩发件箱失败: " + e.getMessage());
+        }
+    }
+
+    // 调用方需持有锁
+    private void rotate() throws IOException {
+        Segment previous = active;
+        previous.buffer.force();
+        active = createSegment();
+        if (previous.pending.get() == 0) {
+            previous.delete();
+        } else {
+            sealedSegments.add(previous);
+        }
+        AetherBridge.LOGGER.debug("发件箱段已切换: " + active.file.getFileName());
+    }
+
+    private Segment createSegment() throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", nextSegmentId++, SEGMENT_SUFFIX));
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            // setLength会用0填充，未写入的位置即为段尾标记
+            raf.setLength(segmentBytes);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            return new Segment(file, buffer);
+        }
+    }
+
+    private static long parseSegmentId(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 一条记录在日志中的位置，压缩时会随记录一起移动，只在持有发件箱的锁时读写
+     */
+    public static final class Entry {
+        private Segment segment;
+        private int position;
+
+        private Entry() {
+        }
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger pending = new AtomicInteger();
+        // 写入过的所有记录，压缩时据此更新仍未确认的Entry
+        private final List<Entry> entries = new ArrayList<>();
+        private int writePosition = 0;
+        private boolean closed = false;
+
+        Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        void close() {
+            if (!closed) {
+                buffer.force();
+                closed = true;
+            }
+        }
+
+        void delete() {
+            closed = true;
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Windows下映射未释放时无法删除，下次启动重放时会清理
+                AetherBridge.LOGGER.debug("删除发件箱段失败: " + file.getFileName());
+            }
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.devcl.aetherbridge.network;
+
+import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.logging.BridgeLog;
+import com.devcl.aetherbridge.metrics.LatencyHistogram;
+import com.devcl.aetherbridge.metrics.Metrics;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 出站HTTP请求的重试调度，同一个目标的所有发送线程共用一个实例
+ *
+ * - 可重试的失败（429、502、503、504和网络错误）按指数退避加随机抖动重试，
+ *   429/503带有Retry-After时至少等待其给出的时长，并让熔断器在这段时间内保持打开
+ * - 连续失败达到阈值后熔断器打开，新的请求和等待重试的请求都转入保留队列，
+ *   不再占用并发名额和定时器
+ * - 打开时长结束后由发送线程从保留队列取出一个请求作为探测，成功后按顺序发出其余请求，
+ *   避免对端恢复时被所有积压的重试同时打垮
+ *
+ * 保留队列已满时发送线程暂停从发送队列取消息，积压留在发送队列中按其溢出策略处理。
+ *
+ * 使用二进制格式或压缩的请求带有一个普通JSON的备用请求。对端返回415时立即改发备用请求，
+ * 不计入重试和熔断，并记录对端不接受这些编码，之后的请求由发送方直接使用普通JSON。
+ */
+public final class RetryScheduler {
+    private final HttpTransport transport;
+    private final ModConfig.RetryConfig config;
+    private final CircuitBreaker breaker;
+    private final ScheduledExecutorService timer;
+    private final ArrayDeque<Delivery> held = new ArrayDeque<>();
+    // 出站目标名称和日志前缀，主目标分别为null和空字符串
+    private final String name;
+    private final String label;
+    private volatile boolean closed = false;
+    // 对端对二进制格式或压缩的请求返回过415
+    private volatile boolean encodingRejected = false;
+
+    public RetryScheduler(HttpTransport transport, ModConfig.RetryConfig config) {
+        this(transport, config, null);
+    }
+
+    /**
+     * @param name 出站目标名称，用于线程名和日志；主目标为null
+     */
+    public RetryScheduler(HttpTransport transport, ModConfig.RetryConfig config, String name) {
+        this.transport = transport;
+        this.name = name;
+        this.label = name != null ? "[" + name + "] " : "";
+        this.config = config;
+        this.breaker = new CircuitBreaker(
+            config.getCircuitFailureThreshold(),
+            TimeUnit.MILLISECONDS.toNanos(config.getCircuitOpenMs()),
+            TimeUnit.MILLISECONDS.toNanos(config.getCircuitMaxOpenMs())
+        );
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name != null ? "AetherBridge-Retry-" + name : "AetherBridge-Retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 发送一个请求：占用一个并发名额，熔断器不允许发送时转入保留队列
+     * 名额从发出到最终结果（包括重试等待）期间一直被占用，转入保留队列时释放
+     *
+     * @param wait 是否等待本轮发送结束（送达、失败或转入保留队列），关闭过程中不再等待
+     */
+    public void deliver(Delivery delivery, boolean wait) throws InterruptedException {
+        transport.acquire();
+        if (closed) {
+            transport.release();
+            return;
+        }
+        if (!breaker.allowRequest()) {
+            transport.release();
+            // 从保留队列取出的请求放回队首，保持原有顺序
+            hold(delivery, delivery.held);
+            return;
+        }
+        CompletableFuture<Void> settled = new CompletableFuture<>();
+        delivery.settled = settled;
+        send(delivery);
+        if (wait) {
+            try {
+                settled.get();
+            } catch (ExecutionException e) {
+                // settled只会正常完成
+            }
+        }
+    }
+
+    /**
+     * 取出一个可以重新发送的保留请求
+     * 熔断器关闭时按顺序取出；打开时长结束后取出一个，由deliver作为探测请求发出
+     * @return 没有保留请求或熔断器仍在打开时返回null
+     */
+    public synchronized Delivery pollHeld() {
+        if (held.isEmpty()) {
+            return null;
+        }
+        CircuitBreaker.State state = breaker.getState();
+        if (state == CircuitBreaker.State.HALF_OPEN
+                || (state == CircuitBreaker.State.OPEN && breaker.remainingOpenNanos() > 0)) {
+            return null;
+        }
+        Delivery delivery = held.pollFirst();
+        notifyAll();
+        return delivery;
+    }
+
+    /**
+     * 保留队列已满时等待，最多等待timeoutMs
+     */
+    public synchronized void awaitHoldCapacity(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (!closed && held.size() >= config.getHoldCapacity()) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return;
+            }
+            wait(remaining);
+        }
+    }
+
+    public synchronized boolean isHoldFull() {
+        return held.size() >= config.getHoldCapacity();
+    }
+
+    public synchronized int getHeldCount() {
+        return held.size();
+    }
+
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    /**
+     * 对端是否拒绝过二进制格式或压缩的请求体，为true时发送方应当直接发送普通JSON
+     */
+    public boolean isEncodingRejected() {
+        return encodingRejected;
+    }
+
+    /**
+     * 关闭调度器
+     * 保留队列和等待重试的请求不再发送，它们对应的发件箱记录会在下次启动时重放
+     */
+    public void close() {
+        closed = true;
+        // 已安排的重试仍会在到期时执行，以便释放名额、唤醒等待中的发送线程
+        timer.shutdown();
+        synchronized (this) {
+            held.clear();
+            notifyAll();
+        }
+    }
+
+    private void send(Delivery delivery) {
+        long start = System.nanoTime();
+        LatencyHistogram latency = delivery.attempt == 0 ? Metrics.SEND_LATENCY : Metrics.RETRY_LATENCY;
+        transport.client().sendAsync(delivery.request, HttpResponse.BodyHandlers.ofString())
+            .whenComplete((response, error) -> {
+                latency.recordSince(start);
+                if (error != null) {
+                    retry(delivery, String.valueOf(error.getMessage()), 0);
+                } else {
+                    onResponse(delivery, response);
+                }
+            });
+    }
+
+    private void onResponse(Delivery delivery, HttpResponse<String> response) {
+        int status = response.statusCode();
+        if (status >= 200 && status < 300) {
+            breaker.onSuccess();
+            BridgeLog.trace("outbound.sent", "status", status, "attempt", delivery.attempt, "response", response.body());
+            Metrics.OUTBOUND_SENT.increment();
+            finish(delivery, true);
+        } else if (status == 415 && delivery.fallback != null) {
+            // 对端不接受这种编码，改发普通JSON，不算作失败
+            if (!encodingRejected) {
+                encodingRejected = true;
+                BridgeLog.warn(key("outbound-encoding-rejected"),
+                    "{}服务器不接受二进制格式或压缩的请求体(415)，已改用普通JSON", label);
+            }
+            Supplier<HttpRequest> fallback = delivery.fallback;
+            delivery.fallback = null;
+            try {
+                delivery.request = fallback.get();
+            } catch (RuntimeException e) {
+                BridgeLog.error(key("outbound-failed"), "{}构建JSON请求失败: {}", label, e.toString());
+                Metrics.OUTBOUND_FAILED.increment();
+                delivery.rejected = true;
+                finish(delivery, false);
+                return;
+            }
+            send(delivery);
+        } else if (isRetryable(status)) {
+            retry(delivery, "状态码 " + status, retryAfterNanos(response, config.getMaxRetryAfterMs()));
+        } else {
+            // 对端可达，只是请求本身被拒绝，重试也不会成功
+            breaker.onSuccess();
+            BridgeLog.error(key("outbound-failed"), "{}服务器响应错误: {}，响应内容: {}", label, status, response.body());
+            Metrics.OUTBOUND_FAILED.increment();
+            delivery.rejected = true;
+            finish(delivery, false);
+        }
+    }
+
+    private void retry(Delivery delivery, String reason, long retryAfterNanos) {
+        breaker.onFailure(retryAfterNanos);
+        if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+            // 熔断期间不计入重试次数，等探测成功后再发
+            BridgeLog.warn(key("outbound-circuit-open"), "{}发送失败: {}，熔断器已打开，消息转入保留队列", label, reason);
+            park(delivery);
+            return;
+        }
+        if (delivery.attempt >= config.getMaxRetries()) {
+            BridgeLog.error(key("outbound-failed"), "{}发送消息到远程服务器失败，已重试{}次: {}", label, delivery.attempt, reason);
+            Metrics.OUTBOUND_FAILED.increment();
+            finish(delivery, false);
+            return;
+        }
+        delivery.attempt++;
+        long delayNanos = Math.max(backoffNanos(delivery.attempt), retryAfterNanos);
+        BridgeLog.warn(key("outbound-retry"), "{}发送失败: {}，将在{}ms后重试 ({}/{})",
+            label, reason, TimeUnit.NANOSECONDS.toMillis(delayNanos), delivery.attempt, config.getMaxRetries());
+        Metrics.OUTBOUND_RETRIES.increment();
+        try {
+            timer.schedule(() -> resend(delivery), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            abort(delivery);
+        }
+    }
+
+    // 在定时器线程中执行，重试期间一直占用并发名额
+    private void resend(Delivery delivery) {
+        if (closed) {
+            abort(delivery);
+        } else if (!breaker.allowRequest()) {
+            park(delivery);
+        } else {
+            send(delivery);
+        }
+    }
+
+    /**
+     * 退避时长：上限按重试次数指数增长，实际时长在上限的一半到上限之间随机取值，
+     * 避免同一时刻失败的请求在同一时刻重试
+     */
+    private long backoffNanos(int attempt) {
+        long capMs = Math.min(config.getMaxDelayMs(), config.getBaseDelayMs() << Math.min(attempt - 1, 20));
+        long jitterMs = ThreadLocalRandom.current().nextLong(capMs / 2 + 1);
+        return TimeUnit.MILLISECONDS.toNanos(capMs - jitterMs);
+    }
+
+    // 每个目标的告警单独限流，一个目标的大量失败不会掩盖其他目标的告警
+    private String key(String base) {
+        return name != null ? base + ":" + name : base;
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 429 || // Too Many Requests
+               status == 502 || // Bad Gateway
+               status == 503 || // Service Unavailable
+               status == 504;   // Gateway Timeout
+    }
+
+    /**
+     * 解析429/503响应中的Retry-After，支持秒数和HTTP日期两种格式
+     * @return 需要等待的时长，没有或无法解析时为0，最长不超过maxMs
+     */
+    static long retryAfterNanos(HttpResponse<?> response, long maxMs) {
+        int status = response.statusCode();
+        if (status != 429 && status != 503) {
+            return 0;
+        }
+        Optional<String> header = response.headers().firstValue("Retry-After");
+        if (header.isEmpty()) {
+            return 0;
+        }
+        String value = header.get().trim();
+        long millis;
+        try {
+            millis = Long.parseLong(value) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                millis = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli()
+                    - System.currentTimeMillis();
+            } catch (DateTimeParseException ex) {
+                return 0;
+            }
+        }
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, Math.min(millis, maxMs)));
+    }
+
+    // 转入保留队列，释放名额并让发送线程继续处理下一条
+    private void park(Delivery delivery) {
+        transport.release();
+        hold(delivery, false);
+        delivery.settled.complete(null);
+    }
+
+    private void hold(Delivery delivery, boolean front) {
+        synchronized (this) {
+            if (!closed && held.size() < config.getHoldCapacity()) {
+                delivery.held = true;
+                if (front) {
+                    held.addFirst(delivery);
+                } else {
+                    held.addLast(delivery);
+                }
+                return;
+            }
+        }
+        if (!closed) {
+            // 对端只是暂时不可用，不算作拒绝，对应的发件箱记录保持未确认，在下次启动时重放
+            BridgeLog.warn(key("outbound-hold-full"), "{}保留队列已满，消息被丢弃", label);
+            Metrics.OUTBOUND_FAILED.increment();
+            delivery.done.complete(false);
+        }
+    }
+
+    private void finish(Delivery delivery, boolean delivered) {
+        transport.release();
+        delivery.done.complete(delivered);
+        delivery.settled.complete(null);
+    }
+
+    // 关闭过程中放弃发送，不完成结果，对应的发件箱记录保持未确认
+    private void abort(Delivery delivery) {
+        transport.release();
+        delivery.settled.complete(null);
+    }
+
+    /**
+     * 一次投递：一个请求及其最终结果
+     */
+    public static final class Delivery {
+        private HttpRequest request;
+        // 对端返回415时改发的普通JSON请求，只在使用了二进制格式或压缩时存在
+        private Supplier<HttpRequest> fallback;
+        private final CompletableFuture<Boolean> done = new CompletableFuture<>();
+        private int attempt;
+        private boolean held;
+        // 在完成done之前写入
+        private volatile boolean rejected;
+        // 本轮发送结束（完成或转入保留队列）时完成，发送线程在此等待
+        private CompletableFuture<Void> settled;
+
+        public Delivery(HttpRequest request) {
+            this(request, null);
+        }
+
+        /**
+         * @param fallback 对端返回415时改发的请求，在需要时才构建
+         */
+        public Delivery(HttpRequest request, Supplier<HttpRequest> fallback) {
+            this.request = request;
+            this.fallback = fallback;
+        }
+
+        /**
+         * 最终结果：送达为true，重试耗尽或被拒绝为false；关闭时放弃的投递不会完成
+         */
+        public CompletableFuture<Boolean> result() {
+            return done;
+        }
+
+        /**
+         * 结果为false时，是否为重发也不会送达的失败：对端以不可重试的状态码拒绝了请求，或无法构建JSON备用请求。
+         * 为false时是重试耗尽或保留队列已满被丢弃，对应的发件箱记录保留到下次启动时重放
+         */
+        public boolean isRejected() {
+            return rejected;
+        }
+    }
+} 
\ No newline at end of file
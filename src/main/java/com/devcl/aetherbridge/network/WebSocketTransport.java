@@ -0,0 +1,349 @@
+package com.devcl.aetherbridge.network;
+
+import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.logging.BridgeLog;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 基于WebSocket的长连接传输
+ *
+ * 与桥接服务保持一条双向长连接，出站消息和入站消息都以JSON文本帧传输：
+ * - 出站消息: {"type":"message","seq":序号,"payload":{...}}
+ * - 服务端确认: {"type":"ack","seq":序号}，表示该序号及之前的帧都已收到
+ * - 入站消息: {"type":"message","message":"...","prefix":"..."}
+ *
+ * 已发送但未确认的帧保存在窗口中，断线重连后按序号顺序重新发送。
+ * 连接通过ping/pong保活，超时未收到pong视为断线，重连使用指数退避。
+ *
+ * 锁只保护序号、窗口和当前连接。帧在持有锁时按序号排到上一个发送之后，
+ * 发送线程在锁外等待写出，慢连接不会阻塞确认处理、保活和关闭。
+ */
+public class WebSocketTransport {
+    private static final Gson GSON = new Gson();
+
+    private final ModConfig.WebSocketConfig config;
+    private final String apiKey;
+    private final Consumer<JsonObject> inboundHandler;
+    private final Consumer<List<Outbox.Entry>> ackHandler;
+    private final HttpClient client;
+    private final ScheduledExecutorService scheduler;
+    // 每次启动生成新的会话ID，服务端可据此和序号去重
+    private final String sessionId = UUID.randomUUID().toString();
+
+    private final ArrayDeque<Frame> unacked = new ArrayDeque<>();
+    private long nextSeq = 1;
+    private WebSocket socket;
+    // 当前连接上最后一个帧的发送，JDK的WebSocket同一时间只允许一个未完成的文本发送
+    private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+    private long lastPongNanos;
+    private long reconnectDelayMs;
+    private boolean closed = false;
+
+    /**
+     * @param inboundHandler 处理服务端推送的入站消息
+     * @param ackHandler 处理已确认帧对应的发件箱记录
+     */
+    public WebSocketTransport(ModConfig.WebSocketConfig config, String apiKey,
+                              Consumer<JsonObject> inboundHandler,
+                              Consumer<List<Outbox.Entry>> ackHandler) {
+        this.config = config;
+        this.apiKey = apiKey;
+        this.inboundHandler = inboundHandler;
+        this.ackHandler = ackHandler;
+        this.reconnectDelayMs = config.getReconnectInitialMs();
+        this.client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "AetherBridge-WebSocket");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 建立连接并开始保活
+     */
+    public void start() {
+        scheduler.execute(this::connect);
+        scheduler.scheduleAtFixedRate(this::keepAlive,
+            config.getPingIntervalMs(), config.getPingIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 发送一条已序列化的消息
+     * 未确认窗口已满时等待，断线期间帧会留在窗口中，重连后补发。
+     * 已连接时等待本帧写出（最多10秒），等待期间不持有锁
+     *
+     * @param entry 消息对应的发件箱记录，可以为null
+     * @return 传输已关闭时返回false
+     */
+    public boolean send(byte[] json, Outbox.Entry entry) throws InterruptedException {
+        String payload = new String(json, StandardCharsets.UTF_8);
+        WebSocket target;
+        CompletableFuture<?> sent;
+        synchronized (this) {
+            while (!closed && unacked.size() >= config.getMaxUnacked()) {
+                wait(1000);
+            }
+            if (closed) {
+                return false;
+            }
+            long seq = nextSeq++;
+            String frame = "{\"type\":\"message\",\"seq\":" + seq + ",\"payload\":" + payload + "}";
+            Frame pending = new Frame(seq, frame, entry);
+            unacked.addLast(pending);
+            target = socket;
+            if (target == null) {
+                return true;
+            }
+            sent = sendFrame(target, pending);
+        }
+        try {
+            sent.get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // 帧已在窗口中，确认前断线会在重连后补发
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // 发送失败已由sendFrame中的回调断开连接，帧留在窗口中等待重连后补发
+        } catch (TimeoutException e) {
+            AetherBridge.LOGGER.warn("WebSocket发送超过10秒未完成，将重新连接");
+            disconnect(target);
+        }
+        return true;
+    }
+
+    public synchronized boolean isConnected() {
+        return socket != null;
+    }
+
+    /**
+     * 当前未确认的帧数量
+     */
+    public synchronized int getUnackedCount() {
+        return unacked.size();
+    }
+
+    /**
+     * 关闭连接，未确认的帧如已写入发件箱会在下次启动时重放
+     */
+    public void close() {
+        WebSocket current;
+        synchronized (this) {
+            closed = true;
+            current = socket;
+            socket = null;
+            notifyAll();
+        }
+        if (current != null) {
+            current.sendClose(WebSocket.NORMAL_CLOSURE, "shutdown");
+        }
+        scheduler.shutdownNow();
+    }
+
+    private void connect() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        AetherBridge.LOGGER.info("正在连接WebSocket: " + config.getUrl());
+        client.newWebSocketBuilder()
+            .header("Authorization", "Bearer " + apiKey)
+            .header("X-Bridge-Session", sessionId)
+            .connectTimeout(Duration.ofSeconds(10))
+            .buildAsync(URI.create(config.getUrl()), new Listener())
+            .exceptionally(e -> {
+                AetherBridge.LOGGER.warn("WebSocket连接失败: " + e.getMessage());
+                scheduleReconnect();
+                return null;
+            });
+    }
+
+    private void onConnected(WebSocket webSocket) {
+        synchronized (this) {
+            if (closed) {
+                webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "shutdown");
+                return;
+            }
+            socket = webSocket;
+            lastSend = CompletableFuture.completedFuture(null);
+            lastPongNanos = System.nanoTime();
+            reconnectDelayMs = config.getReconnectInitialMs();
+            // 按顺序补发断线期间未确认的帧
+            if (!unacked.isEmpty()) {
+                AetherBridge.LOGGER.info("WebSocket已重连，补发 " + unacked.size() + " 个未确认的帧");
+            }
+            // 只排入发送链，不等待写出；补发过程中再次断线时剩余的帧在下一次重连时补发
+            for (Frame frame : unacked) {
+                sendFrame(webSocket, frame);
+            }
+        }
+        AetherBridge.LOGGER.info("WebSocket连接已建立");
+    }
+
+    /**
+     * 把帧排在当前连接上一个发送之后，不等待写出，调用方需持有锁
+     * 前一个发送失败时后面的帧不再发出，它们仍在窗口中，重连后补发
+     */
+    private CompletableFuture<?> sendFrame(WebSocket webSocket, Frame frame) {
+        CompletableFuture<?> sent = lastSend.thenCompose(ignored -> webSocket.sendText(frame.text, true));
+        sent.whenComplete((ignored, error) -> {
+            if (error != null && disconnect(webSocket)) {
+                AetherBridge.LOGGER.warn("WebSocket发送失败，将重新连接: " + error.getMessage());
+            }
+        });
+        lastSend = sent;
+        return sent;
+    }
+
+    private void onAck(long seq) {
+        List<Outbox.Entry> entries = new ArrayList<>();
+        synchronized (this) {
+            while (!unacked.isEmpty() && unacked.peekFirst().seq <= seq) {
+                Frame frame = unacked.pollFirst();
+                if (frame.entry != null) {
+                    entries.add(frame.entry);
+                }
+            }
+            notifyAll();
+        }
+        if (!entries.isEmpty()) {
+            ackHandler.accept(entries);
+        }
+    }
+
+    private void keepAlive() {
+        WebSocket current;
+        synchronized (this) {
+            current = socket;
+            if (current == null) {
+                return;
+            }
+            long silence = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastPongNanos);
+            if (silence > config.getPingIntervalMs() + config.getPongTimeoutMs()) {
+                AetherBridge.LOGGER.warn("WebSocket超过 " + silence + "ms 未收到pong，将重新连接");
+                disconnect(current);
+                return;
+            }
+        }
+        current.sendPing(ByteBuffer.allocate(0));
+    }
+
+    /**
+     * @return 是否断开了当前连接，连接已经断开或已被替换时为false
+     */
+    private boolean disconnect(WebSocket webSocket) {
+        synchronized (this) {
+            if (socket != webSocket) {
+                return false;
+            }
+            socket = null;
+        }
+        webSocket.abort();
+        scheduleReconnect();
+        return true;
+    }
+
+    private void scheduleReconnect() {
+        long delay;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            delay = reconnectDelayMs;
+            reconnectDelayMs = Math.min(reconnectDelayMs * 2, config.getReconnectMaxMs());
+        }
+        AetherBridge.LOGGER.info("将在 " + delay + "ms 后重新连接WebSocket");
+        scheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private final class Listener implements WebSocket.Listener {
+        private final StringBuilder buffer = new StringBuilder();
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            onConnected(webSocket);
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            buffer.append(data);
+            if (last) {
+                String text = buffer.toString();
+                buffer.setLength(0);
+                try {
+                    JsonObject json = GSON.fromJson(text, JsonObject.class);
+                    String type = json.has("type") ? json.get("type").getAsString() : "";
+                    if ("ack".equals(type)) {
+                        onAck(json.get("seq").getAsLong());
+                    } else if ("message".equals(type)) {
+                        inboundHandler.accept(json);
+                    } else {
+                        BridgeLog.trace("websocket.unknown", "frame", text);
+                    }
+                } catch (Exception e) {
+                    BridgeLog.warn("websocket-malformed", "解析WebSocket帧失败: {}", e.getMessage());
+                }
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onPong(WebSocket webSocket, ByteBuffer message) {
+            synchronized (WebSocketTransport.this) {
+                lastPongNanos = System.nanoTime();
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            AetherBridge.LOGGER.warn("WebSocket连接已关闭: " + statusCode + " " + reason);
+            disconnect(webSocket);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            AetherBridge.LOGGER.warn("WebSocket连接出错: " + error.getMessage());
+            disconnect(webSocket);
+        }
+    }
+
+    private static final class Frame {
+        private final long seq;
+        private final String text;
+        private final Outbox.Entry entry;
+
+        Frame(long seq, String text, Outbox.Entry entry) {
+            this.seq = seq;
+            this.text = text;
+            this.entry = entry;
+        }
+    }
+}
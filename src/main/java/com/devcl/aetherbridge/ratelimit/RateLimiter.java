@@ -0,0 +1,127 @@
+package com.devcl.aetherbridge.ratelimit;
+
+import com.devcl.aetherbridge.config.ModConfig;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 令牌桶限流：每个键一个桶，另有一个所有键共用的全局桶
+ *
+ * 桶以GCRA形式实现，每个桶只保存一个时间戳，即按当前消耗速度令牌恰好用完的时间。
+ * 取令牌时用CAS推进这个时间戳，不加锁。按键的桶按哈希分散到固定数量的条带上，
+ * 内存占用固定，不需要清理过期的键；不同的键落在同一条带时共享一个桶。
+ *
+ * 速率为0的桶不限流。
+ */
+public final class RateLimiter {
+    private static final int STRIPES = 4096;
+
+    private final Buckets perKey;
+    private final Buckets global;
+    // 时间戳相对于创建时间，避免System.nanoTime()为负数时与初始值0比较出错
+    private final long origin = System.nanoTime();
+
+    public RateLimiter(double perKeyPerSecond, int perKeyBurst, double globalPerSecond, int globalBurst) {
+        this.perKey = perKeyPerSecond > 0 ? new Buckets(STRIPES, perKeyPerSecond, perKeyBurst) : null;
+        this.global = globalPerSecond > 0 ? new Buckets(1, globalPerSecond, globalBurst) : null;
+    }
+
+    public static RateLimiter fromConfig(ModConfig.LimitConfig config) {
+        return new RateLimiter(
+            config.getPerKeyPerSecond(),
+            config.getPerKeyBurst(),
+            config.getGlobalPerSecond(),
+            config.getGlobalBurst()
+        );
+    }
+
+    /**
+     * 不限流的实例
+     */
+    public static RateLimiter unlimited() {
+        return new RateLimiter(0, 1, 0, 1);
+    }
+
+    /**
+     * 为一个键取令牌
+     * 先扣按键的桶，再扣全局桶，全局桶拒绝时退还按键的桶扣掉的令牌；
+     * 请求按全部令牌数计算，超过maxPermits的请求永远不会被允许，调用方应当先检查
+     *
+     * @param keyHash 键的哈希值
+     * @param permits 需要的令牌数
+     * @return 允许时返回0，否则返回需要等待的纳秒数
+     */
+    public long tryAcquire(int keyHash, int permits) {
+        long now = System.nanoTime() - origin;
+        int index = stripe(keyHash);
+        if (perKey != null) {
+            long wait = perKey.tryAcquire(index, permits, now);
+            if (wait > 0) {
+                return wait;
+            }
+        }
+        long wait = global != null ? global.tryAcquire(0, permits, now) : 0;
+        if (wait > 0 && perKey != null) {
+            perKey.refund(index, permits);
+        }
+        return wait;
+    }
+
+    public long tryAcquire(Object key, int permits) {
+        return tryAcquire(key != null ? key.hashCode() : 0, permits);
+    }
+
+    /**
+     * 一次请求最多能取的令牌数，即各个桶容量中较小的一个；不限流时返回Integer.MAX_VALUE
+     */
+    public int maxPermits() {
+        int max = Integer.MAX_VALUE;
+        if (perKey != null) {
+            max = Math.min(max, perKey.burst);
+        }
+        if (global != null) {
+            max = Math.min(max, global.burst);
+        }
+        return max;
+    }
+
+    // 打散哈希的低位，相近的哈希值落在不同条带
+    private static int stripe(int hash) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    private static final class Buckets {
+        private final AtomicLongArray theoreticalEmpty;
+        private final long intervalNanos;
+        private final int burst;
+        private final long capacityNanos;
+
+        Buckets(int count, double perSecond, int burst) {
+            this.theoreticalEmpty = new AtomicLongArray(count);
+            this.intervalNanos = Math.max(1, (long) (1_000_000_000L / perSecond));
+            this.burst = burst;
+            this.capacityNanos = intervalNanos * burst;
+        }
+
+        long tryAcquire(int index, int permits, long now) {
+            long cost = intervalNanos * permits;
+            while (true) {
+                long current = theoreticalEmpty.get(index);
+                long next = Math.max(current, now) + cost;
+                long wait = next - now - capacityNanos;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (theoreticalEmpty.compareAndSet(index, current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        // 撤销一次成功的tryAcquire，时间戳的加减可以交换顺序，与并发的取令牌互不影响
+        void refund(int index, int permits) {
+            theoreticalEmpty.addAndGet(index, -intervalNanos * permits);
+        }
+    }
+} 
\ No newline at end of file
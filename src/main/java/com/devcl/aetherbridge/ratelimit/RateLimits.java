@@ -0,0 +1,53 @@
+package com.devcl.aetherbridge.ratelimit;
+
+import com.devcl.aetherbridge.config.ModConfig;
+
+/**
+ * 出站和入站两个方向的限流器
+ *
+ * 限流器按当前配置创建，/aetherbridge reload 换上新的配置对象后，下次取用时按新配置重建，
+ * 桶的状态随之清空。
+ */
+public final class RateLimits {
+    private static volatile Limiters current;
+
+    private RateLimits() {
+    }
+
+    /**
+     * 出站方向，按玩家UUID限流
+     */
+    public static RateLimiter outbound() {
+        return limiters().outbound;
+    }
+
+    /**
+     * 入站方向，按来源地址和API密钥限流
+     */
+    public static RateLimiter inbound() {
+        return limiters().inbound;
+    }
+
+    private static Limiters limiters() {
+        ModConfig.RateLimitConfig config = ModConfig.getInstance().getRateLimit();
+        Limiters limiters = current;
+        if (limiters == null || limiters.config != config) {
+            // 并发重建时以最后一次为准，多创建一次没有影响
+            limiters = new Limiters(config);
+            current = limiters;
+        }
+        return limiters;
+    }
+
+    private static final class Limiters {
+        private final ModConfig.RateLimitConfig config;
+        private final RateLimiter outbound;
+        private final RateLimiter inbound;
+
+        Limiters(ModConfig.RateLimitConfig config) {
+            this.config = config;
+            this.outbound = config.isEnabled() ? RateLimiter.fromConfig(config.getOutbound()) : RateLimiter.unlimited();
+            this.inbound = config.isEnabled() ? RateLimiter.fromConfig(config.getInbound()) : RateLimiter.unlimited();
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,191 @@
+package com.devcl.aetherbridge.routing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多关键词匹配的Aho-Corasick自动机
+ *
+ * 所有规则的关键词合并到一个自动机中，扫描一遍消息就能找出命中了关键词的全部规则，
+ * 耗时与消息长度成正比，与关键词和规则的数量无关。
+ * 状态转移保存在以 (状态, 字符) 为键的开放寻址表中，中文等非ASCII字符不需要为每个状态
+ * 分配65536项的转移表。每个状态的输出已在构建时合并了失败链上的输出。
+ */
+final class KeywordAutomaton {
+    private final boolean ignoreCase;
+    // 只匹配从消息开头开始的关键词（用于startsWith），不使用失败链接
+    private final boolean anchored;
+    // 转移表：键为 (状态 << 16 | 字符) + 1，0表示空位
+    private final long[] keys;
+    private final int[] targets;
+    private final int mask;
+    private final int[] fail;
+    // 到达该状态时命中的规则下标
+    private final int[][] outputs;
+
+    private KeywordAutomaton(boolean ignoreCase, boolean anchored, long[] keys, int[] targets, int[] fail,
+                             int[][] outputs) {
+        this.ignoreCase = ignoreCase;
+        this.anchored = anchored;
+        this.keys = keys;
+        this.targets = targets;
+        this.mask = keys.length - 1;
+        this.fail = fail;
+        this.outputs = outputs;
+    }
+
+    /**
+     * 构建自动机
+     * @param keywords 关键词及其所属的规则下标，两个列表一一对应
+     * @param anchored 为true时只匹配消息开头，即startsWith语义
+     */
+    static KeywordAutomaton build(List<String> keywords, List<Integer> rules, boolean ignoreCase, boolean anchored) {
+        // 先构建字典树
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<List<Integer>> nodeOutputs = new ArrayList<>();
+        children.add(new HashMap<>());
+        nodeOutputs.add(new ArrayList<>());
+        for (int i = 0; i < keywords.size(); i++) {
+            String keyword = keywords.get(i);
+            int state = 0;
+            for (int j = 0; j < keyword.length(); j++) {
+                char c = normalize(keyword.charAt(j), ignoreCase);
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new HashMap<>());
+                    nodeOutputs.add(new ArrayList<>());
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            if (!nodeOutputs.get(state).contains(rules.get(i))) {
+                nodeOutputs.get(state).add(rules.get(i));
+            }
+        }
+
+        int states = children.size();
+        int edges = states - 1;
+        int capacity = Integer.highestOneBit(Math.max(edges * 2, 16) - 1) << 1;
+        long[] keys = new long[capacity];
+        int[] targets = new int[capacity];
+        for (int state = 0; state < states; state++) {
+            for (Map.Entry<Character, Integer> edge : children.get(state).entrySet()) {
+                long key = key(state, edge.getKey());
+                int slot = slot(key, capacity - 1);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                keys[slot] = key;
+                targets[slot] = edge.getValue();
+            }
+        }
+
+        // 按层次遍历计算失败链接，并把失败状态的输出合并进来
+        int[] fail = new int[states];
+        int[][] outputs = new int[states][];
+        outputs[0] = toArray(nodeOutputs.get(0));
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : children.get(0).values()) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+        KeywordAutomaton partial = new KeywordAutomaton(ignoreCase, anchored, keys, targets, fail, outputs);
+        if (anchored) {
+            // 从开头匹配时只需要每个节点自己的输出，失败链接全部指向根节点
+            for (int state = 1; state < states; state++) {
+                outputs[state] = toArray(nodeOutputs.get(state));
+            }
+            return partial;
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            List<Integer> merged = nodeOutputs.get(state);
+            for (int rule : outputs[fail[state]]) {
+                if (!merged.contains(rule)) {
+                    merged.add(rule);
+                }
+            }
+            outputs[state] = toArray(merged);
+            for (Map.Entry<Character, Integer> edge : children.get(state).entrySet()) {
+                int child = edge.getValue();
+                int f = fail[state];
+                int next;
+                while ((next = partial.transition(f, edge.getKey())) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = next >= 0 ? next : 0;
+                queue.add(child);
+            }
+        }
+        return partial;
+    }
+
+    /**
+     * 扫描消息，把命中关键词的规则在matched中对应的位置为1
+     */
+    void match(String text, long[] matched) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = normalize(text.charAt(i), ignoreCase);
+            int next;
+            if (anchored) {
+                if ((state = transition(state, c)) < 0) {
+                    return;
+                }
+                for (int rule : outputs[state]) {
+                    matched[rule >>> 6] |= 1L << rule;
+                }
+                continue;
+            }
+            while ((next = transition(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next >= 0 ? next : 0;
+            for (int rule : outputs[state]) {
+                matched[rule >>> 6] |= 1L << rule;
+            }
+        }
+    }
+
+    private int transition(int state, char c) {
+        long key = key(state, c);
+        int slot = slot(key, mask);
+        while (true) {
+            long current = keys[slot];
+            if (current == key) {
+                return targets[slot];
+            }
+            if (current == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static long key(int state, char c) {
+        return (((long) state << 16) | c) + 1;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static char normalize(char c, boolean ignoreCase) {
+        return ignoreCase ? Character.toLowerCase(c) : c;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        Arrays.sort(array);
+        return array;
+    }
+}
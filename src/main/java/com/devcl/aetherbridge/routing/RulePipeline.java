@@ -0,0 +1,284 @@
+package com.devcl.aetherbridge.routing;
+
+import com.devcl.aetherbridge.config.ModConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 出站聊天消息的规则管道
+ *
+ * 规则在配置加载时编译一次：所有规则的关键词合并为Aho-Corasick自动机（区分大小写和不区分
+ * 大小写各一个），不带关键词的规则的startsWith合并为一棵从消息开头匹配的字典树，
+ * 正则预先编译为Pattern。匹配时先扫描一遍消息得到候选规则集合，再按规则顺序取第一条
+ * 所有条件都满足的规则；关键词或开头没有命中的规则直接跳过，不会执行它的正则。
+ * 因此耗时主要与消息长度成正比，只有两者都没有配置的规则（只有正则或权限条件）需要逐条检查。
+ */
+public final class RulePipeline {
+    private static final RulePipeline EMPTY = new RulePipeline(new Rule[0], null, null, null, new int[0], 0);
+    // 匹配时使用的线程内位图，按需扩容
+    private static final ThreadLocal<long[]> MATCHED = ThreadLocal.withInitial(() -> new long[16]);
+
+    private final Rule[] rules;
+    private final KeywordAutomaton caseInsensitive;
+    private final KeywordAutomaton caseSensitive;
+    private final KeywordAutomaton prefixes;
+    // 没有关键词和startsWith条件、每条消息都需要检查的规则下标，升序
+    private final int[] unconditional;
+    // 规则要求的权限等级，第n位表示等级n
+    private final int permissionLevels;
+
+    private RulePipeline(Rule[] rules, KeywordAutomaton caseInsensitive, KeywordAutomaton caseSensitive,
+                         KeywordAutomaton prefixes, int[] unconditional, int permissionLevels) {
+        this.rules = rules;
+        this.caseInsensitive = caseInsensitive;
+        this.caseSensitive = caseSensitive;
+        this.prefixes = prefixes;
+        this.unconditional = unconditional;
+        this.permissionLevels = permissionLevels;
+    }
+
+    /**
+     * 规则动作
+     */
+    public enum Action {
+        // 转发，可以改写前缀（频道）
+        FORWARD("forward"),
+        // 丢弃，不转发
+        DROP("drop");
+
+        private final String configName;
+
+        Action(String configName) {
+            this.configName = configName;
+        }
+
+        public String getConfigName() {
+            return configName;
+        }
+
+        public static Action fromConfig(String name) {
+            for (Action action : values()) {
+                if (action.configName.equalsIgnoreCase(name)) {
+                    return action;
+                }
+            }
+            throw new IllegalStateException("未知的规则动作: " + name);
+        }
+    }
+
+    /**
+     * 编译后的一条规则
+     */
+    public static final class Rule {
+        private final String name;
+        private final boolean hasKeywords;
+        private final String[] startsWith;
+        private final int minPermissionLevel;
+        private final Pattern pattern;
+        private final Action action;
+        private final String prefix;
+        private final boolean strip;
+
+        private Rule(ModConfig.RuleConfig config, Pattern pattern) {
+            this.name = config.getName();
+            this.hasKeywords = !config.getKeywords().isEmpty();
+            this.startsWith = config.getStartsWith().toArray(new String[0]);
+            this.minPermissionLevel = config.getMinPermissionLevel();
+            this.pattern = pattern;
+            this.action = config.getAction();
+            this.prefix = config.getPrefix();
+            this.strip = config.isStrip();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        /**
+         * @return 不改写前缀时为null
+         */
+        public String getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * 按规则改写消息内容：strip为true时去掉命中的startsWith及其后的空白
+         */
+        public String rewrite(String message) {
+            if (!strip) {
+                return message;
+            }
+            for (String start : startsWith) {
+                if (message.startsWith(start)) {
+                    return message.substring(start.length()).stripLeading();
+                }
+            }
+            return message;
+        }
+
+        // 关键词条件已由调用方检查
+        private boolean matches(String message, IntPredicate hasPermission) {
+            if (startsWith.length > 0) {
+                boolean found = false;
+                for (String start : startsWith) {
+                    if (message.startsWith(start)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            if (minPermissionLevel > 0 && !hasPermission.test(minPermissionLevel)) {
+                return false;
+            }
+            return pattern == null || pattern.matcher(message).find();
+        }
+    }
+
+    public static RulePipeline empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 编译规则
+     * @throws IllegalStateException 规则中的正则无效
+     */
+    public static RulePipeline compile(List<ModConfig.RuleConfig> configs) throws IllegalStateException {
+        if (configs.isEmpty()) {
+            return EMPTY;
+        }
+        Rule[] rules = new Rule[configs.size()];
+        List<String> insensitiveKeywords = new ArrayList<>();
+        List<Integer> insensitiveRules = new ArrayList<>();
+        List<String> sensitiveKeywords = new ArrayList<>();
+        List<Integer> sensitiveRules = new ArrayList<>();
+        List<String> prefixKeywords = new ArrayList<>();
+        List<Integer> prefixRules = new ArrayList<>();
+        List<Integer> unconditional = new ArrayList<>();
+        int permissionLevels = 0;
+        for (int i = 0; i < rules.length; i++) {
+            ModConfig.RuleConfig config = configs.get(i);
+            Pattern pattern = null;
+            if (!config.getPattern().isEmpty()) {
+                try {
+                    pattern = Pattern.compile(config.getPattern());
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalStateException("rules[" + i + "].pattern不是有效的正则表达式: " + e.getDescription());
+                }
+            }
+            rules[i] = new Rule(config, pattern);
+            if (rules[i].minPermissionLevel > 0) {
+                permissionLevels |= 1 << rules[i].minPermissionLevel;
+            }
+            if (rules[i].hasKeywords) {
+                for (String keyword : config.getKeywords()) {
+                    if (config.isIgnoreCase()) {
+                        insensitiveKeywords.add(keyword);
+                        insensitiveRules.add(i);
+                    } else {
+                        sensitiveKeywords.add(keyword);
+                        sensitiveRules.add(i);
+                    }
+                }
+            } else if (rules[i].startsWith.length > 0) {
+                // 同时配置了关键词时以关键词为索引，startsWith在matches中检查
+                for (String start : rules[i].startsWith) {
+                    prefixKeywords.add(start);
+                    prefixRules.add(i);
+                }
+            } else {
+                unconditional.add(i);
+            }
+        }
+        return new RulePipeline(
+            rules,
+            insensitiveKeywords.isEmpty() ? null : KeywordAutomaton.build(insensitiveKeywords, insensitiveRules, true, false),
+            sensitiveKeywords.isEmpty() ? null : KeywordAutomaton.build(sensitiveKeywords, sensitiveRules, false, false),
+            prefixKeywords.isEmpty() ? null : KeywordAutomaton.build(prefixKeywords, prefixRules, false, true),
+            unconditional.stream().mapToInt(Integer::intValue).toArray(),
+            permissionLevels
+        );
+    }
+
+    public boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * 规则中出现过的权限等级，第n位为1表示有规则要求等级n
+     * 调用方可以只检查这些等级，把结果交给match
+     */
+    public int getPermissionLevels() {
+        return permissionLevels;
+    }
+
+    /**
+     * 找出第一条匹配消息的规则
+     * @param hasPermission 判断发送者是否具有指定的权限等级，只在规则要求权限时调用
+     * @return 没有规则匹配时返回null
+     */
+    public Rule match(String message, IntPredicate hasPermission) {
+        if (rules.length == 0) {
+            return null;
+        }
+        long[] matched = MATCHED.get();
+        int words = (rules.length + 63) >>> 6;
+        if (matched.length < words) {
+            matched = new long[words];
+            MATCHED.set(matched);
+        } else {
+            Arrays.fill(matched, 0, words, 0L);
+        }
+        if (caseInsensitive != null) {
+            caseInsensitive.match(message, matched);
+        }
+        if (caseSensitive != null) {
+            caseSensitive.match(message, matched);
+        }
+        if (prefixes != null) {
+            prefixes.match(message, matched);
+        }
+
+        // 按规则顺序合并两组候选：关键词或开头命中的规则和需要逐条检查的规则
+        int next = 0;
+        for (int word = 0; word < words; word++) {
+            long bits = matched[word];
+            while (bits != 0) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                while (next < unconditional.length && unconditional[next] < index) {
+                    Rule rule = rules[unconditional[next++]];
+                    if (rule.matches(message, hasPermission)) {
+                        return rule;
+                    }
+                }
+                Rule rule = rules[index];
+                if (rule.matches(message, hasPermission)) {
+                    return rule;
+                }
+            }
+        }
+        while (next < unconditional.length) {
+            Rule rule = rules[unconditional[next++]];
+            if (rule.matches(message, hasPermission)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,196 @@
+package com.devcl.aetherbridge.scheduler;
+
+import com.devcl.aetherbridge.AetherBridge;
+import com.devcl.aetherbridge.config.ModConfig;
+import com.devcl.aetherbridge.logging.BridgeLog;
+import com.devcl.aetherbridge.metrics.Metrics;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 主线程任务调度器
+ *
+ * AetherBridge需要在服务器主线程上执行的操作（广播消息、执行命令等）都通过这里提交，
+ * 不再直接调用server.execute。任务在每个服务器tick结束时执行，每个tick最多使用
+ * scheduler.tickBudgetNanos 纳秒，剩余任务留到下一个tick。每个tick至少执行一个任务，
+ * 保证任务不会永远积压。
+ *
+ * 同时记录每个tick实际占用的主线程时间、延后的任务数和任务排队时间，
+ * 用于确认桥接本身不会拖慢tick。
+ */
+public final class MainThreadScheduler {
+    private static final ConcurrentLinkedQueue<Task> TASKS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger QUEUED = new AtomicInteger();
+
+    // 以下统计只在主线程上写入
+    private static volatile long lastTickNanos;
+    private static volatile long maxTickNanos;
+    private static volatile long totalTickNanos;
+    private static volatile long activeTicks;
+    private static volatile long overBudgetTicks;
+    private static volatile long executed;
+    private static volatile long deferred;
+    private static volatile long lastDeferred;
+    private static volatile long maxQueueAgeNanos;
+    private static final AtomicInteger REJECTED = new AtomicInteger();
+
+    static {
+        Metrics.gauge("aetherbridge_scheduler_queued_tasks", "等待在主线程执行的任务数", QUEUED::get);
+        Metrics.gauge("aetherbridge_scheduler_last_tick_nanos", "上一个tick执行主线程任务的耗时（纳秒）", () -> lastTickNanos);
+        Metrics.gauge("aetherbridge_scheduler_max_tick_nanos", "单个tick执行主线程任务的最长耗时（纳秒）", () -> maxTickNanos);
+        Metrics.counter("aetherbridge_scheduler_over_budget_ticks_total", "主线程任务耗时超出预算的tick数", () -> overBudgetTicks);
+        Metrics.counter("aetherbridge_scheduler_deferred_total", "延后到下一个tick执行的任务次数", () -> deferred);
+        Metrics.counter("aetherbridge_scheduler_rejected_total", "因任务队列已满被拒绝的任务数", REJECTED::get);
+    }
+
+    private MainThreadScheduler() {
+    }
+
+    /**
+     * 提交一个主线程任务，可在任意线程调用
+     * @return 任务队列已满时返回false
+     */
+    public static boolean submit(Runnable task) {
+        if (QUEUED.incrementAndGet() > ModConfig.getInstance().getScheduler().getMaxQueuedTasks()) {
+            QUEUED.decrementAndGet();
+            REJECTED.incrementAndGet();
+            return false;
+        }
+        TASKS.add(new Task(task, System.nanoTime()));
+        return true;
+    }
+
+    /**
+     * 在服务器tick结束时调用，按时间预算执行排队的任务
+     */
+    public static void onServerTick(MinecraftServer server) {
+        if (TASKS.isEmpty()) {
+            lastTickNanos = 0;
+            lastDeferred = 0;
+            return;
+        }
+        long budgetNanos = ModConfig.getInstance().getScheduler().getTickBudgetNanos();
+        long start = System.nanoTime();
+        long now = start;
+        int ran = 0;
+        Task task;
+        do {
+            task = TASKS.poll();
+            if (task == null) {
+                break;
+            }
+            QUEUED.decrementAndGet();
+            long age = now - task.enqueuedNanos;
+            if (age > maxQueueAgeNanos) {
+                maxQueueAgeNanos = age;
+            }
+            try {
+                task.runnable.run();
+            } catch (Exception e) {
+                BridgeLog.error("scheduler-task", "执行主线程任务时发生错误", e);
+            }
+            ran++;
+            now = System.nanoTime();
+        } while (now - start < budgetNanos);
+
+        long used = now - start;
+        int remaining = QUEUED.get();
+        lastTickNanos = used;
+        lastDeferred = remaining;
+        totalTickNanos += used;
+        activeTicks++;
+        executed += ran;
+        if (used > maxTickNanos) {
+            maxTickNanos = used;
+        }
+        if (used > budgetNanos) {
+            // 单个任务本身超出预算时会出现这种情况
+            overBudgetTicks++;
+        }
+        if (remaining > 0) {
+            deferred += remaining;
+            BridgeLog.trace("scheduler.deferred", "ran", ran, "usedNanos", used, "remaining", remaining);
+        }
+    }
+
+    /**
+     * 当前排队的任务数
+     */
+    public static int getQueuedCount() {
+        return QUEUED.get();
+    }
+
+    public static Stats getStats() {
+        Task head = TASKS.peek();
+        long oldestAge = head != null ? System.nanoTime() - head.enqueuedNanos : 0;
+        long ticks = activeTicks;
+        return new Stats(
+            QUEUED.get(),
+            lastTickNanos,
+            ticks > 0 ? totalTickNanos / ticks : 0,
+            maxTickNanos,
+            overBudgetTicks,
+            executed,
+            lastDeferred,
+            deferred,
+            REJECTED.get(),
+            oldestAge,
+            maxQueueAgeNanos
+        );
+    }
+
+    /**
+     * 丢弃所有排队的任务，在服务器关闭时调用
+     */
+    public static void clear() {
+        TASKS.clear();
+        QUEUED.set(0);
+    }
+
+    /**
+     * 调度器统计快照，时间单位均为纳秒
+     */
+    public static final class Stats {
+        public final int queued;
+        public final long lastTickNanos;
+        public final long avgTickNanos;
+        public final long maxTickNanos;
+        public final long overBudgetTicks;
+        public final long executed;
+        // 上一个tick结束时延后的任务数
+        public final long deferredLastTick;
+        // 累计延后的任务次数，同一个任务每延后一个tick计一次
+        public final long deferredTotal;
+        public final long rejected;
+        public final long oldestQueueAgeNanos;
+        public final long maxQueueAgeNanos;
+
+        Stats(int queued, long lastTickNanos, long avgTickNanos, long maxTickNanos, long overBudgetTicks,
+              long executed, long deferredLastTick, long deferredTotal, long rejected,
+              long oldestQueueAgeNanos, long maxQueueAgeNanos) {
+            this.queued = queued;
+            this.lastTickNanos = lastTickNanos;
+            this.avgTickNanos = avgTickNanos;
+            this.maxTickNanos = maxTickNanos;
+            this.overBudgetTicks = overBudgetTicks;
+            this.executed = executed;
+            this.deferredLastTick = deferredLastTick;
+            this.deferredTotal = deferredTotal;
+            this.rejected = rejected;
+            this.oldestQueueAgeNanos = oldestQueueAgeNanos;
+            this.maxQueueAgeNanos = maxQueueAgeNanos;
+        }
+    }
+
+    private static final class Task {
+        private final Runnable runnable;
+        private final long enqueuedNanos;
+
+        Task(Runnable runnable, long enqueuedNanos) {
+            this.runnable = runnable;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
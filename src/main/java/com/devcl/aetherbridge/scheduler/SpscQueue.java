@@ -0,0 +1,84 @@
+package com.devcl.aetherbridge.scheduler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单生产者单消费者的有界无锁环形队列
+ *
+ * 只允许一个线程调用offer、一个线程调用poll（例如服务器主线程生产、桥接线程消费）。
+ * 入队只有一次数组写入和一次release写入，不加锁、不分配对象，队列满时直接返回false。
+ * 双方各自缓存对方的下标，只有缓存显示队列已满或已空时才重新读取对方的下标。
+ */
+public final class SpscQueue<E> {
+    private final Object[] buffer;
+    private final int mask;
+    // 下一个要读取的位置，只由消费者写入
+    private final AtomicLong head = new AtomicLong();
+    // 下一个要写入的位置，只由生产者写入
+    private final AtomicLong tail = new AtomicLong();
+    // 生产者看到的head
+    private long headCache;
+    // 消费者看到的tail
+    private long tailCache;
+
+    /**
+     * @param capacity 容量，向上取整为2的幂
+     */
+    public SpscQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * 入队，只能由生产者线程调用
+     * @return 队列已满时返回false
+     */
+    public boolean offer(E element) {
+        long t = tail.getPlain();
+        if (t - headCache >= buffer.length) {
+            headCache = head.getAcquire();
+            if (t - headCache >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) t & mask] = element;
+        tail.setRelease(t + 1);
+        return true;
+    }
+
+    /**
+     * 出队，只能由消费者线程调用
+     * @return 队列为空时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head.getPlain();
+        if (h >= tailCache) {
+            tailCache = tail.getAcquire();
+            if (h >= tailCache) {
+                return null;
+            }
+        }
+        int index = (int) h & mask;
+        E element = (E) buffer[index];
+        buffer[index] = null;
+        head.setRelease(h + 1);
+        return element;
+    }
+
+    /**
+     * 当前元素数，可在任意线程调用，结果只是近似值
+     */
+    public int size() {
+        return (int) Math.max(0, tail.getAcquire() - head.getAcquire());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+}
@@ -0,0 +1,131 @@
+package com.devcl.aetherbridge.scheduler;
+
+import com.devcl.aetherbridge.AetherBridge;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程支持
+ *
+ * 项目以Java 17为编译目标，虚拟线程相关的API（Thread.ofVirtual、
+ * Executors.newThreadPerTaskExecutor）都通过反射调用。运行时为Java 21及以上时可用，
+ * 否则调用方退回到原来的平台线程。
+ */
+public final class VirtualThreads {
+    // 虚拟线程构建器的类型与方法，运行时不支持时为null
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method PER_TASK_EXECUTOR;
+    private static volatile boolean warned = false;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method perTask = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            // Java 19/20中虚拟线程是预览特性，未开启预览时ofVirtual会抛出异常
+            ofVirtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+        PER_TASK_EXECUTOR = perTask;
+    }
+
+    /**
+     * 线程模式，对应配置中的threads.mode
+     */
+    public enum Mode {
+        // 固定数量的平台线程，与之前的行为一致
+        PLATFORM("platform"),
+        // 每个任务一个虚拟线程，运行时不支持时退回平台线程并记录警告
+        VIRTUAL("virtual"),
+        // 运行时支持时使用虚拟线程，否则使用平台线程
+        AUTO("auto");
+
+        private final String configName;
+
+        Mode(String configName) {
+            this.configName = configName;
+        }
+
+        public String getConfigName() {
+            return configName;
+        }
+
+        /**
+         * 当前运行时下是否实际使用虚拟线程
+         */
+        public boolean useVirtual() {
+            if (this == PLATFORM) {
+                return false;
+            }
+            if (!isSupported()) {
+                if (this == VIRTUAL && !warned) {
+                    warned = true;
+                    AetherBridge.LOGGER.warn("当前Java版本不支持虚拟线程（需要Java 21及以上），将使用平台线程");
+                }
+                return false;
+            }
+            return true;
+        }
+
+        public static Mode fromConfig(String name) {
+            for (Mode mode : values()) {
+                if (mode.configName.equalsIgnoreCase(name)) {
+                    return mode;
+                }
+            }
+            throw new IllegalStateException("未知的线程模式: " + name);
+        }
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * 创建虚拟线程工厂，线程名为 prefix + 序号
+     * @throws UnsupportedOperationException 运行时不支持虚拟线程
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("当前Java版本不支持虚拟线程");
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            BUILDER_NAME.invoke(builder, prefix, 0L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("创建虚拟线程工厂失败", e);
+        }
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的执行器
+     * @throws UnsupportedOperationException 运行时不支持虚拟线程
+     */
+    public static ExecutorService newPerTaskExecutor(String prefix) {
+        ThreadFactory factory = factory(prefix);
+        try {
+            return (ExecutorService) PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("创建虚拟线程执行器失败", e);
+        }
+    }
+}